@@ -0,0 +1,89 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+import com.subgraph.orchid.crypto.TorMessageDigest;
+import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.crypto.TorStreamCipher;
+
+/**
+ * The per hop cell crypto of a circuit.
+ * <p>
+ * A second crypto state with the forward and backward keys exchanged plays the relay, so that
+ * <code>decryptBackwardRecognized</code> receives cells which the client recognizes.  That
+ * benchmark includes the relay sealing the cell, which costs the same as
+ * <code>updateForwardDigest</code> and <code>encryptForward</code> together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CircuitNodeCryptoStateBenchmark {
+
+	private CircuitNodeCryptoState client;
+	private CircuitNodeCryptoState relay;
+	private Cell cell;
+
+	@Setup
+	public void setup() {
+		final byte[] keyMaterial = new TorRandom().getBytes(CircuitNodeCryptoState.KEY_MATERIAL_SIZE);
+		client = CircuitNodeCryptoState.createFromKeyMaterial(keyMaterial, new byte[TorMessageDigest.TOR_DIGEST_SIZE]);
+		relay = CircuitNodeCryptoState.createFromKeyMaterial(swapDirections(keyMaterial), new byte[TorMessageDigest.TOR_DIGEST_SIZE]);
+		cell = CellImpl.createCell(1, Cell.RELAY);
+		CellImpl.detachFromPool(cell);
+	}
+
+	@Benchmark
+	public Cell encryptForward() {
+		client.encryptForwardCell(cell);
+		return cell;
+	}
+
+	@Benchmark
+	public Cell updateForwardDigest() {
+		client.updateForwardDigest(cell);
+		return cell;
+	}
+
+	/* A cell for another hop is almost always rejected on the recognized field */
+	@Benchmark
+	public boolean decryptBackwardOtherHop() {
+		return client.decryptBackwardCell(cell);
+	}
+
+	@Benchmark
+	public boolean decryptBackwardRecognized() {
+		final byte[] bytes = cell.getCellBytes();
+		for(int i = Cell.CELL_HEADER_LEN; i < Cell.CELL_LEN; i++) {
+			bytes[i] = 0;
+		}
+		relay.updateForwardDigest(cell);
+		final byte[] digest = relay.getForwardDigestBytes();
+		for(int i = 0; i < 4; i++) {
+			cell.putByteAt(RelayCell.DIGEST_OFFSET + i, digest[i] & 0xFF);
+		}
+		relay.encryptForwardCell(cell);
+		return client.decryptBackwardCell(cell);
+	}
+
+	private static byte[] swapDirections(byte[] keyMaterial) {
+		final int digestLength = TorMessageDigest.TOR_DIGEST_SIZE;
+		final int keyLength = TorStreamCipher.KEY_LEN;
+		final byte[] swapped = new byte[keyMaterial.length];
+		System.arraycopy(keyMaterial, 0, swapped, digestLength, digestLength);
+		System.arraycopy(keyMaterial, digestLength, swapped, 0, digestLength);
+		System.arraycopy(keyMaterial, 2 * digestLength, swapped, 2 * digestLength + keyLength, keyLength);
+		System.arraycopy(keyMaterial, 2 * digestLength + keyLength, swapped, 2 * digestLength, keyLength);
+		return swapped;
+	}
+}
@@ -0,0 +1,89 @@
+package com.subgraph.orchid.circuits;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.ExitCircuit;
+import com.subgraph.orchid.Stream;
+import com.subgraph.orchid.Tor;
+import com.subgraph.orchid.TorClient;
+
+/**
+ * Time to first byte for targets which no open circuit can handle.
+ * <p>
+ * This runs against the live Tor network and is not a JMH benchmark.  After bootstrapping, every
+ * sample destroys the open exit circuits, so that the stream request has to wait for a new circuit
+ * to be launched and built, then sends an HTTP request and waits for the first byte of the
+ * response.  Results are printed as one JSON object.
+ * <pre>
+ *   gradle coldTargetLatency [-Platency.host=example.com] [-Platency.samples=20]
+ * </pre>
+ */
+public class ColdTargetLatency {
+	private final static long BOOTSTRAP_TIMEOUT = 5 * 60 * 1000;
+
+	public static void main(String[] args) throws Exception {
+		final String host = (args.length > 0) ? args[0] : "example.com";
+		final int samples = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		final TorClient client = new TorClient();
+		client.start();
+		try {
+			client.waitUntilReady(BOOTSTRAP_TIMEOUT);
+			final CircuitManagerImpl circuitManager = (CircuitManagerImpl) client.getCircuitManager();
+			final List<Long> times = new ArrayList<>();
+			for(int i = 0; i < samples; i++) {
+				destroyExitCircuits(circuitManager);
+				try {
+					times.add(timeToFirstByte(client, host));
+				} catch (Exception e) {
+					System.err.println("Sample failed: "+ e);
+				}
+			}
+			printResults(host, samples, times);
+		} finally {
+			client.stop();
+		}
+	}
+
+	private static void destroyExitCircuits(CircuitManagerImpl circuitManager) {
+		for(Circuit c: circuitManager.getCircuitsByFilter(circuit -> circuit instanceof ExitCircuit)) {
+			((CircuitImpl) c).destroyCircuit();
+		}
+	}
+
+	private static long timeToFirstByte(TorClient client, String host) throws Exception {
+		final long start = System.nanoTime();
+		final Stream stream = client.openExitStreamTo(host, 80);
+		try {
+			final OutputStream out = stream.getOutputStream();
+			out.write(("HEAD / HTTP/1.0\r\nHost: "+ host +"\r\n\r\n").getBytes(Tor.getDefaultCharset()));
+			out.flush();
+			final InputStream in = stream.getInputStream();
+			if(in.read() == -1) {
+				throw new IllegalStateException("Stream closed before response");
+			}
+			return (System.nanoTime() - start) / 1000000;
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static void printResults(String host, int samples, List<Long> times) {
+		Collections.sort(times);
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"host\": \"").append(host).append("\", \"samples\": ").append(samples);
+		sb.append(", \"completed\": ").append(times.size());
+		if(!times.isEmpty()) {
+			sb.append(String.format(Locale.ROOT, ", \"medianMs\": %d, \"p90Ms\": %d, \"maxMs\": %d",
+					times.get(times.size() / 2), times.get((times.size() * 9) / 10), times.get(times.size() - 1)));
+		}
+		sb.append(", \"timesMs\": ").append(times).append("}");
+		System.out.println(sb);
+	}
+}
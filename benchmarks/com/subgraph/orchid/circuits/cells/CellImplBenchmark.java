@@ -0,0 +1,78 @@
+package com.subgraph.orchid.circuits.cells;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.Cell;
+
+/**
+ * Framing of fixed length cells, as done for every cell sent or received on a link.  The read
+ * benchmarks frame a buffer of {@value #CELL_COUNT} relay cells and release each cell, so
+ * the cell buffers come from the pool as they do on a busy connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CellImplBenchmark {
+	private final static int CELL_COUNT = 64;
+
+	private byte[] data;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() {
+		buffer = ByteBuffer.allocate(CELL_COUNT * Cell.CELL_LEN);
+		for(int i = 0; i < CELL_COUNT; i++) {
+			final Cell cell = CellImpl.createCell(i + 1, Cell.RELAY);
+			cell.putByteArray(new byte[Cell.CELL_PAYLOAD_LEN]);
+			buffer.put(cell.getCellBytes(), 0, Cell.CELL_LEN);
+			cell.release();
+		}
+		data = buffer.array();
+	}
+
+	@Benchmark
+	public byte[] createCell() {
+		final Cell cell = CellImpl.createCell(1, Cell.RELAY);
+		final byte[] bytes = cell.getCellBytes();
+		cell.release();
+		return bytes;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CELL_COUNT)
+	public int readFromBuffer() {
+		buffer.clear();
+		int circuitIds = 0;
+		Cell cell;
+		while((cell = CellImpl.readFromBuffer(buffer)) != null) {
+			circuitIds += cell.getCircuitId();
+			cell.release();
+		}
+		return circuitIds;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CELL_COUNT)
+	public int readFromInputStream() throws IOException {
+		final ByteArrayInputStream input = new ByteArrayInputStream(data);
+		int circuitIds = 0;
+		for(int i = 0; i < CELL_COUNT; i++) {
+			final Cell cell = CellImpl.readFromInputStream(input);
+			circuitIds += cell.getCircuitId();
+			cell.release();
+		}
+		return circuitIds;
+	}
+}
@@ -0,0 +1,99 @@
+package com.subgraph.orchid.connections;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+import com.subgraph.orchid.crypto.TorStreamCipher;
+
+/**
+ * Delivery of received relay cells to many circuits sharing one connection.
+ * <p>
+ * Each circuit decrypts the cells it is given with its own stream cipher, which stands in for
+ * the per hop crypto of a real circuit.  With <code>dispatchThreads</code> set to 0 the cells
+ * are delivered on the thread reading the connection, otherwise on a dispatch pool of that size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CircuitDispatchBenchmark {
+    private final static int CELLS = 1024;
+
+    @Param({ "1", "64" })
+    public int circuitCount;
+
+    @Param({ "0", "4" })
+    public int dispatchThreads;
+
+    private final AtomicInteger delivered = new AtomicInteger();
+    private ExecutorService executor;
+    private CircuitTable table;
+    private int[] ids;
+
+    @Setup
+    public void setup() {
+        executor = (dispatchThreads == 0) ? null : Threading.newFixedPool("Benchmark cell dispatch", dispatchThreads);
+        table = new CircuitTable(1, executor);
+        ids = new int[circuitCount];
+        for(int i = 0; i < circuitCount; i++) {
+            ids[i] = table.bind(createCircuit());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public int dispatch() {
+        delivered.set(0);
+        for(int i = 0; i < CELLS; i++) {
+            final int id = ids[i % circuitCount];
+            table.getCellQueue(id).add(CellImpl.createCell(id, Cell.RELAY));
+        }
+        while(delivered.get() < CELLS) {
+            Thread.onSpinWait();
+        }
+        return delivered.get();
+    }
+
+    private Circuit createCircuit() {
+        final TorStreamCipher cipher = TorStreamCipher.createFromKeyBytes(new byte[TorStreamCipher.KEY_LEN]);
+        return (Circuit) Proxy.newProxyInstance(Circuit.class.getClassLoader(), new Class<?>[] { Circuit.class },
+                (proxy, method, args) -> {
+                    switch(method.getName()) {
+                    case "deliverRelayCell":
+                    case "deliverControlCell":
+                        final Cell cell = (Cell) args[0];
+                        cipher.encrypt(cell.getCellBytes(), Cell.CELL_HEADER_LEN, Cell.CELL_PAYLOAD_LEN);
+                        cell.release();
+                        delivered.incrementAndGet();
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,69 @@
+package com.subgraph.orchid.connections;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.Circuit;
+
+/**
+ * Circuit id lookups on a connection carrying many circuits, as done for every received cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CircuitTableBenchmark {
+    private final static int LOOKUPS = 1024;
+
+    @Param({ "8", "1000" })
+    public int circuitCount;
+
+    private CircuitTable table;
+    private int[] ids;
+    private Circuit extraCircuit;
+
+    @Setup
+    public void setup() {
+        table = new CircuitTable(0x8000);
+        final int[] boundIds = new int[circuitCount];
+        for(int i = 0; i < circuitCount; i++) {
+            boundIds[i] = table.bind(createCircuit());
+        }
+        ids = new int[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++) {
+            ids[i] = boundIds[(i * 7919) % circuitCount];
+        }
+        extraCircuit = createCircuit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup() {
+        int found = 0;
+        for(int id: ids) {
+            if(table.getCellQueue(id) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public boolean bindAndRemove() {
+        return table.remove(table.bind(extraCircuit), extraCircuit);
+    }
+
+    static Circuit createCircuit() {
+        return (Circuit) Proxy.newProxyInstance(Circuit.class.getClassLoader(), new Class<?>[] { Circuit.class },
+                (proxy, method, args) -> method.getName().equals("hashCode") ? System.identityHashCode(proxy) : null);
+    }
+}
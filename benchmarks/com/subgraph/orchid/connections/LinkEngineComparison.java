@@ -0,0 +1,225 @@
+package com.subgraph.orchid.connections;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.TorConfig;
+
+/**
+ * Compares the blocking and the selector connection engines while many links receive cells.
+ * <p>
+ * This is not a JMH benchmark since the number of threads and the resident set size are measured
+ * along with the throughput.  A TLS server on the loopback interface sends relay cells as fast as
+ * possible on every link.  Each engine is measured in a separate JVM, so that the threads and memory
+ * of the server and of the other engine are not counted.  Results are printed as one JSON object
+ * per engine.  The server certificate is created with the <code>keytool</code> of the running JDK.
+ * <pre>
+ *   gradle linkEngineComparison [-Plinks.count=256] [-Plinks.seconds=10]
+ * </pre>
+ */
+public class LinkEngineComparison {
+	private final static int CELLS_PER_WRITE = 64;
+	private final static long WARMUP_MS = 2000;
+	private final static String PASSWORD = "benchmark";
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("client")) {
+			runClient(TorConfig.ConnectionEngine.valueOf(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+			return;
+		}
+		final int linkCount = (args.length > 0) ? Integer.parseInt(args[0]) : 256;
+		final int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		final SSLServerSocket serverSocket = (SSLServerSocket) createServerContext().getServerSocketFactory().createServerSocket(0, linkCount, InetAddress.getLoopbackAddress());
+		final Thread acceptor = new Thread(() -> acceptLoop(serverSocket), "Benchmark server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			for(TorConfig.ConnectionEngine engine: TorConfig.ConnectionEngine.values()) {
+				System.out.println(runClientProcess(engine, serverSocket.getLocalPort(), linkCount, seconds));
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	private static String runClientProcess(TorConfig.ConnectionEngine engine, int port, int linkCount, int seconds) throws Exception {
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LinkEngineComparison.class.getName(),
+				"client", engine.name(), Integer.toString(port), Integer.toString(linkCount), Integer.toString(seconds))
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+		final StringBuilder output = new StringBuilder();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				output.append(line);
+			}
+		}
+		if(process.waitFor() != 0) {
+			throw new IOException("Client for "+ engine +" engine failed");
+		}
+		return output.toString();
+	}
+
+	private static void runClient(TorConfig.ConnectionEngine engine, int port, int linkCount, int seconds) throws Exception {
+		final AtomicLong cellCount = new AtomicLong();
+		final ConnectionSocketFactory factory = new ConnectionSocketFactory();
+		final ConnectionSelector selector = (engine == TorConfig.ConnectionEngine.SELECTOR) ? new ConnectionSelector() : null;
+		final List<ConnectionLink> links = new ArrayList<>();
+		try {
+			for(int i = 0; i < linkCount; i++) {
+				final ConnectionLink link = (selector != null) ?
+						new SelectorConnectionLink(factory.createEngine(), selector.chooseLoop()) :
+						new BlockingConnectionLink(factory.createSocket(), true);
+				link.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 10 * 1000);
+				link.getSession();
+				link.start(createConnection(link, cellCount));
+				links.add(link);
+			}
+			Thread.sleep(WARMUP_MS);
+			final long start = System.nanoTime();
+			final long startCount = cellCount.get();
+			Thread.sleep(seconds * 1000L);
+			final double elapsed = (System.nanoTime() - start) / 1e9;
+			final long cells = cellCount.get() - startCount;
+			final int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+			System.out.println(String.format(Locale.ROOT,
+					"{\"engine\":\"%s\",\"links\":%d,\"threads\":%d,\"rssKb\":%d,\"cellsPerSecond\":%.0f}",
+					engine, linkCount, threads, getResidentSetKb(), cells / elapsed));
+		} finally {
+			for(ConnectionLink link: links) {
+				link.close();
+			}
+			if(selector != null) {
+				selector.close();
+			}
+		}
+		System.exit(0);
+	}
+
+	/* Counts and releases every cell instead of processing it */
+	private static ConnectionImpl createConnection(ConnectionLink link, final AtomicLong cellCount) {
+		return new ConnectionImpl(createConfig(), link, null, null, false, null) {
+			@Override
+			void processCell(Cell cell) {
+				cellCount.incrementAndGet();
+				cell.release();
+			}
+
+			@Override
+			void linkClosed(IOException e) {}
+		};
+	}
+
+	/* Every option has its zero value, only the cell scheduler reads the configuration here */
+	private static TorConfig createConfig() {
+		return (TorConfig) Proxy.newProxyInstance(TorConfig.class.getClassLoader(), new Class<?>[] { TorConfig.class },
+				(proxy, method, args) -> {
+					final Class<?> type = method.getReturnType();
+					if(type == long.class) {
+						return 0L;
+					} else if(type == int.class) {
+						return 0;
+					} else if(type == boolean.class) {
+						return false;
+					}
+					return null;
+				});
+	}
+
+	/* Returns -1 where /proc is not available */
+	private static long getResidentSetKb() throws IOException {
+		final File status = new File("/proc/self/status");
+		if(!status.exists()) {
+			return -1;
+		}
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), StandardCharsets.US_ASCII))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", ""));
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static void acceptLoop(SSLServerSocket serverSocket) {
+		while(!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				final Thread writer = new Thread(() -> writeCells(socket), "Benchmark server writer");
+				writer.setDaemon(true);
+				writer.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	/* Runs until the client closes the connection */
+	private static void writeCells(Socket socket) {
+		final byte[] cells = new byte[CELLS_PER_WRITE * Cell.CELL_LEN];
+		for(int i = 0; i < CELLS_PER_WRITE; i++) {
+			cells[i * Cell.CELL_LEN + 1] = 1;
+			cells[i * Cell.CELL_LEN + 2] = Cell.RELAY;
+		}
+		try(OutputStream out = socket.getOutputStream()) {
+			while(true) {
+				out.write(cells);
+			}
+		} catch (IOException e) {
+			return;
+		}
+	}
+
+	private static SSLContext createServerContext() throws Exception {
+		final File keystoreFile = File.createTempFile("orchid-benchmark", ".p12");
+		keystoreFile.delete();
+		try {
+			final String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+			final Process process = new ProcessBuilder(keytool, "-genkeypair", "-keyalg", "RSA", "-keysize", "2048",
+					"-alias", "server", "-dname", "CN=orchid-benchmark", "-validity", "2", "-storetype", "PKCS12",
+					"-keystore", keystoreFile.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+					.redirectErrorStream(true)
+					.start();
+			process.getInputStream().transferTo(OutputStream.nullOutputStream());
+			if(process.waitFor() != 0) {
+				throw new IOException("keytool failed to create the server certificate");
+			}
+			final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try(InputStream in = Files.newInputStream(keystoreFile.toPath())) {
+				keyStore.load(in, PASSWORD.toCharArray());
+			}
+			final KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			kmf.init(keyStore, PASSWORD.toCharArray());
+			final SSLContext context = SSLContext.getInstance("TLS");
+			context.init(kmf.getKeyManagers(), null, null);
+			return context;
+		} finally {
+			keystoreFile.delete();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.data.HexDigest;
+
+/**
+ * The client side of the circuit handshakes and the key derivation functions.
+ * <p>
+ * The ntor benchmark answers every handshake with the same server response.  The response does
+ * not authenticate, but the client does the same work for it as for a valid one.  Run with
+ * <code>-Pjmh.profilers=gc</code> to see the allocation per handshake.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HandshakeBenchmark {
+
+	private HexDigest identity;
+	private byte[] onionKey;
+	private byte[] serverResponse;
+	private byte[] secretKey;
+	private byte[] seed;
+	private final byte[] keyMaterial = new byte[72];
+	private final byte[] verifyHash = new byte[32];
+	private final byte[] tapVerifyHash = new byte[20];
+
+	@Setup
+	public void setup() {
+		final TorRandom random = new TorRandom();
+		identity = HexDigest.createFromDigestBytes(random.getBytes(20));
+		onionKey = TorNTorKeyPairPool.generateKeyPair(random).getPublicKey();
+		serverResponse = new byte[64];
+		System.arraycopy(TorNTorKeyPairPool.generateKeyPair(random).getPublicKey(), 0, serverResponse, 0, 32);
+		secretKey = random.getBytes(32);
+		seed = random.getBytes(32);
+	}
+
+	@Benchmark
+	public boolean ntorClientHandshake() {
+		final TorNTorKeyAgreement agreement = new TorNTorKeyAgreement(identity, onionKey);
+		agreement.createOnionSkin();
+		return agreement.deriveKeysFromHandshakeResponse(serverResponse, keyMaterial, verifyHash);
+	}
+
+	@Benchmark
+	public byte[] ntorKeyPair() {
+		return TorNTorKeyPairPool.take().getPublicKey();
+	}
+
+	@Benchmark
+	public byte[] scalarMultBaseSelected() {
+		final byte[] out = new byte[32];
+		TorCurve25519.getInstance().scalarMultBase(out, secretKey);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] scalarMultBaseBundledTable() {
+		final byte[] out = new byte[32];
+		Curve25519FixedBase.scalarMultBase(out, secretKey);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] scalarMultBaseBundledLadder() {
+		final byte[] out = new byte[32];
+		Curve25519.crypto_scalarmult(out, secretKey, Curve25519.basev);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] rfc5869KeyDerivation() {
+		new TorRFC5869KeyDerivation(seed).deriveKeys(keyMaterial, verifyHash);
+		return keyMaterial;
+	}
+
+	@Benchmark
+	public byte[] torKeyDerivation() {
+		new TorKeyDerivation(seed).deriveKeys(keyMaterial, tapVerifyHash);
+		return keyMaterial;
+	}
+}
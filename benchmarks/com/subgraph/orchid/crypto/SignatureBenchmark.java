@@ -0,0 +1,111 @@
+package com.subgraph.orchid.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Verification of a batch of directory signatures.
+ * <p>
+ * A batch of 9 stands for the authority signatures of a consensus and a batch of 500 for a
+ * download of router descriptors.  The signatures are made with generated 1024 bit keys over
+ * generated digests, so that no recorded directory documents are needed.  The
+ * <code>reload</code> benchmark loads the saved signature cache before verifying, as happens
+ * when the cached documents are read again at startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignatureBenchmark {
+	private final static int KEY_COUNT = 9;
+
+	@Param({ "9", "500" })
+	public int signatureCount;
+
+	private TorPublicKey[] keys;
+	private TorMessageDigest[] digests;
+	private TorSignature[] signatures;
+	private ByteBuffer savedCache;
+
+	@Setup
+	public void setup() throws Exception {
+		final TorPrivateKey[] privateKeys = new TorPrivateKey[KEY_COUNT];
+		for(int i = 0; i < KEY_COUNT; i++) {
+			privateKeys[i] = TorPrivateKey.generateNewKeypair();
+		}
+		keys = new TorPublicKey[signatureCount];
+		digests = new TorMessageDigest[signatureCount];
+		signatures = new TorSignature[signatureCount];
+		for(int i = 0; i < signatureCount; i++) {
+			keys[i] = privateKeys[i % KEY_COUNT].getPublicKey();
+			digests[i] = new TorMessageDigest();
+			digests[i].update("document "+ i);
+			signatures[i] = sign(privateKeys[i % KEY_COUNT], digests[i].getDigestBytes());
+		}
+		final TorSignatureCache cache = TorSignatureCache.getInstance();
+		cache.clear();
+		verifySequentially();
+		savedCache = cache.saveToBuffer();
+	}
+
+	@Benchmark
+	public int sequential() {
+		TorSignatureCache.getInstance().clear();
+		return verifySequentially();
+	}
+
+	@Benchmark
+	public int parallel() {
+		TorSignatureCache.getInstance().clear();
+		final List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(signatureCount);
+		for(int i = 0; i < signatureCount; i++) {
+			tasks.add(TorSignatureVerifier.verify(keys[i], signatures[i], digests[i]));
+		}
+		int valid = 0;
+		for(ForkJoinTask<Boolean> task: tasks) {
+			if(task.join()) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public int reload() {
+		final TorSignatureCache cache = TorSignatureCache.getInstance();
+		cache.clear();
+		cache.loadFromBuffer(savedCache.duplicate());
+		return verifySequentially();
+	}
+
+	private int verifySequentially() {
+		int valid = 0;
+		for(int i = 0; i < signatureCount; i++) {
+			if(keys[i].verifySignature(signatures[i], digests[i])) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+
+	private static TorSignature sign(TorPrivateKey key, byte[] digest) throws Exception {
+		final Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key.getRSAPrivateKey());
+		final String encoded = Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(cipher.doFinal(digest));
+		return TorSignature.createFromPEMBuffer("-----BEGIN SIGNATURE-----\n"+ encoded +"\n-----END SIGNATURE-----\n");
+	}
+}
@@ -0,0 +1,57 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.Cell;
+
+/**
+ * The running digest operations on the relay cell path, for one cell payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TorMessageDigestBenchmark {
+
+	private TorMessageDigest digest;
+	private byte[] payload;
+	private byte[] notMatching;
+
+	@Setup
+	public void setup() {
+		digest = new TorMessageDigest();
+		digest.update(new byte[TorMessageDigest.TOR_DIGEST_SIZE]);
+		payload = new byte[Cell.CELL_PAYLOAD_LEN];
+		notMatching = new byte[4];
+		notMatching[0] = (byte) ~digest.peekDigest(payload, 0, payload.length)[0];
+	}
+
+	@Benchmark
+	public TorMessageDigest update() {
+		digest.update(payload, 0, payload.length);
+		return digest;
+	}
+
+	@Benchmark
+	public byte[] peekDigest() {
+		return digest.peekDigest(payload, 0, payload.length);
+	}
+
+	@Benchmark
+	public byte[] getDigestBytes() {
+		return digest.getDigestBytes();
+	}
+
+	/* A cell which is not for this hop leaves the running digest unchanged */
+	@Benchmark
+	public boolean updateIfDigestMatchesMiss() {
+		return digest.updateIfDigestMatches(payload, 0, payload.length, notMatching);
+	}
+}
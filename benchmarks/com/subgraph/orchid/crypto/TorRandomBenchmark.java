@@ -0,0 +1,37 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TorRandomBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		final TorRandom random = new TorRandom();
+	}
+
+	@Benchmark
+	public int constructAndUse() {
+		return new TorRandom().nextInt();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int sharedInstanceContended(Shared shared) {
+		return shared.random.nextInt();
+	}
+
+	@Benchmark
+	public byte[] getBytes(Shared shared) {
+		return shared.random.getBytes(32);
+	}
+}
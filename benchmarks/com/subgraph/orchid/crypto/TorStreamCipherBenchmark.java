@@ -0,0 +1,43 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.Cell;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TorStreamCipherBenchmark {
+
+	@Param({ "509", "8192" })
+	public int length;
+
+	private TorStreamCipher cipher;
+	private byte[] data;
+
+	@Setup
+	public void setup() {
+		cipher = TorStreamCipher.createFromKeyBytes(new byte[TorStreamCipher.KEY_LEN]);
+		data = new byte[Cell.CELL_HEADER_LEN + length];
+	}
+
+	@Benchmark
+	public byte[] encrypt() {
+		cipher.encrypt(data, Cell.CELL_HEADER_LEN, length);
+		return data;
+	}
+
+	@Benchmark
+	public TorStreamCipher createFromKeyBytes() {
+		return TorStreamCipher.createFromKeyBytes(new byte[TorStreamCipher.KEY_LEN]);
+	}
+}
@@ -0,0 +1,84 @@
+package com.subgraph.orchid.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.encoders.Base64;
+import com.subgraph.orchid.encoders.Hex;
+
+/**
+ * Digest conversions and decoding done for every router entry while parsing directory documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexDigestBenchmark {
+
+	private HexDigest digest;
+	private HexDigest equalDigest;
+	private String hexString;
+	private String base32String;
+	private String base64String;
+	private byte[] base64Key;
+
+	@Setup
+	public void setup() {
+		final TorRandom random = new TorRandom();
+		final byte[] digestBytes = random.getBytes(20);
+		digest = HexDigest.createFromDigestBytes(digestBytes);
+		equalDigest = HexDigest.createFromDigestBytes(digestBytes.clone());
+		hexString = digest.toString();
+		base32String = digest.toBase32();
+		base64String = digest.toBase64(false);
+		/* Size of the base64 body of a 1024 bit PEM encoded public key */
+		base64Key = Base64.encode(random.getBytes(140));
+	}
+
+	@Benchmark
+	public HexDigest createFromString() {
+		return HexDigest.createFromString(hexString);
+	}
+
+	@Benchmark
+	public HexDigest createFromBase32String() {
+		return HexDigest.createFromBase32String(base32String);
+	}
+
+	@Benchmark
+	public String toHexString() {
+		return digest.toString();
+	}
+
+	@Benchmark
+	public String toBase64() {
+		return digest.toBase64(false);
+	}
+
+	@Benchmark
+	public boolean equalsAndHashCode() {
+		return digest.hashCode() == equalDigest.hashCode() && digest.equals(equalDigest);
+	}
+
+	@Benchmark
+	public byte[] hexDecode() {
+		return Hex.decode(hexString);
+	}
+
+	@Benchmark
+	public byte[] base64DecodeDigest() {
+		return Base64.decode(base64String);
+	}
+
+	@Benchmark
+	public byte[] base64DecodeKey() {
+		return Base64.decode(base64Key);
+	}
+}
@@ -227,5 +227,12 @@ public interface Cell {
 	 */
 	byte[] getCellBytes();
 
+	/**
+	 * Return the buffer backing this cell to the cell buffer pool if it was allocated from the pool.
+	 * The cell must not be accessed again after it has been released.  Releasing a cell which does
+	 * not use a pooled buffer has no effect.
+	 */
+	void release();
+
 	void putString(String string);
 }
@@ -63,6 +63,23 @@ public interface CircuitNode {
 	 */
 	void waitForSendWindowAndDecrement();
 
+	/**
+	 * Return <code>true</code> if the packaging window for this node is open (ie: greater than 0).
+	 */
+	boolean isSendWindowOpen();
+
+	/**
+	 * Return the number of RELAY_DATA cells which can be sent to this node before the packaging
+	 * window closes.
+	 */
+	int getPackageWindow();
+
+	/**
+	 * If the packaging window for this node is open, decrement it by 1 and return <code>true</code>,
+	 * otherwise return <code>false</code> immediately without changing the window.
+	 */
+	boolean tryDecrementSendWindow();
+
 	/**
 	 * This method is called to signal that a RELAY_SENDME cell has been received from this
 	 * node and the packaging window should be incremented.  This will also wake up any threads
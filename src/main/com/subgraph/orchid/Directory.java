@@ -2,6 +2,7 @@ package com.subgraph.orchid;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.subgraph.orchid.ConsensusDocument.RequiredCertificate;
@@ -46,4 +47,8 @@ public interface Directory {
 	List<GuardEntry> getGuardEntries();
 	void removeGuardEntry(GuardEntry entry);
 	void addGuardEntry(GuardEntry entry);
+
+	Map<Integer, Integer> getCircuitBuildTimeHistogram();
+	int getAbandonedCircuitBuildCount();
+	void storeCircuitBuildTimes(Map<Integer, Integer> histogram, int abandonedCount);
 }
@@ -13,7 +13,8 @@ public interface DirectoryStore {
 		MICRODESCRIPTOR_JOURNAL("cached-microdescs.new"),
 		DESCRIPTOR_CACHE("cached-descriptors"),
 		DESCRIPTOR_JOURNAL("cached-descriptors.new"),
-		STATE("state");
+		STATE("state"),
+		VERIFIED_SIGNATURES("verified-signatures");
 
 		final private String filename;
 
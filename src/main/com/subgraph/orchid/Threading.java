@@ -3,8 +3,12 @@ package com.subgraph.orchid;
 import com.google.common.util.concurrent.CycleDetectingLockFactory;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.ReentrantLock;
@@ -21,6 +25,13 @@ public class Threading {
 	private static CycleDetectingLockFactory.Policy policy;
 	public static CycleDetectingLockFactory factory;
 
+	/*
+	 * Virtual threads are looked up reflectively so that Orchid still builds and runs on JVMs
+	 * without them.  On those JVMs enabling virtual threads has no effect.
+	 */
+	private final static Method virtualThreadBuilderMethod = findVirtualThreadBuilder();
+	private static volatile boolean useVirtualThreads;
+
 	public static ReentrantLock lock(String name) {
 		return factory.newReentrantLock(name);
 	}
@@ -46,11 +57,96 @@ public class Threading {
 		return policy;
 	}
 
+	/**
+	 * Run tasks started after this call on virtual threads if the JVM supports them.  This covers
+	 * every pool created with {@link #newPool(String)} and every thread created with
+	 * {@link #newThread(String, Runnable)}.  Scheduled pools always use platform threads.
+	 *
+	 * @return <code>true</code> if virtual threads are supported and are now enabled.
+	 */
+	public static boolean useVirtualThreads() {
+		useVirtualThreads = isVirtualThreadSupported();
+		return useVirtualThreads;
+	}
+
+	public static void usePlatformThreads() {
+		useVirtualThreads = false;
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return virtualThreadBuilderMethod != null;
+	}
+
+	public static boolean isUsingVirtualThreads() {
+		return useVirtualThreads;
+	}
+
 	public static ExecutorService newPool(final String name) {
-		ThreadFactory factory = new ThreadFactoryBuilder()
+		return Executors.newCachedThreadPool(newThreadFactory(name));
+	}
+
+	public static ExecutorService newFixedPool(final String name, int threadCount) {
+		return Executors.newFixedThreadPool(threadCount, newThreadFactory(name));
+	}
+
+	/**
+	 * Create a fork-join pool of at most <code>parallelism</code> daemon worker threads.
+	 */
+	public static ForkJoinPool newForkJoinPool(final String name, int parallelism) {
+		final AtomicInteger counter = new AtomicInteger();
+		final ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName(name + "-" + counter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		return new ForkJoinPool(parallelism, factory, null, false);
+	}
+
+	/**
+	 * Create a thread which has not yet been started.  This is a virtual thread if virtual threads
+	 * have been enabled, otherwise a daemon platform thread.
+	 */
+	public static Thread newThread(final String name, Runnable task) {
+		final Thread thread = newThreadFactory(name).newThread(task);
+		thread.setName(name);
+		return thread;
+	}
+
+	public static ThreadFactory newThreadFactory(final String name) {
+		if(useVirtualThreads) {
+			final ThreadFactory factory = createVirtualThreadFactory(name);
+			if(factory != null) {
+				return factory;
+			}
+		}
+		return new ThreadFactoryBuilder()
 				.setDaemon(true)
 				.setNameFormat(name + "-%d").build();
-		return Executors.newCachedThreadPool(factory);
+	}
+
+	private static Method findVirtualThreadBuilder() {
+		try {
+			final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			// Fails when virtual threads are a preview feature which has not been enabled
+			ofVirtual.invoke(null);
+			return ofVirtual;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory createVirtualThreadFactory(String name) {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			final Object builder = virtualThreadBuilderMethod.invoke(null);
+			final Object namedBuilder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	public static ScheduledExecutorService newSingleThreadScheduledPool(final String name) {
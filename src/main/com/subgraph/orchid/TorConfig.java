@@ -22,6 +22,9 @@ public interface TorConfig {
 	long getCircuitStreamTimeout();
 	void setCircuitStreamTimeout(long time, TimeUnit unit);
 	
+	long getStreamRaceDelay();
+	void setStreamRaceDelay(long time, TimeUnit unit);
+	
 	long getCircuitIdleTimeout();
 	void setCircuitIdleTimeout(long time, TimeUnit unit);
 	
@@ -88,6 +91,21 @@ public interface TorConfig {
 	
 	boolean getHandshakeV2Enabled();
 	void setHandshakeV2Enabled(boolean value);
+
+	ConnectionEngine getConnectionEngine();
+	void setConnectionEngine(ConnectionEngine value);
+
+	boolean getBufferedCellReads();
+	void setBufferedCellReads(boolean value);
+
+	long getCircuitPriorityHalflife();
+	void setCircuitPriorityHalflife(long time, TimeUnit unit);
+
+	int getCircuitDispatchThreads();
+	void setCircuitDispatchThreads(int value);
+
+	int getLinksPerRouter();
+	void setLinksPerRouter(int value);
 	
 	HSDescriptorCookie getHidServAuth(String key);
 	void addHidServAuth(String key, String value);
@@ -106,4 +124,11 @@ public interface TorConfig {
 	void addBridge(IPv4Address address, int port, HexDigest fingerprint);
 	
 	enum AutoBoolValue { TRUE, FALSE, AUTO }
+
+	/**
+	 * Selects how OR connections are driven.  <code>BLOCKING</code> runs one reader thread per
+	 * connection over an <code>SSLSocket</code>, <code>SELECTOR</code> multiplexes all connections
+	 * over a small set of selector threads using <code>SSLEngine</code> and <code>SocketChannel</code>.
+	 */
+	enum ConnectionEngine { BLOCKING, SELECTOR }
 }
\ No newline at end of file
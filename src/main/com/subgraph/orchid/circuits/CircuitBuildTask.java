@@ -76,12 +76,12 @@ public class CircuitBuildTask implements Runnable {
 
     private void connectionFailed(String message) {
         creationRequest.connectionFailed(message);
-        circuit.notifyCircuitBuildFailed();
+        circuit.notifyCircuitBuildFailed(creationRequest.getPathLength());
     }
 
     private void circuitBuildFailed(String message) {
         creationRequest.circuitBuildFailed(message);
-        circuit.notifyCircuitBuildFailed();
+        circuit.notifyCircuitBuildFailed(creationRequest.getPathLength());
         if(connection != null) {
             connection.removeCircuit(circuit);
         }
@@ -0,0 +1,301 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.subgraph.orchid.Directory;
+import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.GuardedBy;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Learns the circuit build timeout from the build times of recently completed circuits.
+ * <p>
+ * This follows the circuit build timeout algorithm of Tor (see circuitstats.c and proposal 151).
+ * The build times of the last {@value #MAX_RECORDED_BUILDS} circuits are kept, and once at least
+ * {@value #MIN_BUILDS_TO_COMPUTE} have been recorded a Pareto distribution is fitted to them.
+ * The timeout is the point of this distribution below which {@value #TIMEOUT_QUANTILE} of builds
+ * complete, so that the slowest builds are abandoned instead of holding a pending circuit slot for
+ * the full {@value #DEFAULT_TIMEOUT_MS} milliseconds.
+ * <p>
+ * Builds which were abandoned when the timeout expired are recorded as well, and are assumed to
+ * have taken as long as the slowest completed build when fitting the distribution.  If nearly all
+ * recent builds time out, the network conditions are assumed to have changed and the recorded
+ * build times are discarded.
+ * <p>
+ * The build times are stored as a histogram in the state file, so that a learned timeout is
+ * available immediately after a restart.
+ */
+@ThreadSafe
+public class CircuitBuildTimes {
+    private static final Logger logger = Logger.getInstance(CircuitBuildTimes.class);
+
+    final static long DEFAULT_TIMEOUT_MS = 30 * 1000;
+    final static long MIN_TIMEOUT_MS = 1500;
+    final static int MAX_RECORDED_BUILDS = 1000;
+    final static int MIN_BUILDS_TO_COMPUTE = 100;
+    final static int BIN_WIDTH_MS = 10;
+    final static double TIMEOUT_QUANTILE = 0.8;
+
+    /* Number of most frequent histogram bins averaged to estimate the Pareto scale parameter */
+    private final static int MODE_COUNT = 10;
+    /* Reset when this many of the last RECENT_BUILD_COUNT builds have timed out */
+    private final static int RECENT_BUILD_COUNT = 20;
+    private final static int MAX_RECENT_TIMEOUTS = 18;
+    /* Write the histogram to the state file after this many new builds */
+    private final static int STORE_INTERVAL = 10;
+
+    private final static int ABANDONED = -1;
+
+    private final Directory directory;
+
+    @GuardedBy("this") private final int[] buildTimes = new int[MAX_RECORDED_BUILDS];
+    @GuardedBy("this") private int buildTimesIndex;
+    @GuardedBy("this") private int buildTimesCount;
+    @GuardedBy("this") private final boolean[] recentTimeouts = new boolean[RECENT_BUILD_COUNT];
+    @GuardedBy("this") private int recentIndex;
+    @GuardedBy("this") private int unstoredCount;
+    private volatile boolean isLoaded;
+
+    private volatile long timeoutMs = DEFAULT_TIMEOUT_MS;
+
+    CircuitBuildTimes(Directory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Return the number of milliseconds a circuit build may take before it is abandoned.
+     */
+    long getTimeout() {
+        if(!isLoaded) {
+            loadIfNeeded();
+        }
+        return timeoutMs;
+    }
+
+    /**
+     * Record the time taken to build a circuit.
+     *
+     * @param milliseconds Time from starting the build to completing the last hop.
+     */
+    void addBuildTime(long milliseconds) {
+        if(milliseconds <= 0) {
+            return;
+        }
+        synchronized(this) {
+            loadIfNeeded();
+            addRecord((int) Math.min(milliseconds, Integer.MAX_VALUE));
+            addRecentOutcome(false);
+            updateTimeout();
+        }
+        storeIfNeeded();
+    }
+
+    /**
+     * Record a circuit build which was abandoned because the build timeout expired.
+     */
+    void addAbandonedBuild() {
+        synchronized(this) {
+            loadIfNeeded();
+            addRecord(ABANDONED);
+            if(addRecentOutcome(true)) {
+                logger.info("Most recent circuit builds have timed out, resetting circuit build timeout");
+                resetBuildTimes();
+            }
+            updateTimeout();
+        }
+        storeIfNeeded();
+    }
+
+    /**
+     * Write the recorded build times to the state file if any were added since they were last written.
+     */
+    void store() {
+        store(1);
+    }
+
+    private void storeIfNeeded() {
+        store(STORE_INTERVAL);
+    }
+
+    private void store(int minimumUnstored) {
+        final Map<Integer, Integer> histogram;
+        final int abandonedCount;
+        synchronized(this) {
+            if(!isLoaded || unstoredCount < minimumUnstored) {
+                return;
+            }
+            unstoredCount = 0;
+            histogram = getHistogram();
+            abandonedCount = getAbandonedCount();
+        }
+        directory.storeCircuitBuildTimes(histogram, abandonedCount);
+    }
+
+    /**
+     * Load the build times stored in the state file, unless they have been loaded already.
+     */
+    synchronized void loadIfNeeded() {
+        if(isLoaded) {
+            return;
+        }
+        isLoaded = true;
+        load(directory.getCircuitBuildTimeHistogram(), directory.getAbandonedCircuitBuildCount());
+    }
+
+    @GuardedBy("this")
+    private void load(Map<Integer, Integer> histogram, int abandonedCount) {
+        final List<Integer> loaded = new ArrayList<>();
+        for(Map.Entry<Integer, Integer> e: histogram.entrySet()) {
+            if(e.getKey() > 0) {
+                addLoadedCount(loaded, e.getKey(), e.getValue());
+            }
+        }
+        addLoadedCount(loaded, ABANDONED, abandonedCount);
+        /* Shuffle so that truncating or later overwriting the oldest entries does not favor any bins */
+        final TorRandom random = new TorRandom();
+        for(int i = loaded.size() - 1; i > 0; i--) {
+            Collections.swap(loaded, i, random.nextInt(i + 1));
+        }
+        for(int value: loaded) {
+            addRecord(value);
+        }
+        unstoredCount = 0;
+        updateTimeout();
+        if(buildTimesCount > 0) {
+            logger.debug("Loaded "+ buildTimesCount +" circuit build times, build timeout is "+ timeoutMs +" ms");
+        }
+    }
+
+    /* The state file may have been edited, so never load more than MAX_RECORDED_BUILDS in total */
+    private static void addLoadedCount(List<Integer> loaded, int value, int count) {
+        final int n = Math.min(Math.max(count, 0), MAX_RECORDED_BUILDS - loaded.size());
+        loaded.addAll(Collections.nCopies(n, value));
+    }
+
+    @GuardedBy("this")
+    private void addRecord(int value) {
+        buildTimes[buildTimesIndex] = value;
+        buildTimesIndex = (buildTimesIndex + 1) % MAX_RECORDED_BUILDS;
+        if(buildTimesCount < MAX_RECORDED_BUILDS) {
+            buildTimesCount += 1;
+        }
+        unstoredCount += 1;
+    }
+
+    /* Returns true if too many of the recent builds have timed out */
+    @GuardedBy("this")
+    private boolean addRecentOutcome(boolean isTimeout) {
+        recentTimeouts[recentIndex] = isTimeout;
+        recentIndex = (recentIndex + 1) % RECENT_BUILD_COUNT;
+        int timeoutCount = 0;
+        for(boolean b: recentTimeouts) {
+            if(b) {
+                timeoutCount += 1;
+            }
+        }
+        return timeoutCount >= MAX_RECENT_TIMEOUTS;
+    }
+
+    @GuardedBy("this")
+    private void resetBuildTimes() {
+        buildTimesIndex = 0;
+        buildTimesCount = 0;
+        recentIndex = 0;
+        for(int i = 0; i < RECENT_BUILD_COUNT; i++) {
+            recentTimeouts[i] = false;
+        }
+        unstoredCount += 1;
+    }
+
+    @GuardedBy("this")
+    private void updateTimeout() {
+        final long computed = computeTimeout();
+        if(computed > 0) {
+            timeoutMs = Math.max(MIN_TIMEOUT_MS, Math.min(DEFAULT_TIMEOUT_MS, computed));
+        } else {
+            timeoutMs = DEFAULT_TIMEOUT_MS;
+        }
+    }
+
+    /* Returns 0 if there are not enough build times to fit the distribution */
+    @GuardedBy("this")
+    private long computeTimeout() {
+        if(buildTimesCount - getAbandonedCount() < MIN_BUILDS_TO_COMPUTE) {
+            return 0;
+        }
+        final double xm = estimateScale();
+        int n = 0;
+        int abandoned = 0;
+        int maxTime = 0;
+        double sumLog = 0;
+        for(int i = 0; i < buildTimesCount; i++) {
+            final int t = buildTimes[i];
+            if(t == ABANDONED) {
+                abandoned += 1;
+                continue;
+            }
+            maxTime = Math.max(maxTime, t);
+            sumLog += Math.log(Math.max(t, xm));
+            n += 1;
+        }
+        /*
+         * Abandoned builds are censored observations, assume they took as long as the slowest build.
+         * They add to the sum of logs but not to the count in the numerator of the estimate of alpha,
+         * otherwise each abandoned build would shorten the timeout and cause more builds to be abandoned.
+         */
+        sumLog += abandoned * Math.log(Math.max(maxTime, xm));
+        sumLog -= (n + abandoned) * Math.log(xm);
+        if(sumLog <= 0) {
+            return 0;
+        }
+        final double alpha = n / sumLog;
+        return (long) (xm / Math.pow(1.0 - TIMEOUT_QUANTILE, 1.0 / alpha));
+    }
+
+    /* Weighted average of the midpoints of the most frequent histogram bins */
+    @GuardedBy("this")
+    private double estimateScale() {
+        final Map<Integer, Integer> histogram = getHistogram();
+        final List<Map.Entry<Integer, Integer>> bins = new ArrayList<>(histogram.entrySet());
+        bins.sort((a, b) -> b.getValue() - a.getValue());
+        long weightedSum = 0;
+        long count = 0;
+        for(int i = 0; i < MODE_COUNT && i < bins.size(); i++) {
+            weightedSum += (long) bins.get(i).getKey() * bins.get(i).getValue();
+            count += bins.get(i).getValue();
+        }
+        return (double) weightedSum / count;
+    }
+
+    /* Completed build times by bin midpoint in milliseconds */
+    @GuardedBy("this")
+    private Map<Integer, Integer> getHistogram() {
+        final Map<Integer, Integer> histogram = new TreeMap<>();
+        for(int i = 0; i < buildTimesCount; i++) {
+            if(buildTimes[i] != ABANDONED) {
+                histogram.merge(toBinMidpoint(buildTimes[i]), 1, Integer::sum);
+            }
+        }
+        return histogram;
+    }
+
+    @GuardedBy("this")
+    private int getAbandonedCount() {
+        int count = 0;
+        for(int i = 0; i < buildTimesCount; i++) {
+            if(buildTimes[i] == ABANDONED) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private static int toBinMidpoint(int milliseconds) {
+        return (milliseconds / BIN_WIDTH_MS) * BIN_WIDTH_MS + BIN_WIDTH_MS / 2;
+    }
+}
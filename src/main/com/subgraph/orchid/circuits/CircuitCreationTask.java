@@ -3,7 +3,6 @@ package com.subgraph.orchid.circuits;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -18,7 +17,6 @@ import com.subgraph.orchid.InternalCircuit;
 import com.subgraph.orchid.Router;
 import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorConfig;
-import com.subgraph.orchid.circuits.CircuitManagerImpl.CircuitFilter;
 import com.subgraph.orchid.circuits.path.CircuitPathChooser;
 import com.subgraph.orchid.data.exitpolicy.ExitTarget;
 import com.subgraph.orchid.logging.Logger;
@@ -28,6 +26,7 @@ public class CircuitCreationTask implements Runnable {
     private static final Logger logger = Logger.getInstance(CircuitCreationTask.class);
     private final static int MAX_CIRCUIT_DIRTINESS = 300; // seconds
     private final static int MAX_PENDING_CIRCUITS = 4;
+    private final static int DIRECTORY_INFORMATION_RETRY_INTERVAL = 1000;
 
     private final TorConfig config;
     private final Directory directory;
@@ -63,12 +62,22 @@ public class CircuitCreationTask implements Runnable {
         return predictor;
     }
 
+    /* Periodic sweep */
     @Override
     public void run() {
         expireOldCircuits();
+        checkCircuits();
+    }
+
+    /**
+     * Assign pending streams to open circuits and launch circuit builds for the streams and
+     * predicted ports which no circuit can handle yet.  Called by the periodic sweep and whenever
+     * a stream request arrives, a circuit build finishes or the consensus changes.
+     */
+    void checkCircuits() {
         assignPendingStreamsToActiveCircuits();
         checkExpiredPendingCircuits();
-        checkCircuitsForCreation();		
+        checkCircuitsForCreation();
     }
 
     void predictPort(int port) {
@@ -81,32 +90,63 @@ public class CircuitCreationTask implements Runnable {
             return;
         }
 
-        for(ExitCircuit c: circuitManager.getRandomlyOrderedListOfExitCircuits()) {
-            pendingExitStreams.removeIf(streamExitRequest -> attemptHandleStreamRequest(c, streamExitRequest));
+        final List<CircuitLoad> circuits = new ArrayList<>();
+        for(CircuitImpl c: circuitManager.getCircuitRegistry().getCircuits(CircuitRegistry.Type.EXIT, CircuitRegistry.State.CONNECTED)) {
+            circuits.add(CircuitLoad.create((ExitCircuitImpl) c));
         }
+        attachPendingStreams(pendingExitStreams, circuits);
     }
 
-    private boolean attemptHandleStreamRequest(ExitCircuit c, StreamExitRequest request) {
-        if(c.canHandleExitTo(request)) {
-            if(request.reserveRequest()) {
-                launchExitStreamTask(c, request);
+    private void attachPendingStreams(List<StreamExitRequest> pendingExitStreams, List<CircuitLoad> circuits) {
+        final StreamAttachmentPolicy policy = circuitManager.getStreamAttachmentPolicy();
+        for(StreamExitRequest request: pendingExitStreams) {
+            final CircuitLoad load = policy.chooseCircuit(request, circuits);
+            // if the request is already reserved another circuit is already trying to handle it
+            if(load != null && request.reserveRequest()) {
+                load.addStream();
+                launchExitStreamTask(load.getCircuit(), request);
             }
-            // else request is reserved meaning another circuit is already trying to handle it
-            return true;
         }
-        return false;
     }
 
-    private void launchExitStreamTask(ExitCircuit circuit, StreamExitRequest exitRequest) {
-        final OpenExitStreamTask task = new OpenExitStreamTask(circuit, exitRequest);
-        executor.execute(task);
+    private void launchExitStreamTask(ExitCircuitImpl circuit, StreamExitRequest exitRequest) {
+        exitRequest.addAttempt();
+        executor.execute(new OpenExitStreamTask(circuit, exitRequest));
+        final long raceDelay = config.getStreamRaceDelay();
+        if(raceDelay > 0) {
+            final int round = exitRequest.getRound();
+            circuitManager.scheduleTask(() -> raceExitStream(circuit, exitRequest, round), raceDelay);
+        }
+    }
+
+    /*
+     * If the exit has not answered the RELAY_BEGIN yet, open the same stream on a second circuit.
+     * Whichever connects first is used and the other stream is closed.
+     */
+    private void raceExitStream(ExitCircuitImpl firstCircuit, StreamExitRequest exitRequest, int round) {
+        if(exitRequest.isCompleted()) {
+            return;
+        }
+        final List<CircuitLoad> circuits = new ArrayList<>();
+        for(CircuitImpl c: circuitManager.getCircuitRegistry().getCircuits(CircuitRegistry.Type.EXIT, CircuitRegistry.State.CONNECTED)) {
+            if(c != firstCircuit) {
+                circuits.add(CircuitLoad.create((ExitCircuitImpl) c));
+            }
+        }
+        final CircuitLoad load = circuitManager.getStreamAttachmentPolicy().chooseCircuit(exitRequest, circuits);
+        if(load != null && exitRequest.addRacingAttempt(round)) {
+            logger.debug("Stream to "+ exitRequest +" not connected after "+ config.getStreamRaceDelay() +" ms, also trying on "+ load.getCircuit());
+            executor.execute(new OpenExitStreamTask(load.getCircuit(), exitRequest));
+        }
     }
 
     private void expireOldCircuits() {
-        final Set<Circuit> circuits = circuitManager.getCircuitsByFilter(circuit -> !circuit.isMarkedForClose() && circuit.getSecondsDirty() > MAX_CIRCUIT_DIRTINESS);
-        for(Circuit c: circuits) {
-            logger.debug("Closing idle dirty circuit: "+ c);
-            c.markForClose();
+        /* Only connected circuits carry streams, so only they can become dirty */
+        for(CircuitImpl c: circuitManager.getCircuitRegistry().getCircuits(CircuitRegistry.State.CONNECTED)) {
+            if(c.getSecondsDirty() > MAX_CIRCUIT_DIRTINESS) {
+                logger.debug("Closing idle dirty circuit: "+ c);
+                c.markForClose();
+            }
         }
     }
     private void checkExpiredPendingCircuits() {
@@ -119,6 +159,8 @@ public class CircuitCreationTask implements Runnable {
                     if(notEnoughDirectoryInformationWarningCounter % 50 == 0)
                             logger.info("Cannot build circuits because we don't have enough directory information");
                     notEnoughDirectoryInformationWarningCounter++;
+                    /* No event is fired when enough descriptors have been downloaded */
+                    circuitManager.requestCircuitCheck(DIRECTORY_INFORMATION_RETRY_INTERVAL);
                     return;
             }
 
@@ -172,17 +214,18 @@ public class CircuitCreationTask implements Runnable {
         circuitManager.incrementPendingInternalCircuitCount();
     }
 
-    private int countCircuitsSupportingTarget(final ExitTarget target, final boolean needClean) {
-        final CircuitFilter filter = circuit -> {
-            if(!(circuit instanceof ExitCircuit)) {
-                return false;
+    private int countCircuitsSupportingTarget(ExitTarget target, boolean needClean) {
+        final StreamAttachmentPolicy policy = circuitManager.getStreamAttachmentPolicy();
+        int count = 0;
+        /* Pending and connected exit circuits whose exit policy accepts the port */
+        for(ExitCircuitImpl ec: circuitManager.getCircuitRegistry().getExitCircuitsForPort(target.getPort())) {
+            final boolean isCleanIfNeeded = !(needClean && !ec.isClean());
+            /* A circuit which already carries as many streams as the policy allows does not count */
+            if(isCleanIfNeeded && policy.hasCapacity(ec) && ec.canHandleExitTo(target)) {
+                count += 1;
             }
-            final ExitCircuit ec = (ExitCircuit) circuit;
-            final boolean pendingOrConnected = circuit.isPending() || circuit.isConnected();
-            final boolean isCleanIfNeeded = !(needClean && !circuit.isClean());
-            return pendingOrConnected && isCleanIfNeeded && ec.canHandleExitTo(target);
-        };
-        return circuitManager.getCircuitsByFilter(filter).size();
+        }
+        return count;
     }
 
     private void buildCircuitToHandleExitTargets(List<ExitTarget> exitTargets) {
@@ -225,7 +268,6 @@ public class CircuitCreationTask implements Runnable {
             @Override
             public void circuitBuildFailed(String reason) {
                 logger.debug("Circuit build failed: "+ reason);
-                buildCircuitIfNeeded();
             }
 
             @Override
@@ -236,7 +278,6 @@ public class CircuitCreationTask implements Runnable {
             @Override
             public void connectionFailed(String reason) {
                 logger.debug("Circuit connection failed: "+ reason);
-                buildCircuitIfNeeded();
             }
 
             @Override
@@ -250,13 +291,10 @@ public class CircuitCreationTask implements Runnable {
         if(!(circuit instanceof ExitCircuit)) {
             return;
         }
-        final ExitCircuit ec = (ExitCircuit) circuit;
         final List<StreamExitRequest> pendingExitStreams = circuitManager.getPendingExitStreams();
-        for(StreamExitRequest req: pendingExitStreams) {
-            if(ec.canHandleExitTo(req) && req.reserveRequest()) {
-                launchExitStreamTask(ec, req);
-            }
-        }
+        final List<CircuitLoad> circuits = new ArrayList<>();
+        circuits.add(CircuitLoad.create((ExitCircuitImpl) circuit));
+        attachPendingStreams(pendingExitStreams, circuits);
     }
 
     private CircuitBuildHandler createInternalCircuitBuildHandler() {
@@ -24,10 +24,10 @@ import com.subgraph.orchid.circuits.cells.RelayCellImpl;
 import com.subgraph.orchid.dashboard.DashboardRenderable;
 import com.subgraph.orchid.dashboard.DashboardRenderer;
 import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.GuardedBy;
 
 public class CircuitIO implements DashboardRenderable {
     private static final Logger logger = Logger.getInstance(CircuitIO.class);
-    private final static long CIRCUIT_BUILD_TIMEOUT_MS = 30 * 1000;
     private final static long CIRCUIT_RELAY_RESPONSE_TIMEOUT = 20 * 1000;
 
     private final CircuitImpl circuit;
@@ -39,6 +39,7 @@ public class CircuitIO implements DashboardRenderable {
     private final Map<Integer, StreamImpl> streamMap;
     private final ReentrantLock streamLock = Threading.lock("stream");
     private final ReentrantLock relaySendLock = Threading.lock("relaySend");
+    private final RelayCellSendQueue sendQueue = new RelayCellSendQueue();
 
     private boolean isMarkedForClose;
     private boolean isClosed;
@@ -77,6 +78,7 @@ public class CircuitIO implements DashboardRenderable {
                 return RelayCellImpl.createFromCell(node, cell);
             }
         }
+        cell.release();
         destroyCircuit();
         throw new TorException("Could not decrypt relay cell");
     }
@@ -103,19 +105,23 @@ public class CircuitIO implements DashboardRenderable {
 
     private long remainingBuildTime() {
         final long elapsed = circuit.getStatus().getMillisecondsElapsedSinceCreated();
-        if(elapsed == 0 || elapsed >= CIRCUIT_BUILD_TIMEOUT_MS)
+        final long timeout = circuit.getBuildTimeout();
+        if(elapsed == 0 || elapsed >= timeout)
             return 0;
-        return CIRCUIT_BUILD_TIMEOUT_MS - elapsed;
+        return timeout - elapsed;
     }
 
     /*
-     * This is called by the cell reading thread in ConnectionImpl to deliver control cells 
-     * associated with this circuit (CREATED, CREATED_FAST, or DESTROY).
+     * This is called by the connection to deliver control cells associated with this circuit
+     * (CREATED, CREATED_FAST, or DESTROY), on a dispatch thread or on the cell reading thread.  Cells
+     * of one circuit are never delivered concurrently.
      */
     void deliverControlCell(Cell cell) {
         if(cell.getCommand() == Cell.DESTROY) {
             processDestroyCell(cell.getByte());
+            cell.release();
         } else {
+            CellImpl.detachFromPool(cell);
             controlCellResponseQueue.add(cell);
         }
     }
@@ -125,7 +131,7 @@ public class CircuitIO implements DashboardRenderable {
         destroyCircuit();
     }
 
-    /* This is called by the cell reading thread in ConnectionImpl to deliver RELAY cells. */
+    /* This is called by the connection to deliver RELAY cells, in the same way as control cells. */
     void deliverRelayCell(Cell cell) {
         circuit.getStatus().updateDirtyTimestamp();
         final RelayCell relayCell = decryptRelayCell(cell);
@@ -138,6 +144,7 @@ public class CircuitIO implements DashboardRenderable {
         case RelayCell.RELAY_COMMAND_RENDEZVOUS_ESTABLISHED:
         case RelayCell.RELAY_COMMAND_INTRODUCE_ACK:
         case RelayCell.RELAY_COMMAND_RENDEZVOUS2:
+            CellImpl.detachFromPool(relayCell);
             relayCellResponseQueue.add(relayCell);
             break;	
         case RelayCell.RELAY_DATA:
@@ -157,12 +164,18 @@ public class CircuitIO implements DashboardRenderable {
         case RelayCell.RELAY_EXTEND:
         case RelayCell.RELAY_RESOLVE:
         case RelayCell.RELAY_TRUNCATE:
+            relayCell.release();
             destroyCircuit();
             throw new TorException("Unexpected 'forward' direction relay cell type: "+ relayCell.getRelayCommand());
+
+        default:
+            /* RELAY_DROP and unknown commands are ignored */
+            relayCell.release();
+            break;
         }
     }
 
-    /* Runs in the context of the connection cell reading thread */
+    /* Runs in the context of the thread delivering cells for this circuit */
     private void processRelayDataCell(RelayCell cell) {
         if(cell.getRelayCommand() == RelayCell.RELAY_DATA) {
             cell.getCircuitNode().decrementDeliverWindow();
@@ -180,6 +193,8 @@ public class CircuitIO implements DashboardRenderable {
             // will send a RELAY_END for this stream.
             if(stream != null) {
                 stream.addInputCell(cell);
+            } else {
+                cell.release();
             }
         } finally {
             streamLock.unlock();
@@ -190,26 +205,61 @@ public class CircuitIO implements DashboardRenderable {
         return new RelayCellImpl(targetNode, circuitId, streamId, relayCommand);
     }
 
+    /*
+     * The cell is queued and sent in order with the other queued cells of the circuit by whichever
+     * thread is currently sending.  RELAY_DATA cells remain queued while the packaging window of the
+     * target node is closed, but the calling thread never waits for the window.
+     */
     void sendRelayCellTo(RelayCell cell, CircuitNode targetNode) {
-        relaySendLock.lock();
-        try {
+        if(!isSendingCells()) {
+            cell.release();
+            return;
+        }
+        sendQueue.add(cell, targetNode);
+        drainSendQueue();
+    }
+
+    /*
+     * The thread holding relaySendLock sends every cell that can be sent, including those queued by
+     * other threads in the meantime, so that cells are digested, encrypted and written in the same order.
+     * The queue is checked again after releasing the lock so that a cell queued by a thread which failed
+     * to acquire the lock is not left behind.
+     */
+    private void drainSendQueue() {
+        while(sendQueue.hasSendableCell() && relaySendLock.tryLock()) {
+            boolean isSent;
+            try {
+                isSent = sendQueuedCells();
+            } finally {
+                relaySendLock.unlock();
+            }
+            if(!isSent) {
+                destroyCircuit();
+                return;
+            }
+        }
+    }
+
+    @GuardedBy("relaySendLock")
+    private boolean sendQueuedCells() {
+        RelayCellSendQueue.QueuedCell qc;
+        while((qc = sendQueue.poll()) != null) {
+            final RelayCell cell = qc.cell;
+            final CircuitNode targetNode = qc.targetNode;
             logRelayCell("Sending:     ", cell);
             cell.setLength();
             targetNode.updateForwardDigest(cell);
             cell.setDigest(targetNode.getForwardDigestBytes());
 
             for(CircuitNode node = targetNode; node != null; node = node.getPreviousNode()){
-                    node.encryptForwardCell(cell);
+                node.encryptForwardCell(cell);
             }
 
-            if(cell.getRelayCommand() == RelayCell.RELAY_DATA){
-                    targetNode.waitForSendWindowAndDecrement();
+            if(!trySendCell(cell)) {
+                return false;
             }
-
-            sendCell(cell);
-        } finally {
-                relaySendLock.unlock();
         }
+        return true;
     }
 
     private void logRelayCell(String message, RelayCell cell) {
@@ -217,18 +267,31 @@ public class CircuitIO implements DashboardRenderable {
     }
 
     void sendCell(Cell cell) {
-        final CircuitStatus status = circuit.getStatus();
-        if(!(status.isConnected() || status.isBuilding())){
-            return;
+        if(!trySendCell(cell)) {
+            destroyCircuit();
+        }
+    }
+
+    /* Returns false if the connection failed while sending the cell */
+    private boolean trySendCell(Cell cell) {
+        if(!isSendingCells()) {
+            cell.release();
+            return true;
         }
         try {
-            status.updateDirtyTimestamp();
+            circuit.getStatus().updateDirtyTimestamp();
             connection.sendCell(cell);
+            return true;
         } catch (ConnectionIOException e) {
-            destroyCircuit();
+            return false;
         }
     }
 
+    private boolean isSendingCells() {
+        final CircuitStatus status = circuit.getStatus();
+        return status.isConnected() || status.isBuilding();
+    }
+
     void markForClose() {
         boolean shouldClose;
         streamLock.lock();
@@ -241,6 +304,7 @@ public class CircuitIO implements DashboardRenderable {
         } finally {
             streamLock.unlock();
         }
+        circuit.notifyMarkedForClose();
         if(shouldClose){
             closeCircuit();
         }
@@ -260,6 +324,7 @@ public class CircuitIO implements DashboardRenderable {
         sendDestroyCell();
         connection.removeCircuit(circuit);
         circuit.setStateDestroyed();
+        sendQueue.clear();
         isClosed = true;
     }
 
@@ -275,6 +340,8 @@ public class CircuitIO implements DashboardRenderable {
 
     private void processCircuitSendme(RelayCell cell) {
         cell.getCircuitNode().incrementSendWindow();
+        cell.release();
+        drainSendQueue();
     }
 
     void destroyCircuit() {
@@ -289,6 +356,7 @@ public class CircuitIO implements DashboardRenderable {
             for(StreamImpl s: tmpList) {
                 s.close();
             }
+            sendQueue.clear();
             isClosed = true;
         } finally {
             streamLock.unlock();
@@ -321,6 +389,19 @@ public class CircuitIO implements DashboardRenderable {
         }
     }
 
+    int getActiveStreamCount() {
+        streamLock.lock();
+        try {
+            return streamMap.size();
+        } finally {
+            streamLock.unlock();
+        }
+    }
+
+    int getQueuedCellCount() {
+        return sendQueue.size();
+    }
+
     List<Stream> getActiveStreams() {
         streamLock.lock();
         try {
@@ -38,6 +38,8 @@ public abstract class CircuitImpl implements Circuit, DashboardRenderable {
         return new InternalCircuitImpl(circuitManager, prechosenPath);
     }
 
+    private final static int MEASURED_CIRCUIT_LENGTH = 3;
+
     private final CircuitManagerImpl circuitManager;
     protected final List<Router> prechosenPath;
 
@@ -116,16 +118,70 @@ public abstract class CircuitImpl implements Circuit, DashboardRenderable {
         status.updateCreatedTimestamp();
         status.setStateBuilding();
         circuitManager.addActiveCircuit(this);
+        /* Once this circuit is counted as pending, builds can be launched for the targets it does not handle */
+        circuitManager.requestCircuitCheck();
     }
 
-    void notifyCircuitBuildFailed() {
+    /**
+     * @param pathLength The number of nodes the circuit would have had if the build had completed,
+     *                   or 0 if no path was chosen.
+     */
+    void notifyCircuitBuildFailed(int pathLength) {
+        if(isMeasuredLength(pathLength) && status.getMillisecondsElapsedSinceCreated() >= getBuildTimeout()) {
+            circuitManager.getCircuitBuildTimes().addAbandonedBuild();
+        }
         status.setStateFailed();
         circuitManager.removeActiveCircuit(this);
+        /* Another circuit may be needed, and a pending circuit slot is free again */
+        circuitManager.requestCircuitCheck();
     }
 
     void notifyCircuitBuildCompleted() {
+        if(isMeasuredLength(getCircuitLength())) {
+            circuitManager.getCircuitBuildTimes().addBuildTime(status.getMillisecondsElapsedSinceCreated());
+        }
         status.setStateOpen();
         status.updateCreatedTimestamp();
+        circuitManager.getCircuitRegistry().setConnected(this);
+        circuitManager.requestCircuitCheck();
+    }
+
+    /* Called by CircuitIO after marking this circuit for close, without holding the stream lock */
+    void notifyMarkedForClose() {
+        circuitManager.getCircuitRegistry().setMarkedForClose(this);
+    }
+
+    /* Called by subclasses when the value returned by getRegistryType() changes */
+    protected void notifyRegistryTypeChanged() {
+        circuitManager.getCircuitRegistry().setType(this, getRegistryType());
+    }
+
+    /**
+     * Return the type under which this circuit is indexed by the circuit registry.
+     */
+    abstract CircuitRegistry.Type getRegistryType();
+
+    /**
+     * Return the number of milliseconds this circuit may take to build before it is abandoned.
+     */
+    long getBuildTimeout() {
+        if(isBuildTimeMeasured()) {
+            return circuitManager.getCircuitBuildTimes().getTimeout();
+        } else {
+            return CircuitBuildTimes.DEFAULT_TIMEOUT_MS;
+        }
+    }
+
+    /**
+     * Return <code>true</code> if the build time of this type of circuit is used to learn the
+     * circuit build timeout.  Only circuits of the usual length are measured.
+     */
+    protected boolean isBuildTimeMeasured() {
+        return true;
+    }
+
+    private boolean isMeasuredLength(int pathLength) {
+        return isBuildTimeMeasured() && pathLength == MEASURED_CIRCUIT_LENGTH;
     }
 
     public Connection getConnection() {
@@ -222,6 +278,26 @@ public abstract class CircuitImpl implements Circuit, DashboardRenderable {
 
     public void removeStream(StreamImpl stream) {
         io.removeStream(stream);
+        /* Pending streams may have been waiting for this circuit to have room for another stream */
+        circuitManager.requestCircuitCheck();
+    }
+
+    int getActiveStreamCount() {
+        return (io == null) ? 0 : io.getActiveStreamCount();
+    }
+
+    int getQueuedCellCount() {
+        return (io == null) ? 0 : io.getQueuedCellCount();
+    }
+
+    /**
+     * Return the packaging window of the final node, or 0 if the circuit has not been built.
+     */
+    int getPackageWindow() {
+        if(nodeList.isEmpty()) {
+            return 0;
+        }
+        return getFinalCircuitNode().getPackageWindow();
     }
 
     protected Stream processStreamOpenException(Exception e) throws InterruptedException, TimeoutException, StreamConnectFailedException {
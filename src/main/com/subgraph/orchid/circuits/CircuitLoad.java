@@ -0,0 +1,57 @@
+package com.subgraph.orchid.circuits;
+
+/**
+ * How busy an open exit circuit is, as seen by a {@link StreamAttachmentPolicy}.
+ * <p>
+ * A snapshot is taken once for each round of attaching pending streams, and streams attached
+ * during the round are counted with {@link #addStream()} since they only appear in the stream
+ * map of the circuit once the stream task has started opening them.  Instances are used by a
+ * single thread.
+ */
+class CircuitLoad {
+    private final ExitCircuitImpl circuit;
+    private final int queuedCellCount;
+    private final int packageWindow;
+    private int streamCount;
+
+    static CircuitLoad create(ExitCircuitImpl circuit) {
+        return new CircuitLoad(circuit, circuit.getActiveStreamCount(), circuit.getQueuedCellCount(), circuit.getPackageWindow());
+    }
+
+    CircuitLoad(ExitCircuitImpl circuit, int streamCount, int queuedCellCount, int packageWindow) {
+        this.circuit = circuit;
+        this.streamCount = streamCount;
+        this.queuedCellCount = queuedCellCount;
+        this.packageWindow = packageWindow;
+    }
+
+    ExitCircuitImpl getCircuit() {
+        return circuit;
+    }
+
+    int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * Return the number of relay cells waiting to be sent on the circuit.
+     */
+    int getQueuedCellCount() {
+        return queuedCellCount;
+    }
+
+    /**
+     * Return the packaging window of the exit node of the circuit.
+     */
+    int getPackageWindow() {
+        return packageWindow;
+    }
+
+    void addStream() {
+        streamCount += 1;
+    }
+
+    public String toString() {
+        return "[" + circuit + " streams=" + streamCount + " queued=" + queuedCellCount + " window=" + packageWindow + "]";
+    }
+}
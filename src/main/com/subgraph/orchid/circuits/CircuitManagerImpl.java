@@ -9,9 +9,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.Circuit;
@@ -32,19 +34,23 @@ import com.subgraph.orchid.StreamConnectFailedException;
 import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.Tor;
 import com.subgraph.orchid.TorConfig;
+import com.subgraph.orchid.TorConfig.AutoBoolValue;
 import com.subgraph.orchid.circuits.guards.EntryGuards;
 import com.subgraph.orchid.circuits.hs.HiddenServiceManager;
 import com.subgraph.orchid.circuits.path.CircuitPathChooser;
-import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.crypto.TorNTorKeyPairPool;
 import com.subgraph.orchid.dashboard.DashboardRenderable;
 import com.subgraph.orchid.dashboard.DashboardRenderer;
 import com.subgraph.orchid.data.IPv4Address;
 import com.subgraph.orchid.directory.downloader.DirectoryDownloaderImpl;
+import com.subgraph.orchid.events.EventHandler;
 
 @SuppressWarnings("unused")
 public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 	private final static int OPEN_DIRECTORY_STREAM_RETRY_COUNT = 5;
 	private final static int OPEN_DIRECTORY_STREAM_TIMEOUT = 10 * 1000;
+	/* Circuits are checked when streams are requested or builds finish, the sweep expires old circuits */
+	private final static int CIRCUIT_SWEEP_INTERVAL = 5 * 1000;
 	
 	interface CircuitFilter {
 		boolean filter(Circuit circuit);
@@ -53,20 +59,24 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 	private final TorConfig config;
 	private final Directory directory;
 	private final ConnectionCache connectionCache;
-	private final Set<CircuitImpl> activeCircuits;
+	private final CircuitRegistry circuitRegistry;
 	private final Queue<InternalCircuit> cleanInternalCircuits;
 	private int requestedInternalCircuitCount = 0;
 	private int pendingInternalCircuitCount = 0;
-	private final TorRandom random;
 	private final PendingExitStreams pendingExitStreams;
 	private final ScheduledExecutorService scheduledExecutor = Threading.newSingleThreadScheduledPool("CircuitManager worker");
 	private final CircuitCreationTask circuitCreationTask;
 	private final TorInitializationTracker initializationTracker;
 	private final CircuitPathChooser pathChooser;
 	private final HiddenServiceManager hiddenServiceManager;
+	private final CircuitBuildTimes circuitBuildTimes;
 	private final ReentrantLock lock = Threading.lock("circuitManager");
+	private final AtomicBoolean isCircuitCheckScheduled = new AtomicBoolean();
+	private final AtomicBoolean isDelayedCircuitCheckScheduled = new AtomicBoolean();
+	private final EventHandler consensusChangedHandler = event -> requestCircuitCheck();
 
-	private boolean isBuilding = false;
+	private volatile boolean isBuilding = false;
+	private volatile StreamAttachmentPolicy streamAttachmentPolicy = new LeastLoadedStreamAttachmentPolicy();
 
 	public CircuitManagerImpl(TorConfig config, DirectoryDownloaderImpl directoryDownloader, Directory directory, ConnectionCache connectionCache, TorInitializationTracker initializationTracker) {
 		this.config = config;
@@ -76,26 +86,30 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 		if(config.getUseEntryGuards() || config.getUseBridges()) {
 			this.pathChooser.enableEntryGuards(new EntryGuards(config, connectionCache, directoryDownloader, directory));
 		}
-		this.pendingExitStreams = new PendingExitStreams(config);
+		this.pendingExitStreams = new PendingExitStreams(config, this::requestCircuitCheck);
 		this.circuitCreationTask = new CircuitCreationTask(config, directory, connectionCache, pathChooser, this, initializationTracker);
-		this.activeCircuits = new HashSet<>();
+		this.circuitRegistry = new CircuitRegistry();
 		this.cleanInternalCircuits = new LinkedList<>();
-		this.random = new TorRandom();
 		
 		this.initializationTracker = initializationTracker;
 		this.hiddenServiceManager = new HiddenServiceManager(config, directory, this);
+		this.circuitBuildTimes = new CircuitBuildTimes(directory);
 		
 		directoryDownloader.setCircuitManager(this);
 	}
 
 	public void startBuildingCircuits() {
+		if(config.getUseNTorHandshake() != AutoBoolValue.FALSE) {
+			TorNTorKeyPairPool.start();
+		}
 		lock.lock();
 		try {
 			isBuilding = true;
-			scheduledExecutor.scheduleAtFixedRate(circuitCreationTask, 0, 1000, TimeUnit.MILLISECONDS);
+			scheduledExecutor.scheduleAtFixedRate(circuitCreationTask, 0, CIRCUIT_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
 		} finally {
 			lock.unlock();
 		}
+		directory.registerConsensusChangedHandler(consensusChangedHandler);
 	}
 
 	public void stopBuildingCircuits(boolean killCircuits) {
@@ -106,27 +120,93 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 		} finally {
 			lock.unlock();
 		}
+		directory.unregisterConsensusChangedHandler(consensusChangedHandler);
+		circuitBuildTimes.store();
 
 		if (killCircuits) {
-			ArrayList<CircuitImpl> circuits;
-			synchronized (activeCircuits) {
-				circuits = new ArrayList<>(activeCircuits);
-			}
+			final List<CircuitImpl> circuits = new ArrayList<>(circuitRegistry.getCircuits());
 			for (CircuitImpl c : circuits) {
 				c.destroyCircuit();
 			}
 		}
 	}
 
+	/**
+	 * Ask for pending streams to be assigned to circuits and for new circuits to be built if
+	 * needed.  Requests made while a check is already waiting to run are combined with it.
+	 */
+	void requestCircuitCheck() {
+		if(!isBuilding || !isCircuitCheckScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			scheduledExecutor.execute(this::runCircuitCheck);
+		} catch (RejectedExecutionException e) {
+			/* Circuit building has been stopped */
+			isCircuitCheckScheduled.set(false);
+		}
+	}
+
+	/**
+	 * Ask for a circuit check after <code>delay</code> milliseconds.
+	 */
+	void requestCircuitCheck(long delay) {
+		if(!isBuilding || !isDelayedCircuitCheckScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			scheduledExecutor.schedule(() -> {
+				isDelayedCircuitCheckScheduled.set(false);
+				circuitCreationTask.checkCircuits();
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			/* Circuit building has been stopped */
+			isDelayedCircuitCheckScheduled.set(false);
+		}
+	}
+
+	/**
+	 * Run <code>task</code> on the circuit manager worker after <code>delay</code> milliseconds,
+	 * unless circuit building is stopped first.
+	 */
+	void scheduleTask(Runnable task, long delay) {
+		if(!isBuilding) {
+			return;
+		}
+		try {
+			scheduledExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			/* Circuit building has been stopped */
+		}
+	}
+
+	private void runCircuitCheck() {
+		isCircuitCheckScheduled.set(false);
+		circuitCreationTask.checkCircuits();
+	}
+
+	CircuitBuildTimes getCircuitBuildTimes() {
+		return circuitBuildTimes;
+	}
+
+	CircuitRegistry getCircuitRegistry() {
+		return circuitRegistry;
+	}
+
+	StreamAttachmentPolicy getStreamAttachmentPolicy() {
+		return streamAttachmentPolicy;
+	}
+
+	void setStreamAttachmentPolicy(StreamAttachmentPolicy policy) {
+		this.streamAttachmentPolicy = policy;
+	}
+
 	public ExitCircuit createNewExitCircuit(Router exitRouter) {
 		return CircuitImpl.createExitCircuit(this, exitRouter);
 	}
 
 	void addActiveCircuit(CircuitImpl circuit) {
-		synchronized (activeCircuits) {
-			activeCircuits.add(circuit);
-			activeCircuits.notifyAll();
-		}
+		circuitRegistry.add(circuit, circuit.getRegistryType());
 
 		boolean doDestroy;
 		lock.lock();
@@ -143,41 +223,25 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 	}
 
 	void removeActiveCircuit(CircuitImpl circuit) {
-		synchronized (activeCircuits) {
-			activeCircuits.remove(circuit);
-		}
+		circuitRegistry.remove(circuit);
 	}
 
 	int getActiveCircuitCount() {
-		synchronized (activeCircuits) {
-			return activeCircuits.size();
-		}
-	}
-
-	Set<Circuit> getPendingCircuits() {
-		return getCircuitsByFilter(Circuit::isPending);
+		return circuitRegistry.size();
 	}
 
 	int getPendingCircuitCount() {
-		lock.lock();
-		try {
-			return getPendingCircuits().size();
-		} finally {
-			lock.unlock();
-		}
+		return circuitRegistry.getCount(CircuitRegistry.State.PENDING);
 	}
 
+	/**
+	 * Return the active circuits accepted by <code>filter</code>.  This visits every active circuit,
+	 * queries for circuits of one state or type should use {@link #getCircuitRegistry()} instead.
+	 */
 	Set<Circuit> getCircuitsByFilter(CircuitFilter filter) {
 		final Set<Circuit> result = new HashSet<>();
-		final Set<CircuitImpl> circuits;
-
-		synchronized (activeCircuits) {
-			// the filter might lock additional objects, causing a deadlock, so don't
-			// call it inside the monitor
-			circuits = new HashSet<>(activeCircuits);
-		}
-
-		for(CircuitImpl c: circuits) {
+		// the registry is not locked while iterating, so the filter may lock the circuit
+		for(CircuitImpl c: circuitRegistry.getCircuits()) {
 			if(filter == null || filter.filter(c)) {
 				result.add(c);
 			}
@@ -185,27 +249,6 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 		return result;
 	}
 
-	List<ExitCircuit> getRandomlyOrderedListOfExitCircuits() {
-		final Set<Circuit> notDirectory = getCircuitsByFilter(circuit -> {
-			final boolean exitType = circuit instanceof ExitCircuit;
-			return exitType && !circuit.isMarkedForClose() && circuit.isConnected();
-		});
-		final ArrayList<ExitCircuit> ac = new ArrayList<>();
-		for(Circuit c: notDirectory) {
-			if(c instanceof ExitCircuit) {
-				ac.add((ExitCircuit) c);
-			}
-		}
-		final int sz = ac.size();
-		for(int i = 0; i < sz; i++) {
-			final ExitCircuit tmp = ac.get(i);
-			final int swapIdx = random.nextInt(sz);
-			ac.set(i, ac.get(swapIdx));
-			ac.set(swapIdx, tmp);
-		}
-		return ac;
-	}
-
 	public Stream openExitStreamTo(String hostname, int port)
 			throws InterruptedException, TimeoutException, OpenFailedException {
 		if(hostname.endsWith(".onion")) {
@@ -341,10 +384,16 @@ public class CircuitManagerImpl implements CircuitManager, DashboardRenderable {
 		synchronized(cleanInternalCircuits) {
 			try {
 				requestedInternalCircuitCount += 1;
+				if(cleanInternalCircuits.isEmpty()) {
+					requestCircuitCheck();
+				}
 				while(cleanInternalCircuits.isEmpty()) {
 					cleanInternalCircuits.wait();
 				}
-				return cleanInternalCircuits.remove();
+				final InternalCircuit circuit = cleanInternalCircuits.remove();
+				/* Replace the circuit taken if clean internal circuits are predicted */
+				requestCircuitCheck();
+				return circuit;
 			} finally {
 				requestedInternalCircuitCount -= 1;
 			}
@@ -71,15 +71,9 @@ public class CircuitNodeCryptoState {
 			return false;
 	
 		final byte[] digest = extractRelayDigest(cell);
-		final byte[] peek = backwardDigest.peekDigest(cell.getCellBytes(), Cell.CELL_HEADER_LEN, Cell.CELL_PAYLOAD_LEN);
-		for(int i = 0; i < 4; i++) 
-			if(digest[i] != peek[i]) {
-				replaceRelayDigest(cell, digest);
-				return false;
-			}
-		backwardDigest.update(cell.getCellBytes(), Cell.CELL_HEADER_LEN, Cell.CELL_PAYLOAD_LEN);
+		final boolean isRecognized = backwardDigest.updateIfDigestMatches(cell.getCellBytes(), Cell.CELL_HEADER_LEN, Cell.CELL_PAYLOAD_LEN, digest);
 		replaceRelayDigest(cell, digest);
-		return true;		
+		return isRecognized;
 	}
 	
 	private byte[] extractRelayDigest(Cell cell) {
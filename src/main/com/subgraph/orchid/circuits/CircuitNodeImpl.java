@@ -1,9 +1,13 @@
 package com.subgraph.orchid.circuits;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 import com.subgraph.orchid.Cell;
 import com.subgraph.orchid.CircuitNode;
 import com.subgraph.orchid.RelayCell;
 import com.subgraph.orchid.Router;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorException;
 
 public class CircuitNodeImpl implements CircuitNode {
@@ -28,7 +32,8 @@ public class CircuitNodeImpl implements CircuitNode {
 	private final CircuitNodeCryptoState cryptoState;
 	private final CircuitNode previousNode;
 
-	private final Object windowLock;
+	private final ReentrantLock windowLock;
+	private final Condition windowAvailable;
 	private int packageWindow;
 	private int deliverWindow;
 	
@@ -36,7 +41,8 @@ public class CircuitNodeImpl implements CircuitNode {
 		previousNode = previous;
 		this.router = router;
 		this.cryptoState = cryptoState;
-		windowLock = new Object();
+		windowLock = Threading.lock("circuitWindow");
+		windowAvailable = windowLock.newCondition();
 		packageWindow = CIRCWINDOW_START;
 		deliverWindow = CIRCWINDOW_START;
 	}
@@ -74,18 +80,24 @@ public class CircuitNodeImpl implements CircuitNode {
 	}
 
 	public void decrementDeliverWindow() {
-		synchronized(windowLock) {
+		windowLock.lock();
+		try {
 			deliverWindow--;
+		} finally {
+			windowLock.unlock();
 		}
 	}
 
 	public boolean considerSendingSendme() {
-		synchronized(windowLock) {
+		windowLock.lock();
+		try {
 			if(deliverWindow <= (CIRCWINDOW_START - CIRCWINDOW_INCREMENT)) {
 				deliverWindow += CIRCWINDOW_INCREMENT;
 				return true;
 			}
 			return false;
+		} finally {
+			windowLock.unlock();
 		}
 	}
 
@@ -98,23 +110,60 @@ public class CircuitNodeImpl implements CircuitNode {
 	}
 
 	private void waitForSendWindow(boolean decrement) {
-		synchronized(windowLock) {
+		windowLock.lock();
+		try {
 			while(packageWindow == 0) {
 				try {
-					windowLock.wait();
+					windowAvailable.await();
 				} catch (InterruptedException e) {
 					throw new TorException("Thread interrupted while waiting for circuit send window");
 				}
 			}
 			if(decrement)
 				packageWindow--;
+		} finally {
+			windowLock.unlock();
+		}
+	}
+
+	public boolean isSendWindowOpen() {
+		windowLock.lock();
+		try {
+			return packageWindow > 0;
+		} finally {
+			windowLock.unlock();
+		}
+	}
+
+	public int getPackageWindow() {
+		windowLock.lock();
+		try {
+			return packageWindow;
+		} finally {
+			windowLock.unlock();
+		}
+	}
+
+	public boolean tryDecrementSendWindow() {
+		windowLock.lock();
+		try {
+			if(packageWindow == 0) {
+				return false;
+			}
+			packageWindow--;
+			return true;
+		} finally {
+			windowLock.unlock();
 		}
 	}
 
 	public void incrementSendWindow() {
-		synchronized(windowLock) {
+		windowLock.lock();
+		try {
 			packageWindow += CIRCWINDOW_INCREMENT;
-			windowLock.notifyAll();
+			windowAvailable.signalAll();
+		} finally {
+			windowLock.unlock();
 		}
 		
 	}
@@ -0,0 +1,217 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.subgraph.orchid.misc.GuardedBy;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * The active circuits of the circuit manager, indexed by state, by type and by the exit ports
+ * that exit circuits can handle.
+ * <p>
+ * Circuits are registered when their build starts and removed when the build fails or the
+ * circuit is destroyed.  The circuits report their own state changes, so the indexes never have
+ * to be rebuilt by scanning every circuit.  Updates are serialized, while queries return live
+ * views of the concurrent index sets and neither lock nor copy.  A query result reflects the
+ * updates made before it and may or may not reflect updates made concurrently with iterating it.
+ * <p>
+ * The port index lists the pending and connected exit circuits whose exit router accepts
+ * connections to a port on some address.  An entry for a port is created the first time that
+ * port is queried, and from then on kept up to date as exit circuits are added and removed.
+ */
+@ThreadSafe
+class CircuitRegistry {
+    enum State { PENDING, CONNECTED, MARKED_FOR_CLOSE }
+    enum Type { EXIT, INTERNAL, DIRECTORY, HIDDEN_SERVICE }
+
+    /* Ports queried beyond this are answered by scanning the exit circuits instead */
+    private final static int MAX_INDEXED_PORTS = 1024;
+
+    private static class Entry {
+        State state;
+        Type type;
+
+        Entry(State state, Type type) {
+            this.state = state;
+            this.type = type;
+        }
+    }
+
+    private final Object lock = new Object();
+    /* The maps and sets below are read without locking but written only while holding lock */
+    private final Map<CircuitImpl, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Type, Map<State, Set<CircuitImpl>>> circuitsByTypeAndState = new EnumMap<>(Type.class);
+    private final Map<Integer, Set<ExitCircuitImpl>> exitCircuitsByPort = new ConcurrentHashMap<>();
+
+    CircuitRegistry() {
+        for(Type type: Type.values()) {
+            final Map<State, Set<CircuitImpl>> byState = new EnumMap<>(State.class);
+            for(State state: State.values()) {
+                byState.put(state, ConcurrentHashMap.newKeySet());
+            }
+            circuitsByTypeAndState.put(type, byState);
+        }
+    }
+
+    /**
+     * Register a circuit which has started building.
+     */
+    void add(CircuitImpl circuit, Type type) {
+        synchronized(lock) {
+            if(entries.containsKey(circuit)) {
+                return;
+            }
+            entries.put(circuit, new Entry(State.PENDING, type));
+            getSet(type, State.PENDING).add(circuit);
+            if(type == Type.EXIT) {
+                addToPortIndex((ExitCircuitImpl) circuit);
+            }
+        }
+    }
+
+    void remove(CircuitImpl circuit) {
+        synchronized(lock) {
+            final Entry entry = entries.remove(circuit);
+            if(entry == null) {
+                return;
+            }
+            getSet(entry.type, entry.state).remove(circuit);
+            if(entry.type == Type.EXIT) {
+                removeFromPortIndex(circuit);
+            }
+        }
+    }
+
+    /**
+     * Move a pending circuit to the connected state.  A circuit which was marked for close
+     * while it was building stays marked.
+     */
+    void setConnected(CircuitImpl circuit) {
+        synchronized(lock) {
+            final Entry entry = entries.get(circuit);
+            if(entry != null && entry.state == State.PENDING) {
+                moveTo(circuit, entry, entry.type, State.CONNECTED);
+            }
+        }
+    }
+
+    void setMarkedForClose(CircuitImpl circuit) {
+        synchronized(lock) {
+            final Entry entry = entries.get(circuit);
+            if(entry != null && entry.state != State.MARKED_FOR_CLOSE) {
+                moveTo(circuit, entry, entry.type, State.MARKED_FOR_CLOSE);
+                if(entry.type == Type.EXIT) {
+                    removeFromPortIndex(circuit);
+                }
+            }
+        }
+    }
+
+    void setType(CircuitImpl circuit, Type type) {
+        synchronized(lock) {
+            final Entry entry = entries.get(circuit);
+            if(entry != null && entry.type != type) {
+                moveTo(circuit, entry, type, entry.state);
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    private void moveTo(CircuitImpl circuit, Entry entry, Type type, State state) {
+        getSet(entry.type, entry.state).remove(circuit);
+        entry.type = type;
+        entry.state = state;
+        getSet(type, state).add(circuit);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return every registered circuit.
+     */
+    Collection<CircuitImpl> getCircuits() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Return the circuits of any type which are in <code>state</code>.
+     */
+    Collection<CircuitImpl> getCircuits(State state) {
+        final List<CircuitImpl> result = new ArrayList<>();
+        for(Type type: Type.values()) {
+            result.addAll(getSet(type, state));
+        }
+        return result;
+    }
+
+    Collection<CircuitImpl> getCircuits(Type type, State state) {
+        return Collections.unmodifiableSet(getSet(type, state));
+    }
+
+    int getCount(State state) {
+        int count = 0;
+        for(Type type: Type.values()) {
+            count += getSet(type, state).size();
+        }
+        return count;
+    }
+
+    /**
+     * Return the pending and connected exit circuits whose exit router accepts connections to
+     * <code>port</code>.  The exit policy for a particular address and any targets which failed on
+     * a circuit are not considered, see {@link ExitCircuitImpl#canHandleExitTo}.
+     */
+    Collection<ExitCircuitImpl> getExitCircuitsForPort(int port) {
+        final Set<ExitCircuitImpl> indexed = exitCircuitsByPort.get(port);
+        if(indexed != null) {
+            return Collections.unmodifiableSet(indexed);
+        }
+        synchronized(lock) {
+            if(exitCircuitsByPort.containsKey(port)) {
+                return Collections.unmodifiableSet(exitCircuitsByPort.get(port));
+            }
+            final Set<ExitCircuitImpl> circuits = ConcurrentHashMap.newKeySet();
+            for(State state: new State[] { State.PENDING, State.CONNECTED }) {
+                for(CircuitImpl c: getSet(Type.EXIT, state)) {
+                    final ExitCircuitImpl ec = (ExitCircuitImpl) c;
+                    if(ec.canHandleExitToPort(port)) {
+                        circuits.add(ec);
+                    }
+                }
+            }
+            if(exitCircuitsByPort.size() < MAX_INDEXED_PORTS) {
+                exitCircuitsByPort.put(port, circuits);
+            }
+            return Collections.unmodifiableSet(circuits);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void addToPortIndex(ExitCircuitImpl circuit) {
+        for(Map.Entry<Integer, Set<ExitCircuitImpl>> e: exitCircuitsByPort.entrySet()) {
+            if(circuit.canHandleExitToPort(e.getKey())) {
+                e.getValue().add(circuit);
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    private void removeFromPortIndex(CircuitImpl circuit) {
+        for(Set<ExitCircuitImpl> circuits: exitCircuitsByPort.values()) {
+            circuits.remove(circuit);
+        }
+    }
+
+    private Set<CircuitImpl> getSet(Type type, State state) {
+        return circuitsByTypeAndState.get(type).get(state);
+    }
+}
@@ -35,6 +35,17 @@ public class DirectoryCircuitImpl extends CircuitImpl implements DirectoryCircui
 		return pathChooser.chooseDirectoryPath();
 	}
 
+	/* Directory circuits have a single hop and are built with the default timeout */
+	@Override
+	protected boolean isBuildTimeMeasured() {
+		return false;
+	}
+
+	@Override
+	CircuitRegistry.Type getRegistryType() {
+		return CircuitRegistry.Type.DIRECTORY;
+	}
+
 	@Override
 	protected String getCircuitTypeLabel() {
 		return "Directory";
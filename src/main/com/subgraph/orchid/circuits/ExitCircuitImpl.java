@@ -46,6 +46,31 @@ public class ExitCircuitImpl extends CircuitImpl implements ExitCircuit {
 		}
 	}
 	
+	/**
+	 * Open a stream for a pending exit stream request.  The stream is recorded with the request
+	 * while it is being opened, so that it can be closed if the request is completed by a stream
+	 * opened on another circuit.
+	 * 
+	 * @return The connected stream, or <code>null</code> if the request had already been completed
+	 *         before the stream was created.
+	 */
+	Stream openExitStream(StreamExitRequest request) throws InterruptedException, TimeoutException, StreamConnectFailedException {
+		final String target = request.isAddressTarget() ? request.getAddress().toString() : request.getHostname();
+		final StreamImpl stream = createNewStream();
+		if(!request.addOpeningStream(stream)) {
+			removeStream(stream);
+			return null;
+		}
+		try {
+			stream.openExit(target, request.getPort(), request.getStreamTimeout());
+			return stream;
+		} catch (Exception e) {
+			request.removeOpeningStream(stream);
+			removeStream(stream);
+			return processStreamOpenException(e);
+		}
+	}
+
 	public void recordFailedExitTarget(ExitTarget target) {
 		synchronized(failedExitRequests) {
 			failedExitRequests.add(target);
@@ -80,6 +105,11 @@ public class ExitCircuitImpl extends CircuitImpl implements ExitCircuit {
 		return pathChooser.choosePathWithExit(exitRouter);
 	}
 	
+	@Override
+	CircuitRegistry.Type getRegistryType() {
+		return CircuitRegistry.Type.EXIT;
+	}
+
 	@Override
 	protected String getCircuitTypeLabel() {
 		return "Exit";
@@ -41,6 +41,7 @@ public class InternalCircuitImpl extends CircuitImpl implements InternalCircuit,
 	public Circuit cannibalizeToIntroductionPoint(Router target) {
 		cannibalizeTo(target);
 		type = InternalType.HS_INTRODUCTION;
+		notifyRegistryTypeChanged();
 		return this;
 	}
 
@@ -71,6 +72,7 @@ public class InternalCircuitImpl extends CircuitImpl implements InternalCircuit,
 	public DirectoryCircuit cannibalizeToDirectory(Router target) {
 		cannibalizeTo(target);
 		type = InternalType.HS_DIRECTORY;
+		notifyRegistryTypeChanged();
 		return this;
 	}
 
@@ -81,6 +83,7 @@ public class InternalCircuitImpl extends CircuitImpl implements InternalCircuit,
 		}
 		appendNode(node);
 		type = InternalType.HS_CIRCUIT;
+		notifyRegistryTypeChanged();
 		return this;
 	}
 
@@ -100,6 +103,11 @@ public class InternalCircuitImpl extends CircuitImpl implements InternalCircuit,
 	}
 
 
+	@Override
+	CircuitRegistry.Type getRegistryType() {
+		return (type == InternalType.UNUSED) ? CircuitRegistry.Type.INTERNAL : CircuitRegistry.Type.HIDDEN_SERVICE;
+	}
+
 	@Override
 	protected String getCircuitTypeLabel() {
 		switch(type) {
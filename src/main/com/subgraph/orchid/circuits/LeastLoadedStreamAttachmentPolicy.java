@@ -0,0 +1,69 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.List;
+
+import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.data.exitpolicy.ExitTarget;
+
+/**
+ * Opens each stream on the least loaded circuit which can handle it, and opens at most
+ * {@value #DEFAULT_MAX_STREAMS_PER_CIRCUIT} streams on one circuit.
+ * <p>
+ * The load of a circuit is the number of open streams plus one for every
+ * {@value #QUEUED_CELLS_PER_STREAM} relay cells waiting to be sent, since a few streams moving
+ * bulk data can keep a circuit busier than many idle ones.  Among equally loaded circuits the one
+ * with the most room in the packaging window of its exit node is chosen, and remaining ties are
+ * broken randomly so that streams are spread over the circuits.
+ */
+class LeastLoadedStreamAttachmentPolicy implements StreamAttachmentPolicy {
+    final static int DEFAULT_MAX_STREAMS_PER_CIRCUIT = 32;
+    private final static int QUEUED_CELLS_PER_STREAM = 16;
+
+    private final int maxStreamsPerCircuit;
+    private final TorRandom random = new TorRandom();
+
+    LeastLoadedStreamAttachmentPolicy() {
+        this(DEFAULT_MAX_STREAMS_PER_CIRCUIT);
+    }
+
+    LeastLoadedStreamAttachmentPolicy(int maxStreamsPerCircuit) {
+        this.maxStreamsPerCircuit = maxStreamsPerCircuit;
+    }
+
+    public CircuitLoad chooseCircuit(ExitTarget target, List<CircuitLoad> circuits) {
+        CircuitLoad best = null;
+        int tieCount = 0;
+        for(CircuitLoad load: circuits) {
+            if(load.getStreamCount() >= maxStreamsPerCircuit || !load.getCircuit().canHandleExitTo(target)) {
+                continue;
+            }
+            final int cmp = (best == null) ? -1 : compareLoad(load, best);
+            if(cmp < 0) {
+                best = load;
+                tieCount = 1;
+            } else if(cmp == 0) {
+                tieCount += 1;
+                if(random.nextInt(tieCount) == 0) {
+                    best = load;
+                }
+            }
+        }
+        return best;
+    }
+
+    public boolean hasCapacity(ExitCircuitImpl circuit) {
+        return circuit.getActiveStreamCount() < maxStreamsPerCircuit;
+    }
+
+    private static int compareLoad(CircuitLoad a, CircuitLoad b) {
+        final int cmp = Integer.compare(getLoad(a), getLoad(b));
+        if(cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(b.getPackageWindow(), a.getPackageWindow());
+    }
+
+    private static int getLoad(CircuitLoad load) {
+        return load.getStreamCount() + load.getQueuedCellCount() / QUEUED_CELLS_PER_STREAM;
+    }
+}
@@ -2,17 +2,16 @@ package com.subgraph.orchid.circuits;
 
 import java.util.concurrent.TimeoutException;
 
-import com.subgraph.orchid.ExitCircuit;
 import com.subgraph.orchid.Stream;
 import com.subgraph.orchid.StreamConnectFailedException;
 import com.subgraph.orchid.logging.Logger;
 
 public class OpenExitStreamTask implements Runnable {
     private static final Logger logger = Logger.getInstance(OpenExitStreamTask.class);
-    private final ExitCircuit circuit;
+    private final ExitCircuitImpl circuit;
     private final StreamExitRequest exitRequest;
 
-    OpenExitStreamTask(ExitCircuit circuit, StreamExitRequest exitRequest) {
+    OpenExitStreamTask(ExitCircuitImpl circuit, StreamExitRequest exitRequest) {
         this.circuit = circuit;
         this.exitRequest = exitRequest;
     }
@@ -21,15 +20,24 @@ public class OpenExitStreamTask implements Runnable {
     public void run() {
         logger.debug("Attempting to open stream to "+ exitRequest);
         try {
-            exitRequest.setCompletedSuccessfully(tryOpenExitStream());
+            final Stream stream = circuit.openExitStream(exitRequest);
+            if(stream != null && !exitRequest.setCompletedSuccessfully(stream)) {
+                // the stream was opened on another circuit first
+                stream.close();
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             exitRequest.setInterrupted();
         } catch (TimeoutException e) {
-            circuit.markForClose();
+            if(!exitRequest.isCompleted()) {
+                circuit.markForClose();
+            }
             exitRequest.setCompletedTimeout();
         } catch (StreamConnectFailedException e) {
-            if(!e.isReasonRetryable()) {
+            if(exitRequest.isCompleted()) {
+                // closed because the stream was opened on another circuit first
+                exitRequest.setStreamOpenFailure(e.getReason());
+            } else if(!e.isReasonRetryable()) {
                 exitRequest.setExitFailed();
                 circuit.recordFailedExitTarget(exitRequest);
             } else {
@@ -38,12 +46,4 @@ public class OpenExitStreamTask implements Runnable {
             }
         }
     }
-
-    private Stream tryOpenExitStream() throws InterruptedException, TimeoutException, StreamConnectFailedException {
-        if(exitRequest.isAddressTarget()) {
-            return circuit.openExitStream(exitRequest.getAddress(), exitRequest.getPort(), exitRequest.getStreamTimeout());
-        } else {
-            return circuit.openExitStream(exitRequest.getHostname(), exitRequest.getPort(), exitRequest.getStreamTimeout());
-        }
-    }
 }
\ No newline at end of file
@@ -5,31 +5,40 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.OpenFailedException;
 import com.subgraph.orchid.Stream;
 import com.subgraph.orchid.StreamConnectFailedException;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorConfig;
 import com.subgraph.orchid.data.IPv4Address;
 
 public class PendingExitStreams {
 	
 	private final Set<StreamExitRequest> pendingRequests;
-	private final Object lock = new Object();
+	private final ReentrantLock lock = Threading.lock("pendingExitStreams");
+	private final Condition requestCompleted = lock.newCondition();
 	private final TorConfig config;
+	private final Runnable pendingRequestListener;
 
-	PendingExitStreams(TorConfig config) {
+	/**
+	 * @param pendingRequestListener Called when a request is added or needs to be retried on another circuit.
+	 */
+	PendingExitStreams(TorConfig config, Runnable pendingRequestListener) {
 		this.config = config;
+		this.pendingRequestListener = pendingRequestListener;
 		pendingRequests = new HashSet<>();
 	}
 	
 	Stream openExitStream(IPv4Address address, int port) throws InterruptedException, OpenFailedException {
-		final StreamExitRequest request = new StreamExitRequest(lock, address, port);
+		final StreamExitRequest request = new StreamExitRequest(lock, requestCompleted, address, port);
 		return openExitStreamByRequest(request);
 	}
 	
 	Stream openExitStream(String hostname, int port) throws InterruptedException, OpenFailedException {
-		final StreamExitRequest request =  new StreamExitRequest(lock, hostname, port);
+		final StreamExitRequest request =  new StreamExitRequest(lock, requestCompleted, hostname, port);
 		return openExitStreamByRequest(request);
 	}
 	
@@ -38,37 +47,45 @@ public class PendingExitStreams {
 			request.setStreamTimeout(config.getCircuitStreamTimeout());
 		}
 		
-		synchronized(lock) {
+		lock.lock();
+		try {
 			pendingRequests.add(request);
+			pendingRequestListener.run();
 			try {
 				return handleRequest(request);
 			} finally {
 				pendingRequests.remove(request);
 			}
+		} finally {
+			lock.unlock();
 		}
 	}
 	
 	private Stream handleRequest(StreamExitRequest request) throws InterruptedException, OpenFailedException {
 		while(true) {
 			while(!request.isCompleted()) {
-				lock.wait();
+				requestCompleted.await();
 			}
 			try {
 				return request.getStream();
 			} catch (TimeoutException | StreamConnectFailedException e) {
 				request.resetForRetry();
+				pendingRequestListener.run();
 			}
 		}
 	}
 	
 	List<StreamExitRequest> getUnreservedPendingRequests() {
 		final List<StreamExitRequest> result = new ArrayList<>();
-		synchronized (lock) {
+		lock.lock();
+		try {
 			for(StreamExitRequest request: pendingRequests) {
 				if(request.isReserved()) {
 					result.add(request);
 				}
 			}
+		} finally {
+			lock.unlock();
 		}
 		return result;
 	}
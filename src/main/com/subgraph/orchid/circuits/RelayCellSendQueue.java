@@ -0,0 +1,176 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.subgraph.orchid.CircuitNode;
+import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.misc.GuardedBy;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Holds the relay cells of a circuit which are waiting to be sent and chooses the order in which
+ * they are sent.
+ * <p>
+ * RELAY_DATA cells are queued separately for each stream and the streams take turns sending a cell.
+ * A data cell is only handed out once the packaging window of its target node has been decremented,
+ * so data waiting for a RELAY_SENDME stays queued without blocking anybody.  All other cells are
+ * not subject to the packaging window and are sent ahead of any queued data, except for a cell such
+ * as RELAY_END which must not overtake the data already queued on its own stream.
+ */
+@ThreadSafe
+class RelayCellSendQueue {
+
+    static class QueuedCell {
+        final RelayCell cell;
+        final CircuitNode targetNode;
+
+        QueuedCell(RelayCell cell, CircuitNode targetNode) {
+            this.cell = cell;
+            this.targetNode = targetNode;
+        }
+
+        boolean isData() {
+            return cell.getRelayCommand() == RelayCell.RELAY_DATA;
+        }
+    }
+
+    private final ReentrantLock lock = Threading.lock("relaySendQueue");
+
+    @GuardedBy("lock") private final Queue<QueuedCell> controlCells = new ArrayDeque<>();
+    @GuardedBy("lock") private final Map<Integer, Queue<QueuedCell>> streamQueues = new HashMap<>();
+    /* Streams with queued cells in the order they will next be served */
+    @GuardedBy("lock") private final ArrayDeque<Integer> activeStreams = new ArrayDeque<>();
+    @GuardedBy("lock") private int size;
+
+    void add(RelayCell cell, CircuitNode targetNode) {
+        final QueuedCell qc = new QueuedCell(cell, targetNode);
+        lock.lock();
+        try {
+            size++;
+            if(isControlCell(qc)) {
+                controlCells.add(qc);
+                return;
+            }
+            Queue<QueuedCell> queue = streamQueues.get(cell.getStreamId());
+            if(queue == null) {
+                queue = new ArrayDeque<>();
+                streamQueues.put(cell.getStreamId(), queue);
+                activeStreams.add(cell.getStreamId());
+            }
+            queue.add(qc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean isControlCell(QueuedCell qc) {
+        final RelayCell cell = qc.cell;
+        if(cell.getStreamId() == 0 || cell.getRelayCommand() == RelayCell.RELAY_SENDME) {
+            return true;
+        }
+        return !qc.isData() && !streamQueues.containsKey(cell.getStreamId());
+    }
+
+    /**
+     * Remove and return the next cell which can be sent, or <code>null</code> if no cell can be sent
+     * until more cells are queued or a packaging window is opened.  The packaging window of the target
+     * node has already been decremented when a RELAY_DATA cell is returned.
+     */
+    QueuedCell poll() {
+        lock.lock();
+        try {
+            final QueuedCell qc = controlCells.poll();
+            if(qc != null) {
+                size--;
+                return qc;
+            }
+            return pollStreams();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private QueuedCell pollStreams() {
+        final int n = activeStreams.size();
+        for(int i = 0; i < n; i++) {
+            final Integer streamId = activeStreams.remove();
+            final Queue<QueuedCell> queue = streamQueues.get(streamId);
+            final QueuedCell head = queue.peek();
+            if(head.isData() && !head.targetNode.tryDecrementSendWindow()) {
+                activeStreams.add(streamId);
+                continue;
+            }
+            queue.remove();
+            size--;
+            if(queue.isEmpty()) {
+                streamQueues.remove(streamId);
+            } else {
+                activeStreams.add(streamId);
+            }
+            return head;
+        }
+        return null;
+    }
+
+    /**
+     * Return <code>true</code> if {@link #poll()} would currently return a cell.
+     */
+    boolean hasSendableCell() {
+        lock.lock();
+        try {
+            if(!controlCells.isEmpty()) {
+                return true;
+            }
+            for(Queue<QueuedCell> queue: streamQueues.values()) {
+                final QueuedCell head = queue.peek();
+                if(!head.isData() || head.targetNode.isSendWindowOpen()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discard and release every queued cell.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            releaseAll(controlCells);
+            for(Queue<QueuedCell> queue: streamQueues.values()) {
+                releaseAll(queue);
+            }
+            streamQueues.clear();
+            activeStreams.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void releaseAll(Queue<QueuedCell> queue) {
+        QueuedCell qc;
+        while((qc = queue.poll()) != null) {
+            qc.cell.release();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.subgraph.orchid.circuits;
+
+import java.util.List;
+
+import com.subgraph.orchid.data.exitpolicy.ExitTarget;
+
+/**
+ * Chooses the open exit circuit on which a pending exit stream is opened.
+ */
+interface StreamAttachmentPolicy {
+
+    /**
+     * Return the circuit to open a stream to <code>target</code> on, or <code>null</code> to leave
+     * the stream pending until another circuit is available.
+     *
+     * @param target The destination of the pending stream.
+     * @param circuits The connected exit circuits, in no particular order.  Circuits which cannot
+     *                 handle <code>target</code> have not been removed.
+     */
+    CircuitLoad chooseCircuit(ExitTarget target, List<CircuitLoad> circuits);
+
+    /**
+     * Return <code>false</code> if no more streams should be opened on <code>circuit</code>, so that
+     * a new circuit is built for streams it could otherwise handle.
+     */
+    boolean hasCapacity(ExitCircuitImpl circuit);
+}
@@ -1,6 +1,10 @@
 package com.subgraph.orchid.circuits;
  
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.OpenFailedException;
 import com.subgraph.orchid.Stream;
@@ -17,26 +21,37 @@ public class StreamExitRequest implements ExitTarget {
 	private final IPv4Address address;
 	private final String hostname;
 	private final int port;
-	private final Object requestCompletionLock;
+	private final ReentrantLock requestCompletionLock;
+	private final Condition requestCompleted;
 	
 	@GuardedBy("requestCompletionLock") private CompletionStatus completionStatus;	
 	@GuardedBy("requestCompletionLock") private Stream stream;
 	@GuardedBy("requestCompletionLock") private int streamOpenFailReason;
+	/*
+	 * The stream may be opened on more than one circuit at once.  The first attempt to succeed completes
+	 * the request and the streams still being opened by the other attempts are closed.  A failure only
+	 * completes the request once every attempt has failed.
+	 */
+	@GuardedBy("requestCompletionLock") private int attemptCount;
+	@GuardedBy("requestCompletionLock") private int failedAttemptCount;
+	@GuardedBy("requestCompletionLock") private int round;
+	@GuardedBy("requestCompletionLock") private final List<Stream> openingStreams = new ArrayList<>();
 	
 	@GuardedBy("this") private boolean isReserved;
 	@GuardedBy("this") private int retryCount;
 	@GuardedBy("this") private long specificTimeout;
 
-	StreamExitRequest(Object requestCompletionLock, IPv4Address address, int port) {
-		this(requestCompletionLock, true, "", address, port);
+	StreamExitRequest(ReentrantLock requestCompletionLock, Condition requestCompleted, IPv4Address address, int port) {
+		this(requestCompletionLock, requestCompleted, true, "", address, port);
 	}
 
-	StreamExitRequest(Object requestCompletionLock, String hostname, int port) {
-		this(requestCompletionLock, false, hostname, null, port);
+	StreamExitRequest(ReentrantLock requestCompletionLock, Condition requestCompleted, String hostname, int port) {
+		this(requestCompletionLock, requestCompleted, false, hostname, null, port);
 	}
 	
-	private StreamExitRequest(Object requestCompletionLock, boolean isAddress, String hostname, IPv4Address address, int port) {
+	private StreamExitRequest(ReentrantLock requestCompletionLock, Condition requestCompleted, boolean isAddress, String hostname, IPv4Address address, int port) {
 		this.requestCompletionLock = requestCompletionLock;
+		this.requestCompleted = requestCompleted;
 		this.isAddress = isAddress;
 		this.hostname = hostname;
 		this.address = address;
@@ -74,36 +89,154 @@ public class StreamExitRequest implements ExitTarget {
 		}
 	}
 
+	/**
+	 * Count an attempt to open the stream, called before the attempt is started.
+	 */
+	void addAttempt() {
+		requestCompletionLock.lock();
+		try {
+			attemptCount += 1;
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
+	/**
+	 * Count a second attempt to open the stream on another circuit, unless the request has been
+	 * completed, retried or raced since the first attempt of <code>round</code> was started.
+	 * 
+	 * @return <code>true</code> if the caller should start the second attempt.
+	 */
+	boolean addRacingAttempt(int round) {
+		requestCompletionLock.lock();
+		try {
+			if(completionStatus != CompletionStatus.NOT_COMPLETED || this.round != round || attemptCount != 1) {
+				return false;
+			}
+			attemptCount += 1;
+			return true;
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of times this request has been reset for retry.  Attempts started for the
+	 * request are counted separately in each round.
+	 */
+	int getRound() {
+		requestCompletionLock.lock();
+		try {
+			return round;
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
+	/**
+	 * Record a stream which has been created to open this request but has not yet connected, so that
+	 * it can be closed if another attempt succeeds first.
+	 * 
+	 * @return <code>false</code> if the request has already been completed and the stream is not needed.
+	 */
+	boolean addOpeningStream(Stream stream) {
+		requestCompletionLock.lock();
+		try {
+			if(completionStatus != CompletionStatus.NOT_COMPLETED) {
+				return false;
+			}
+			openingStreams.add(stream);
+			return true;
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
+	void removeOpeningStream(Stream stream) {
+		requestCompletionLock.lock();
+		try {
+			openingStreams.remove(stream);
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
 	void setCompletedTimeout() {
-		synchronized (requestCompletionLock) {
-			newStatus(CompletionStatus.TIMEOUT);
+		requestCompletionLock.lock();
+		try {
+			attemptFailed(CompletionStatus.TIMEOUT);
+		} finally {
+			requestCompletionLock.unlock();
 		}
 	}
 	
 	void setExitFailed() {
-		synchronized (requestCompletionLock) {
-			newStatus(CompletionStatus.EXIT_FAILURE);
+		requestCompletionLock.lock();
+		try {
+			attemptFailed(CompletionStatus.EXIT_FAILURE);
+		} finally {
+			requestCompletionLock.unlock();
 		}
 	}
 	
 	void setStreamOpenFailure(int reason) {
-		synchronized (requestCompletionLock) {
-			streamOpenFailReason = reason;
-			newStatus(CompletionStatus.STREAM_OPEN_FAILURE);
+		requestCompletionLock.lock();
+		try {
+			if(attemptFailed(CompletionStatus.STREAM_OPEN_FAILURE)) {
+				streamOpenFailReason = reason;
+			}
+		} finally {
+			requestCompletionLock.unlock();
 		}
 	}
 	
-	void setCompletedSuccessfully(Stream stream) {
-		synchronized (requestCompletionLock) {
+	/**
+	 * Complete the request with a stream which has connected, and close the streams still being
+	 * opened by any other attempts.
+	 * 
+	 * @return <code>false</code> if another attempt already completed the request, in which case
+	 *         the caller should close <code>stream</code>.
+	 */
+	boolean setCompletedSuccessfully(Stream stream) {
+		final List<Stream> losingStreams;
+		requestCompletionLock.lock();
+		try {
+			if(completionStatus != CompletionStatus.NOT_COMPLETED) {
+				return false;
+			}
 			this.stream = stream;
+			openingStreams.remove(stream);
+			losingStreams = new ArrayList<>(openingStreams);
+			openingStreams.clear();
 			newStatus(CompletionStatus.SUCCESS);
+		} finally {
+			requestCompletionLock.unlock();
 		}
+		// closing a stream takes circuit locks, never hold the completion lock while doing it
+		for(Stream s: losingStreams) {
+			s.close();
+		}
+		return true;
 	}
 	
 	void setInterrupted() {
-		synchronized (requestCompletionLock) {
-			newStatus(CompletionStatus.INTERRUPTED);	
+		requestCompletionLock.lock();
+		try {
+			attemptFailed(CompletionStatus.INTERRUPTED);
+		} finally {
+			requestCompletionLock.unlock();
+		}
+	}
+
+	/* Returns true if this was the last attempt still running and the request has been completed */
+	@GuardedBy("requestCompletionLock")
+	private boolean attemptFailed(CompletionStatus status) {
+		failedAttemptCount += 1;
+		if(completionStatus != CompletionStatus.NOT_COMPLETED || failedAttemptCount < attemptCount) {
+			return false;
 		}
+		newStatus(status);
+		return true;
 	}
 
 	private void newStatus(CompletionStatus newStatus) {
@@ -111,12 +244,13 @@ public class StreamExitRequest implements ExitTarget {
 			throw new IllegalStateException("Attempt to set completion state to " + newStatus +" while status is "+ completionStatus);
 		}
 		completionStatus = newStatus;
-		requestCompletionLock.notifyAll();
+		requestCompleted.signalAll();
 	}
 
 	
 	Stream getStream() throws OpenFailedException, TimeoutException, StreamConnectFailedException, InterruptedException {
-		synchronized(requestCompletionLock) {
+		requestCompletionLock.lock();
+		try {
 			switch(completionStatus) {
 			case NOT_COMPLETED:
 				throw new IllegalStateException("Request not completed");
@@ -133,21 +267,33 @@ public class StreamExitRequest implements ExitTarget {
 			default:
 				throw new IllegalStateException("Unknown completion status");
 			}
+		} finally {
+			requestCompletionLock.unlock();
 		}
 	}
 
 	synchronized void resetForRetry() {
-		synchronized (requestCompletionLock) {
+		requestCompletionLock.lock();
+		try {
 			streamOpenFailReason = 0;
 			completionStatus = CompletionStatus.NOT_COMPLETED;
+			attemptCount = 0;
+			failedAttemptCount = 0;
+			round += 1;
+			openingStreams.clear();
+		} finally {
+			requestCompletionLock.unlock();
 		}
 		retryCount += 1;
 		isReserved = false;
 	}
 
 	boolean isCompleted() {
-		synchronized (requestCompletionLock) {
+		requestCompletionLock.lock();
+		try {
 			return completionStatus != CompletionStatus.NOT_COMPLETED;
+		} finally {
+			requestCompletionLock.unlock();
 		}
 	}
 	
@@ -4,13 +4,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.Circuit;
 import com.subgraph.orchid.CircuitNode;
 import com.subgraph.orchid.RelayCell;
 import com.subgraph.orchid.Stream;
 import com.subgraph.orchid.StreamConnectFailedException;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorException;
 import com.subgraph.orchid.circuits.cells.RelayCellImpl;
 import com.subgraph.orchid.dashboard.DashboardRenderable;
@@ -34,11 +38,14 @@ public class StreamImpl implements Stream, DashboardRenderable {
     private final TorOutputStream outputStream;
 
     private boolean isClosed;
+    private boolean isBeginSent;
     private boolean relayEndReceived;
     private int relayEndReason;
     private boolean relayConnectedReceived;
-    private final Object waitConnectLock = new Object();
-    private final Object windowLock = new Object();
+    private final ReentrantLock waitConnectLock = Threading.lock("waitConnect");
+    private final Condition connectStatusChanged = waitConnectLock.newCondition();
+    private final ReentrantLock windowLock = Threading.lock("streamWindow");
+    private final Condition windowAvailable = windowLock.newCondition();
     private int packageWindow;
     private int deliverWindow;
 
@@ -57,39 +64,55 @@ public class StreamImpl implements Stream, DashboardRenderable {
 
     void addInputCell(RelayCell cell) {
         if(isClosed){
+            cell.release();
             return;
         }
         if(cell.getRelayCommand() == RelayCell.RELAY_END) {
-            synchronized(waitConnectLock) {
+            waitConnectLock.lock();
+            try {
                 relayEndReason = cell.getByte();
                 relayEndReceived = true;
                 inputStream.addEndCell(cell);
-                waitConnectLock.notifyAll();
+                connectStatusChanged.signalAll();
+            } finally {
+                waitConnectLock.unlock();
             }
         } else if(cell.getRelayCommand() == RelayCell.RELAY_CONNECTED) {
-            synchronized(waitConnectLock) {
+            waitConnectLock.lock();
+            try {
                 relayConnectedReceived = true;
-                waitConnectLock.notifyAll();
+                connectStatusChanged.signalAll();
+            } finally {
+                waitConnectLock.unlock();
             }
+            cell.release();
         } else if(cell.getRelayCommand() == RelayCell.RELAY_SENDME) {
-            synchronized(windowLock) {
+            windowLock.lock();
+            try {
                 packageWindow += STREAMWINDOW_INCREMENT;
-                windowLock.notifyAll();
+                windowAvailable.signalAll();
+            } finally {
+                windowLock.unlock();
             }
+            cell.release();
         } else {
             inputStream.addInputCell(cell);
-            synchronized(windowLock) { 
+            windowLock.lock();
+            try {
                 deliverWindow--;
                 if(deliverWindow < 0){
                     throw new TorException("Stream has negative delivery window");
                 }
+            } finally {
+                windowLock.unlock();
             }
             considerSendingSendme();
         }
     }
 
     private void considerSendingSendme() {
-        synchronized(windowLock) {
+        windowLock.lock();
+        try {
             if(deliverWindow > (STREAMWINDOW_START - STREAMWINDOW_INCREMENT)){
                 return;
             }
@@ -99,6 +122,8 @@ public class StreamImpl implements Stream, DashboardRenderable {
             final RelayCell sendme = circuit.createRelayCell(RelayCell.RELAY_SENDME, streamId, targetNode);
             circuit.sendRelayCell(sendme);
             deliverWindow += STREAMWINDOW_INCREMENT;
+        } finally {
+            windowLock.unlock();
         }
     }
 
@@ -125,7 +150,17 @@ public class StreamImpl implements Stream, DashboardRenderable {
 
         logger.debug("Closing stream "+ this);
 
-        isClosed = true;
+        final boolean shouldSendEnd;
+        waitConnectLock.lock();
+        try {
+            isClosed = true;
+            // the exit does not know about a stream which was closed before the BEGIN cell was sent
+            shouldSendEnd = isBeginSent && !relayEndReceived;
+            // wake up a thread still waiting for this stream to connect
+            connectStatusChanged.signalAll();
+        } finally {
+            waitConnectLock.unlock();
+        }
         inputStream.close();
         outputStream.close();
         circuit.removeStream(this);
@@ -133,17 +168,21 @@ public class StreamImpl implements Stream, DashboardRenderable {
             circuit.markForClose();
         }
 
-        if(!relayEndReceived) {
-            final RelayCell cell = new RelayCellImpl(circuit.getFinalCircuitNode(), circuit.getCircuitId(), streamId, RelayCell.RELAY_END);
-            cell.putByte(RelayCell.REASON_DONE);
-            circuit.sendRelayCellToFinalNode(cell);
+        if(shouldSendEnd) {
+            sendEndCell();
         }
     }
 
+    private void sendEndCell() {
+        final RelayCell cell = new RelayCellImpl(circuit.getFinalCircuitNode(), circuit.getCircuitId(), streamId, RelayCell.RELAY_END);
+        cell.putByte(RelayCell.REASON_DONE);
+        circuit.sendRelayCellToFinalNode(cell);
+    }
+
     public void openDirectory(long timeout) throws InterruptedException, TimeoutException, StreamConnectFailedException {
         streamTarget = "[Directory]";
         final RelayCell cell = new RelayCellImpl(circuit.getFinalCircuitNode(), circuit.getCircuitId(), streamId, RelayCell.RELAY_BEGIN_DIR);
-        circuit.sendRelayCellToFinalNode(cell);
+        sendBeginCell(cell);
         waitForRelayConnected(timeout);
     }
 
@@ -151,24 +190,64 @@ public class StreamImpl implements Stream, DashboardRenderable {
         streamTarget = target + ":"+ port;
         final RelayCell cell = new RelayCellImpl(circuit.getFinalCircuitNode(), circuit.getCircuitId(), streamId, RelayCell.RELAY_BEGIN);
         cell.putString(target + ":"+ port);
-        circuit.sendRelayCellToFinalNode(cell);
+        sendBeginCell(cell);
         waitForRelayConnected(timeout);
     }
 
+    /*
+     * A stream being opened for a raced exit request is closed if the request is completed on
+     * another circuit, which can happen before or while the BEGIN cell is sent.  The cell is sent
+     * without holding waitConnectLock, since sending can destroy the circuit and take the stream lock
+     * of CircuitIO.  If close() runs before isBeginSent is set it leaves sending RELAY_END to this
+     * thread, so that the END cell always follows the BEGIN cell.
+     */
+    private void sendBeginCell(RelayCell cell) throws StreamConnectFailedException {
+        waitConnectLock.lock();
+        try {
+            if(isClosed) {
+                cell.release();
+                throw new StreamConnectFailedException(RelayCell.REASON_DONE);
+            }
+        } finally {
+            waitConnectLock.unlock();
+        }
+
+        circuit.sendRelayCellToFinalNode(cell);
+
+        final boolean closedWhileSending;
+        waitConnectLock.lock();
+        try {
+            isBeginSent = true;
+            closedWhileSending = isClosed && !relayEndReceived;
+        } finally {
+            waitConnectLock.unlock();
+        }
+        if(closedWhileSending) {
+            sendEndCell();
+            throw new StreamConnectFailedException(RelayCell.REASON_DONE);
+        }
+    }
+
     private void waitForRelayConnected(long timeout) throws InterruptedException, TimeoutException, StreamConnectFailedException {
         final long start = System.currentTimeMillis();
         long elapsed = 0;
-        synchronized(waitConnectLock) {
+        waitConnectLock.lock();
+        try {
             while(!relayConnectedReceived) {
                 if(relayEndReceived) {
                     throw new StreamConnectFailedException(relayEndReason);
                 }
+                if(isClosed) {
+                    throw new StreamConnectFailedException(RelayCell.REASON_DONE);
+                }
                 if(elapsed >= timeout) {
                     throw new TimeoutException();
                 }
-                waitConnectLock.wait(timeout - elapsed);
+                connectStatusChanged.await(timeout - elapsed, TimeUnit.MILLISECONDS);
                 elapsed = System.currentTimeMillis() - start;
             }
+        } finally {
+            waitConnectLock.unlock();
         }
     }
 
@@ -192,10 +271,11 @@ public class StreamImpl implements Stream, DashboardRenderable {
     }
 
     public void waitForSendWindow(boolean decrement) {
-        synchronized(windowLock) {
+        windowLock.lock();
+        try {
             while(packageWindow == 0) {
                 try {
-                    windowLock.wait();
+                    windowAvailable.await();
                 } catch (InterruptedException e) {
                     throw new TorException("Thread interrupted while waiting for stream package window");
                 }
@@ -203,6 +283,8 @@ public class StreamImpl implements Stream, DashboardRenderable {
             if(decrement){
                     packageWindow--;
             }
+        } finally {
+            windowLock.unlock();
         }
         targetNode.waitForSendWindow();
     }
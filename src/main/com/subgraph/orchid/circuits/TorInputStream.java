@@ -5,9 +5,12 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.RelayCell;
 import com.subgraph.orchid.Stream;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.circuits.cells.RelayCellImpl;
 import com.subgraph.orchid.misc.GuardedBy;
 import com.subgraph.orchid.misc.ThreadSafe;
@@ -20,7 +23,8 @@ public class TorInputStream extends InputStream {
 	
 	private final Stream stream;
 	
-	private final Object lock = new Object();
+	private final ReentrantLock lock = Threading.lock("inputStream");
+	private final Condition cellAvailable = lock.newCondition();
 	
 	/** Queue of RelayCells that have been received on this stream */
 	@GuardedBy("lock") private final Queue<RelayCell> incomingCells;
@@ -34,6 +38,8 @@ public class TorInputStream extends InputStream {
 	/** Bytes of data from the RELAY_DATA cell currently being consumed */
 	@GuardedBy("lock") private ByteBuffer currentBuffer;
 	
+	@GuardedBy("lock") private RelayCell currentCell;
+	
 	/** Set when a RELAY_END cell is received */
 	@GuardedBy("lock") private boolean isEOF;
 	
@@ -47,14 +53,18 @@ public class TorInputStream extends InputStream {
 	}
 
 	long getBytesReceived() {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			return bytesReceived;
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public int read() throws IOException {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			if(isClosed) {
 				throw new IOException("Stream closed");
 			}
@@ -64,6 +74,8 @@ public class TorInputStream extends InputStream {
 			}
 			availableBytes -= 1;
 			return currentBuffer.get() & 0xFF;
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -74,8 +86,9 @@ public class TorInputStream extends InputStream {
 	}
 
 	@SuppressWarnings("NullableProblems")
-	public synchronized int read(byte[] b, int off, int len) throws IOException {
-		synchronized (lock) {
+	public int read(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
 			if(isClosed) {
 				throw new IOException("Stream closed");
 			}
@@ -103,6 +116,8 @@ public class TorInputStream extends InputStream {
 				}
 			}
 			return bytesRead;
+		} finally {
+			lock.unlock();
 		}
 	}
 	
@@ -125,43 +140,62 @@ public class TorInputStream extends InputStream {
 	}
 
 	public int available() {
-		synchronized(lock) {
+		lock.lock();
+		try {
 			return availableBytes;
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	public void close() {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			if(isClosed) {
 				return;
 			}
 			isClosed = true;
 			
+			releaseCurrentCell();
+			for(RelayCell cell: incomingCells) {
+				cell.release();
+			}
+			incomingCells.clear();
 			incomingCells.add(CLOSE_SENTINEL);
-			lock.notifyAll();
+			cellAvailable.signalAll();
+		} finally {
+			lock.unlock();
 		}
 		stream.close();
 	}
 
 	void addEndCell(RelayCell cell) {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			if(isClosed) {
+				cell.release();
 				return;
 			}
 			incomingCells.add(cell);
-			lock.notifyAll();
+			cellAvailable.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	void addInputCell(RelayCell cell) {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			if(isClosed) {
+				cell.release();
 				return;
 			}
 			incomingCells.add(cell);
 			bytesReceived += cell.cellBytesRemaining();
 			availableBytes += cell.cellBytesRemaining();
-			lock.notifyAll();
+			cellAvailable.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -192,11 +226,14 @@ public class TorInputStream extends InputStream {
 			throw new IOException("Input stream closed");
 		}
 		
+		releaseCurrentCell();
 		switch(nextCell.getRelayCommand()) {
 		case RelayCell.RELAY_DATA:
+			currentCell = nextCell;
 			currentBuffer = nextCell.getPayloadBuffer();
 			break;
 		case RelayCell.RELAY_END:
+			nextCell.release();
 			currentBuffer = EMPTY_BUFFER;
 			isEOF = true;
 			break;
@@ -205,11 +242,21 @@ public class TorInputStream extends InputStream {
 		}
 	}
 	
+	@GuardedBy("lock")
+	// The payload buffer of a cell is only valid until the cell has been released
+	private void releaseCurrentCell() {
+		if(currentCell != null) {
+			currentCell.release();
+			currentCell = null;
+			currentBuffer = EMPTY_BUFFER;
+		}
+	}
+	
 	@GuardedBy("lock")
 	private RelayCell getNextCell() throws IOException {
 		try {
 			while(incomingCells.isEmpty()) {
-				lock.wait();
+				cellAvailable.await();
 			}
 			return incomingCells.remove();
 		} catch (InterruptedException e) {
@@ -219,8 +266,11 @@ public class TorInputStream extends InputStream {
 	}
 	
 	int unflushedCellCount() {
-		synchronized (lock) {
+		lock.lock();
+		try {
 			return incomingCells.size();
+		} finally {
+			lock.unlock();
 		}
 	}
 
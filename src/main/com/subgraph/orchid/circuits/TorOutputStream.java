@@ -2,13 +2,16 @@ package com.subgraph.orchid.circuits;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.circuits.cells.RelayCellImpl;
 
 public class TorOutputStream extends OutputStream {
 
 	private final StreamImpl stream;
+	private final ReentrantLock lock = Threading.lock("outputStream");
 	private RelayCell currentOutputCell;
 	private volatile boolean isClosed;
 	private long bytesSent;
@@ -21,11 +24,14 @@ public class TorOutputStream extends OutputStream {
 	private void flushCurrentOutputCell() {
 		if(currentOutputCell != null && currentOutputCell.cellBytesConsumed() > RelayCell.HEADER_SIZE) {
 			stream.waitForSendWindowAndDecrement();
-			stream.getCircuit().sendRelayCell(currentOutputCell);
 			bytesSent += (currentOutputCell.cellBytesConsumed() - RelayCell.HEADER_SIZE);
+			// The connection releases the cell buffer back to the pool once it has been written
+			stream.getCircuit().sendRelayCell(currentOutputCell);
+		} else if(currentOutputCell != null) {
+			currentOutputCell.release();
 		}
 
-		currentOutputCell = new RelayCellImpl(stream.getTargetNode(), stream.getCircuit().getCircuitId(),
+		currentOutputCell = RelayCellImpl.createPooledCell(stream.getTargetNode(), stream.getCircuit().getCircuitId(),
 				stream.getStreamId(), RelayCell.RELAY_DATA);
 	}
 
@@ -34,28 +40,38 @@ public class TorOutputStream extends OutputStream {
 	}
 
 	@Override
-	public synchronized void write(int b) throws IOException {
-		checkOpen();
-		if(currentOutputCell == null || currentOutputCell.cellBytesRemaining() == 0)
-			flushCurrentOutputCell();
-		currentOutputCell.putByte(b);		
+	public void write(int b) throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			if(currentOutputCell == null || currentOutputCell.cellBytesRemaining() == 0)
+				flushCurrentOutputCell();
+			currentOutputCell.putByte(b);
+		} finally {
+			lock.unlock();
+		}
 	}
 
-	public synchronized void write(@SuppressWarnings("NullableProblems") byte[] data, int offset, int length) throws IOException {
-		checkOpen();
-		if(currentOutputCell == null || currentOutputCell.cellBytesRemaining() == 0)
-			flushCurrentOutputCell();
+	public void write(@SuppressWarnings("NullableProblems") byte[] data, int offset, int length) throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			if(currentOutputCell == null || currentOutputCell.cellBytesRemaining() == 0)
+				flushCurrentOutputCell();
 
-		while(length > 0) {
-			if(length < currentOutputCell.cellBytesRemaining()) {
-				currentOutputCell.putByteArray(data, offset, length);
-				return;
+			while(length > 0) {
+				if(length < currentOutputCell.cellBytesRemaining()) {
+					currentOutputCell.putByteArray(data, offset, length);
+					return;
+				}
+				final int writeCount = currentOutputCell.cellBytesRemaining();
+				currentOutputCell.putByteArray(data, offset, writeCount);
+				flushCurrentOutputCell();
+				offset += writeCount;
+				length -= writeCount;
 			}
-			final int writeCount = currentOutputCell.cellBytesRemaining();
-			currentOutputCell.putByteArray(data, offset, writeCount);
-			flushCurrentOutputCell();
-			offset += writeCount;
-			length -= writeCount;
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -64,18 +80,30 @@ public class TorOutputStream extends OutputStream {
 			throw new IOException("Output stream is closed");
 	}
 
-	public synchronized void flush() {
-		if(isClosed)
-			return;
-		flushCurrentOutputCell();
+	public void flush() {
+		lock.lock();
+		try {
+			if(isClosed)
+				return;
+			flushCurrentOutputCell();
+		} finally {
+			lock.unlock();
+		}
 	}
 
-	public synchronized void close() {
-		if(isClosed)
-			return;
-		flush();
-		isClosed = true;
-		currentOutputCell = null;
+	public void close() {
+		lock.lock();
+		try {
+			if(isClosed)
+				return;
+			flushCurrentOutputCell();
+			isClosed = true;
+			currentOutputCell.release();
+			currentOutputCell = null;
+		} finally {
+			lock.unlock();
+		}
+		// Closing the stream takes circuit locks, so it must not be done while holding the output lock
 		stream.close();
 	}
 
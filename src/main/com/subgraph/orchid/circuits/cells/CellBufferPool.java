@@ -0,0 +1,146 @@
+package com.subgraph.orchid.circuits.cells;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.GuardedBy;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * A bounded pool of recyclable <code>CELL_LEN</code> byte arrays backing fixed length cells on the
+ * relay data path.  Buffers are shared by all threads because a cell is usually allocated by a
+ * connection reading thread and consumed by an application thread reading a stream (or the other
+ * way around for outgoing cells).
+ * <p>
+ * Buffers are cleared when they are returned to the pool so that plaintext from one cell can never
+ * appear as padding in a later one.  When debug logging is enabled, every buffer handed out is tracked
+ * and a warning with the allocation site is logged for any buffer which is garbage collected without
+ * having been released.
+ */
+@ThreadSafe
+public class CellBufferPool {
+    private static final Logger logger = Logger.getInstance(CellBufferPool.class);
+    private final static int MAX_POOLED_BUFFERS = 1024;
+
+    private static class LeakTracker extends WeakReference<byte[]> {
+        private final StackTraceElement[] allocationSite;
+
+        LeakTracker(byte[] buffer, ReferenceQueue<byte[]> queue) {
+            super(buffer, queue);
+            this.allocationSite = new Throwable().getStackTrace();
+        }
+
+        String describeAllocationSite() {
+            final int start = Math.min(3, allocationSite.length);
+            final int end = Math.min(start + 6, allocationSite.length);
+            return Arrays.toString(Arrays.copyOfRange(allocationSite, start, end));
+        }
+    }
+
+    private final static BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private final static AtomicLong allocationCount = new AtomicLong();
+    private final static AtomicLong reuseCount = new AtomicLong();
+
+    private static volatile boolean isTracking;
+    private final static Object trackerLock = new Object();
+    private final static ReferenceQueue<byte[]> collectedBuffers = new ReferenceQueue<>();
+    @GuardedBy("trackerLock") private final static Map<byte[], LeakTracker> trackedBuffers = new WeakHashMap<>();
+    @GuardedBy("trackerLock") private final static Set<LeakTracker> liveTrackers = new HashSet<>();
+
+    /**
+     * Return a zero filled buffer of <code>Cell.CELL_LEN</code> bytes, taken from the pool if one is available.
+     *
+     * @return A buffer for a fixed length cell.
+     */
+    public static byte[] allocate() {
+        byte[] buffer = freeBuffers.poll();
+        if(buffer == null) {
+            buffer = new byte[Cell.CELL_LEN];
+            allocationCount.incrementAndGet();
+        } else {
+            reuseCount.incrementAndGet();
+        }
+        if(logger.isDebugEnabled()) {
+            trackBuffer(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #allocate()} to the pool.  The caller must not access the
+     * buffer after it has been released.
+     *
+     * @param buffer The buffer to release.
+     */
+    public static void release(byte[] buffer) {
+        if(buffer.length != Cell.CELL_LEN) {
+            throw new IllegalArgumentException("Buffer was not allocated from cell buffer pool");
+        }
+        if(isTracking) {
+            untrackBuffer(buffer);
+        }
+        Arrays.fill(buffer, (byte) 0);
+        freeBuffers.offer(buffer);
+    }
+
+    /**
+     * Stop tracking a buffer which will not be released and is instead left to the garbage collector.
+     *
+     * @param buffer A buffer obtained from {@link #allocate()}.
+     */
+    public static void forget(byte[] buffer) {
+        if(isTracking) {
+            untrackBuffer(buffer);
+        }
+    }
+
+    /** Return the number of buffers which had to be newly allocated because the pool was empty. */
+    public static long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /** Return the number of buffers which were served from the pool. */
+    public static long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    private static void trackBuffer(byte[] buffer) {
+        synchronized (trackerLock) {
+            isTracking = true;
+            reportLeaks();
+            final LeakTracker tracker = new LeakTracker(buffer, collectedBuffers);
+            trackedBuffers.put(buffer, tracker);
+            liveTrackers.add(tracker);
+        }
+    }
+
+    private static void untrackBuffer(byte[] buffer) {
+        synchronized (trackerLock) {
+            final LeakTracker tracker = trackedBuffers.remove(buffer);
+            if(tracker != null) {
+                liveTrackers.remove(tracker);
+                tracker.clear();
+            }
+        }
+    }
+
+    @GuardedBy("trackerLock")
+    private static void reportLeaks() {
+        LeakTracker tracker;
+        while((tracker = (LeakTracker) collectedBuffers.poll()) != null) {
+            if(liveTrackers.remove(tracker)) {
+                logger.warn("Cell buffer was garbage collected without being released to the pool. Allocated at "+ tracker.describeAllocationSite());
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.subgraph.orchid.Cell;
 
@@ -22,16 +23,59 @@ public class CellImpl implements Cell {
 		final int circuitId = header.getShort() & 0xFFFF;
 		final int command = header.get() & 0xFF;
 		
-		if(command == VERSIONS || command > 127) {
+		if(isVarCellCommand(command)) {
 			return readVarCell(circuitId, command, input);
 		}
 
-		final CellImpl cell = new CellImpl(circuitId, command);
+		final CellImpl cell = new CellImpl(circuitId, command, true);
 		readAll(input, cell.getCellBytes(), CELL_HEADER_LEN, CELL_PAYLOAD_LEN);
 
 		return cell;
 	}
 
+	/**
+	 * Remove the next complete cell from <code>buffer</code>.  If the buffer does not yet
+	 * contain an entire cell, <code>null</code> is returned and the buffer position is left
+	 * unchanged so that more data can be appended before trying again.
+	 *
+	 * @param buffer A buffer in read mode holding raw cell data received from a link.
+	 * @return The next cell in the buffer, or <code>null</code> if no complete cell is available.
+	 */
+	public static CellImpl readFromBuffer(ByteBuffer buffer) {
+		final int start = buffer.position();
+		if(buffer.remaining() < CELL_HEADER_LEN) {
+			return null;
+		}
+		final int circuitId = buffer.getShort(start) & 0xFFFF;
+		final int command = buffer.get(start + 2) & 0xFF;
+
+		if(isVarCellCommand(command)) {
+			if(buffer.remaining() < CELL_VAR_HEADER_LEN) {
+				return null;
+			}
+			final int length = buffer.getShort(start + CELL_HEADER_LEN) & 0xFFFF;
+			if(buffer.remaining() < CELL_VAR_HEADER_LEN + length) {
+				return null;
+			}
+			final CellImpl cell = new CellImpl(circuitId, command, length);
+			buffer.position(start + CELL_VAR_HEADER_LEN);
+			buffer.get(cell.getCellBytes(), CELL_VAR_HEADER_LEN, length);
+			return cell;
+		}
+
+		if(buffer.remaining() < CELL_LEN) {
+			return null;
+		}
+		final CellImpl cell = new CellImpl(circuitId, command, true);
+		buffer.position(start + CELL_HEADER_LEN);
+		buffer.get(cell.getCellBytes(), CELL_HEADER_LEN, CELL_PAYLOAD_LEN);
+		return cell;
+	}
+
+	private static boolean isVarCellCommand(int command) {
+		return command == VERSIONS || command > 127;
+	}
+
 	private static ByteBuffer readHeaderFromInputStream(InputStream input) throws IOException {
 		final byte[] cellHeader = new byte[CELL_HEADER_LEN];
 		readAll(input, cellHeader);
@@ -61,14 +105,40 @@ public class CellImpl implements Cell {
 		}
 	}
 
+	/*
+	 * Transfer ownership of a pooled buffer from cell to a new cell which wraps the same
+	 * bytes. Returns true if the buffer came from CellBufferPool.
+	 */
+	static boolean takeBufferOwnership(Cell cell) {
+		if(!(cell instanceof CellImpl)) {
+			return false;
+		}
+		return ((CellImpl) cell).isPooled.getAndSet(false);
+	}
+
+	/**
+	 * Detach a cell from the cell buffer pool.  This is used for cells which leave the relay
+	 * data path and are retained by code which never releases them, such as handshake responses.
+	 *
+	 * @param cell The cell to detach.
+	 */
+	public static void detachFromPool(Cell cell) {
+		if(takeBufferOwnership(cell)) {
+			CellBufferPool.forget(cell.getCellBytes());
+		}
+	}
+
 	private final int circuitId;
 	private final int command;
 	protected final ByteBuffer cellBuffer;
+	/* Cleared by whichever caller first releases or takes the buffer, so it is returned to the pool at most once */
+	private final AtomicBoolean isPooled;
 
 	/* Variable length cell constructor (ie: VERSIONS cells only) */
 	private CellImpl(int circuitId, int command, int payloadLength) {
 		this.circuitId = circuitId;
 		this.command = command;
+		this.isPooled = new AtomicBoolean();
 		this.cellBuffer = ByteBuffer.wrap(new byte[CELL_VAR_HEADER_LEN + payloadLength]);
 		cellBuffer.putShort((short)circuitId);
 		cellBuffer.put((byte)command);
@@ -78,15 +148,22 @@ public class CellImpl implements Cell {
 
 	/* Fixed length cell constructor */
 	protected CellImpl(int circuitId, int command) {
+		this(circuitId, command, false);
+	}
+
+	/* Fixed length cell constructor, optionally backed by a buffer from CellBufferPool */
+	protected CellImpl(int circuitId, int command, boolean isPooled) {
 		this.circuitId = circuitId;
 		this.command = command;
-		this.cellBuffer = ByteBuffer.wrap(new byte[CELL_LEN]);
+		this.isPooled = new AtomicBoolean(isPooled);
+		this.cellBuffer = ByteBuffer.wrap(isPooled ? CellBufferPool.allocate() : new byte[CELL_LEN]);
 		cellBuffer.putShort((short) circuitId);
 		cellBuffer.put((byte) command);
 		cellBuffer.mark();
 	}
 
-	protected CellImpl(byte[] rawCell) {
+	protected CellImpl(byte[] rawCell, boolean isPooled) {
+		this.isPooled = new AtomicBoolean(isPooled);
 		this.cellBuffer = ByteBuffer.wrap(rawCell);
 		this.circuitId = cellBuffer.getShort() & 0xFFFF;
 		this.command = cellBuffer.get() & 0xFF;
@@ -176,6 +253,12 @@ public class CellImpl implements Cell {
 		return cellBuffer.array();
 	}
 
+	public void release() {
+		if(isPooled.compareAndSet(true, false)) {
+			CellBufferPool.release(cellBuffer.array());
+		}
+	}
+
 	public String toString() {
 		return "Cell: circuit_id="+ circuitId +" command="+ command +" payload_len="+ cellBuffer.position();
 	}
@@ -12,7 +12,15 @@ public class RelayCellImpl extends CellImpl implements RelayCell {
 	public static RelayCell createFromCell(CircuitNode node, Cell cell) {
 		if(cell.getCommand() != Cell.RELAY)
 			throw new TorException("Attempted to create RelayCell from Cell type: "+ cell.getCommand());
-		return new RelayCellImpl(node, cell.getCellBytes());
+		return new RelayCellImpl(node, cell.getCellBytes(), takeBufferOwnership(cell));
+	}
+
+	/**
+	 * Create an outgoing relay cell backed by a buffer from {@link CellBufferPool}.  The buffer is
+	 * returned to the pool when the cell is released after it has been written to the connection.
+	 */
+	public static RelayCellImpl createPooledCell(CircuitNode node, int circuit, int stream, int relayCommand) {
+		return new RelayCellImpl(node, circuit, stream, relayCommand, false, true);
 	}
 
 	private final int streamId;
@@ -35,7 +43,11 @@ public class RelayCellImpl extends CellImpl implements RelayCell {
 	 }
 	 
 	 public RelayCellImpl(CircuitNode node, int circuit, int stream, int relayCommand, boolean isRelayEarly) {
-		super(circuit, (isRelayEarly) ? (Cell.RELAY_EARLY) : (Cell.RELAY));
+		 this(node, circuit, stream, relayCommand, isRelayEarly, false);
+	 }
+
+	 private RelayCellImpl(CircuitNode node, int circuit, int stream, int relayCommand, boolean isRelayEarly, boolean isPooled) {
+		super(circuit, (isRelayEarly) ? (Cell.RELAY_EARLY) : (Cell.RELAY), isPooled);
 		this.circuitNode = node;
 		this.relayCommand = relayCommand;
 		this.streamId = stream;
@@ -47,8 +59,8 @@ public class RelayCellImpl extends CellImpl implements RelayCell {
 		putShort(0);			// Length	
 	}
 
-	private RelayCellImpl(CircuitNode node, byte[] rawCell) {
-		super(rawCell);
+	private RelayCellImpl(CircuitNode node, byte[] rawCell, boolean isPooled) {
+		super(rawCell, isPooled);
 		this.circuitNode = node;
 		this.relayCommand = getByte();
 		getShort();
@@ -11,6 +11,7 @@ import com.subgraph.orchid.BridgeRouter;
 import com.subgraph.orchid.DirectoryDownloader;
 import com.subgraph.orchid.Router;
 import com.subgraph.orchid.RouterDescriptor;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorConfig;
 import com.subgraph.orchid.config.TorConfigBridgeLine;
 import com.subgraph.orchid.crypto.TorRandom;
@@ -148,7 +149,7 @@ public class Bridges {
         final List<Runnable> tasks = createDownloadTasks();
         outstandingDownloadTasks.set(tasks.size());
         for(Runnable r: tasks) {
-            final Thread thread = new Thread(r);
+            final Thread thread = Threading.newThread("Bridges descriptor download", r);
             thread.start();
         }
     }
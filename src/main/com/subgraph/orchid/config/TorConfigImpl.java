@@ -18,6 +18,7 @@ public class TorConfigImpl implements TorConfig {
         dataDirectory = toFile();
         circuitBuildTimeout = toMS(60, TimeUnit.SECONDS);
         circuitStreamTimeout = 0;
+        streamRaceDelay = 0;
         circuitIdleTimeout = toMS(1, TimeUnit.HOURS);
         newCircuitPeriod = toMS(30, TimeUnit.SECONDS);
         maxCircuitDirtiness = toMS(10, TimeUnit.MINUTES);
@@ -40,6 +41,11 @@ public class TorConfigImpl implements TorConfig {
         clientRejectInternalAddress = true;
         handshakeV3Enabled = true;
         handshakeV2Enabled = true;
+        connectionEngine = ConnectionEngine.BLOCKING;
+        bufferedCellReads = true;
+        circuitPriorityHalflife = toMS(30, TimeUnit.SECONDS);
+        circuitDispatchThreads = defaultCircuitDispatchThreads();
+        linksPerRouter = 1;
         hsAuth = new TorConfigHSAuth();
         useNtorHandshake = AutoBoolValue.AUTO;
         useMicrodescriptors = AutoBoolValue.AUTO;
@@ -50,6 +56,7 @@ public class TorConfigImpl implements TorConfig {
     private File dataDirectory;
     private long circuitBuildTimeout;
     private long circuitStreamTimeout;
+    private long streamRaceDelay;
     private long circuitIdleTimeout;
     private long newCircuitPeriod;
     private long maxCircuitDirtiness;
@@ -72,6 +79,11 @@ public class TorConfigImpl implements TorConfig {
     private boolean clientRejectInternalAddress;
     private boolean handshakeV3Enabled;
     private boolean handshakeV2Enabled;
+    private ConnectionEngine connectionEngine;
+    private boolean bufferedCellReads;
+    private long circuitPriorityHalflife;
+    private int circuitDispatchThreads;
+    private int linksPerRouter;
     private TorConfigHSAuth hsAuth;
     private AutoBoolValue useNtorHandshake;
     private AutoBoolValue useMicrodescriptors;
@@ -79,6 +91,12 @@ public class TorConfigImpl implements TorConfig {
     private List<TorConfigBridgeLine> bridgeLines;
 
 
+    /* Handing cells to another thread only pays off if it can run in parallel with the reader */
+    private static int defaultCircuitDispatchThreads() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return (processors > 1) ? processors : 0;
+    }
+
     private static long toMS(long time, TimeUnit unit) {
         return TimeUnit.MILLISECONDS.convert(time, unit);
     }
@@ -136,6 +154,16 @@ public class TorConfigImpl implements TorConfig {
         circuitStreamTimeout = toMS(time, unit);
     }
 
+    @Override
+    public long getStreamRaceDelay() {
+        return streamRaceDelay;
+    }
+
+    @Override
+    public void setStreamRaceDelay(long time, TimeUnit unit) {
+        streamRaceDelay = toMS(time, unit);
+    }
+
     @Override
     public long getCircuitIdleTimeout() {
         return circuitIdleTimeout;
@@ -357,6 +385,56 @@ public class TorConfigImpl implements TorConfig {
         handshakeV2Enabled = value;
     }
 
+    @Override
+    public ConnectionEngine getConnectionEngine() {
+        return connectionEngine;
+    }
+
+    @Override
+    public void setConnectionEngine(ConnectionEngine value) {
+        connectionEngine = value;
+    }
+
+    @Override
+    public boolean getBufferedCellReads() {
+        return bufferedCellReads;
+    }
+
+    @Override
+    public void setBufferedCellReads(boolean value) {
+        bufferedCellReads = value;
+    }
+
+    @Override
+    public long getCircuitPriorityHalflife() {
+        return circuitPriorityHalflife;
+    }
+
+    @Override
+    public void setCircuitPriorityHalflife(long time, TimeUnit unit) {
+        circuitPriorityHalflife = toMS(time, unit);
+    }
+
+    @Override
+    public int getCircuitDispatchThreads() {
+        return circuitDispatchThreads;
+    }
+
+    @Override
+    public void setCircuitDispatchThreads(int value) {
+        circuitDispatchThreads = value;
+    }
+
+    @Override
+    public int getLinksPerRouter() {
+        return linksPerRouter;
+    }
+
+    @Override
+    public void setLinksPerRouter(int value) {
+        linksPerRouter = value;
+    }
+
     @Override
     public HSDescriptorCookie getHidServAuth(String key) {
         return hsAuth.get(key);
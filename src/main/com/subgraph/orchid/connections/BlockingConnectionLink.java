@@ -0,0 +1,144 @@
+package com.subgraph.orchid.connections;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+import com.subgraph.orchid.logging.Logger;
+
+/**
+ * A link which reads cells from an <code>SSLSocket</code> with a dedicated blocking
+ * reader thread.
+ * <p>
+ * By default the reader pulls as much data as is available into a reusable buffer with each
+ * read and slices every complete cell out of it, rather than reading the header and payload
+ * of each cell separately.  The per-cell reader is still used when buffered reads are disabled.
+ */
+class BlockingConnectionLink implements ConnectionLink {
+    private static final Logger logger = Logger.getInstance(BlockingConnectionLink.class);
+    private final static int READ_BUFFER_SIZE = 32 * 1024;
+
+    private final SSLSocket socket;
+    private final Thread readCellsThread;
+    private final boolean isBufferedRead;
+    private InputStream input;
+    private OutputStream output;
+    private ConnectionImpl connection;
+
+    BlockingConnectionLink(SSLSocket socket, boolean isBufferedRead) {
+        this.socket = socket;
+        this.isBufferedRead = isBufferedRead;
+        this.readCellsThread = Threading.newThread("Connection reader", createReadCellsRunnable());
+    }
+
+    SSLSocket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void connect(SocketAddress address, int timeout) throws IOException {
+        socket.connect(address, timeout);
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return socket.getSession();
+    }
+
+    @Override
+    public void start(ConnectionImpl connection) throws IOException {
+        this.connection = connection;
+        input = socket.getInputStream();
+        output = socket.getOutputStream();
+        readCellsThread.start();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return socket.isConnected();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        output.write(data, offset, length);
+    }
+
+    @Override
+    public boolean mayBlockOnOutput() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private Runnable createReadCellsRunnable() {
+        return () -> {
+            try {
+                if(isBufferedRead) {
+                    readBufferedCellsLoop();
+                } else {
+                    readCellsLoop();
+                }
+            } catch(Exception e) {
+                logger.warn("Unhandled exception processing incoming cells on connection "+ e, e);
+            }
+        };
+    }
+
+    private void readCellsLoop() {
+        while(!Thread.interrupted()) {
+            final Cell cell;
+            try {
+                cell = CellImpl.readFromInputStream(input);
+            } catch (IOException e) {
+                connection.linkClosed(e);
+                return;
+            }
+            connection.processCell(cell);
+        }
+    }
+
+    private void readBufferedCellsLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while(!Thread.interrupted()) {
+            try {
+                final int n = input.read(buffer.array(), buffer.position(), buffer.remaining());
+                if(n == -1) {
+                    throw new EOFException();
+                }
+                buffer.position(buffer.position() + n);
+            } catch (IOException e) {
+                connection.linkClosed(e);
+                return;
+            }
+            buffer.flip();
+            CellImpl cell;
+            while((cell = CellImpl.readFromBuffer(buffer)) != null) {
+                connection.processCell(cell);
+            }
+            buffer.compact();
+            if(!buffer.hasRemaining()) {
+                /* A single variable length cell can be larger than the buffer */
+                buffer = growBuffer(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer growBuffer(ByteBuffer buffer) {
+        final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
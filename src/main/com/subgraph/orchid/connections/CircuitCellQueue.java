@@ -0,0 +1,118 @@
+package com.subgraph.orchid.connections;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.TorException;
+import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Delivers the cells received for one circuit to that circuit, one at a time and in the order
+ * they were received.
+ * <p>
+ * Cells are handed to the circuit on a thread of the dispatch executor rather than on the thread
+ * reading from the connection, so that decrypting and processing the cells of one circuit does
+ * not hold up the cells of the other circuits on the connection.  At most one task per circuit is
+ * submitted to the executor at a time, which keeps the cells of a circuit in order while different
+ * circuits are processed in parallel.  Without a dispatch executor, cells are delivered directly
+ * on the calling thread.
+ */
+@ThreadSafe
+class CircuitCellQueue implements Runnable {
+    private static final Logger logger = Logger.getInstance(CircuitCellQueue.class);
+    /* Give other circuits a turn after this many cells */
+    private final static int MAX_CELLS_PER_TASK = 64;
+    /* Set while the current thread is running a dispatch task */
+    private final static ThreadLocal<Boolean> isDispatching = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final Circuit circuit;
+    private final Executor dispatchExecutor;
+    private final Queue<Cell> cells = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+    CircuitCellQueue(Circuit circuit, Executor dispatchExecutor) {
+        this.circuit = circuit;
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    Circuit getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * Return <code>true</code> if the calling thread is a dispatch executor thread delivering cells.
+     * Such a thread is shared by the circuits of every connection and must not wait for output space
+     * on any one connection.
+     */
+    static boolean isDispatchThread() {
+        return isDispatching.get();
+    }
+
+    void add(Cell cell) {
+        if(dispatchExecutor == null) {
+            deliverCell(cell);
+            return;
+        }
+        cells.add(cell);
+        schedule();
+    }
+
+    private void schedule() {
+        if(!isScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            dispatchExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+            /* Executor has been shut down */
+            isScheduled.set(false);
+            discardCells();
+        }
+    }
+
+    @Override
+    public void run() {
+        isDispatching.set(Boolean.TRUE);
+        try {
+            for(int i = 0; i < MAX_CELLS_PER_TASK; i++) {
+                final Cell cell = cells.poll();
+                if(cell == null) {
+                    break;
+                }
+                deliverCell(cell);
+            }
+        } finally {
+            isDispatching.set(Boolean.FALSE);
+            isScheduled.set(false);
+        }
+        /* Cells added after the last poll and before isScheduled was cleared would otherwise be left behind */
+        if(!cells.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void deliverCell(Cell cell) {
+        try {
+            if(cell.getCommand() == Cell.RELAY) {
+                circuit.deliverRelayCell(cell);
+            } else {
+                circuit.deliverControlCell(cell);
+            }
+        } catch(TorException e) {
+            logger.warn("Unhandled Tor exception processing cell for circuit "+ circuit +": "+ e.getMessage(), e);
+        }
+    }
+
+    private void discardCells() {
+        Cell cell;
+        while((cell = cells.poll()) != null) {
+            cell.release();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.subgraph.orchid.connections;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.misc.GuardedBy;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Chooses the order in which queued cells from the circuits sharing a connection are written.
+ * <p>
+ * As with the EWMA circuit multiplexer in Tor, every circuit keeps an exponentially weighted
+ * moving average of the number of cells it has recently sent, and the next cell is always taken
+ * from the circuit with the lowest average among those with cells waiting.  A circuit carrying
+ * an interactive stream therefore gets its cells ahead of a circuit busy with a bulk transfer.
+ * <p>
+ * Rather than decaying every average on each tick, cells sent later are given a larger weight and
+ * all averages are scaled back down once the weight grows large.  Both preserve the relative order
+ * of the averages.  Cells which do not belong to a circuit are always written first.  With a
+ * half-life of zero, cells are written in the order they were queued.
+ */
+@ThreadSafe
+class CircuitScheduler {
+    private final static long TICK_LENGTH = 10 * 1000;
+    private final static double RESCALE_THRESHOLD = 1e9;
+
+    private static class CircuitQueue implements Comparable<CircuitQueue> {
+        private final int circuitId;
+        private final Queue<Cell> cells = new ArrayDeque<>();
+        private double cellCount;
+        private boolean isActive;
+        private boolean isRemoved;
+
+        CircuitQueue(int circuitId) {
+            this.circuitId = circuitId;
+        }
+
+        @Override
+        public int compareTo(CircuitQueue other) {
+            return Double.compare(cellCount, other.cellCount);
+        }
+    }
+
+    private final ReentrantLock lock = Threading.lock("circuitScheduler");
+    private final boolean isEwmaEnabled;
+    private final double tickScaleFactor;
+
+    @GuardedBy("lock") private final Queue<Cell> unscheduledCells = new ArrayDeque<>();
+    @GuardedBy("lock") private final Map<Integer, CircuitQueue> circuitQueues = new HashMap<>();
+    @GuardedBy("lock") private final PriorityQueue<CircuitQueue> activeCircuits = new PriorityQueue<>();
+    @GuardedBy("lock") private long baseTick = -1;
+    @GuardedBy("lock") private long currentTick = -1;
+    @GuardedBy("lock") private double cellWeight = 1.0;
+
+    /**
+     * @param halflife The time in milliseconds after which the cell count of a circuit has decayed
+     *                 to half its value, or zero to write cells in the order they were queued.
+     */
+    CircuitScheduler(long halflife) {
+        this.isEwmaEnabled = halflife > 0;
+        this.tickScaleFactor = isEwmaEnabled ? Math.pow(0.5, (double) TICK_LENGTH / halflife) : 1.0;
+    }
+
+    void add(Cell cell) {
+        lock.lock();
+        try {
+            if(!isEwmaEnabled || cell.getCircuitId() == 0) {
+                unscheduledCells.add(cell);
+                return;
+            }
+            final CircuitQueue queue = getCircuitQueue(cell.getCircuitId());
+            queue.cells.add(cell);
+            if(!queue.isActive) {
+                queue.isActive = true;
+                activeCircuits.add(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Cell poll() {
+        return poll(System.currentTimeMillis());
+    }
+
+    /**
+     * Remove and return the next cell to write, or <code>null</code> if no cells are queued.
+     *
+     * @param now The current time in milliseconds.
+     */
+    Cell poll(long now) {
+        lock.lock();
+        try {
+            final Cell cell = unscheduledCells.poll();
+            if(cell != null) {
+                return cell;
+            }
+            return pollActiveCircuit(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget a circuit once its remaining queued cells have been written.  The cells are kept so
+     * that a DESTROY cell queued just before the circuit is removed is still sent.
+     */
+    void removeCircuit(int circuitId) {
+        lock.lock();
+        try {
+            final CircuitQueue queue = circuitQueues.get(circuitId);
+            if(queue == null) {
+                return;
+            }
+            if(queue.isActive) {
+                queue.isRemoved = true;
+            } else {
+                circuitQueues.remove(circuitId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private CircuitQueue getCircuitQueue(int circuitId) {
+        CircuitQueue queue = circuitQueues.get(circuitId);
+        if(queue == null) {
+            queue = new CircuitQueue(circuitId);
+            circuitQueues.put(circuitId, queue);
+        }
+        /* The circuit id has been reused before the previous circuit finished draining */
+        queue.isRemoved = false;
+        return queue;
+    }
+
+    @GuardedBy("lock")
+    private Cell pollActiveCircuit(long now) {
+        final CircuitQueue queue = activeCircuits.poll();
+        if(queue == null) {
+            return null;
+        }
+        final Cell cell = queue.cells.remove();
+        updateCellWeight(now);
+        queue.cellCount += cellWeight;
+        if(!queue.cells.isEmpty()) {
+            activeCircuits.add(queue);
+        } else {
+            queue.isActive = false;
+            if(queue.isRemoved) {
+                circuitQueues.remove(queue.circuitId);
+            }
+        }
+        return cell;
+    }
+
+    /* Each tick which passes makes a cell sent from now on count for more than earlier cells */
+    @GuardedBy("lock")
+    private void updateCellWeight(long now) {
+        final long tick = now / TICK_LENGTH;
+        if(tick == currentTick) {
+            return;
+        }
+        currentTick = tick;
+        if(baseTick < 0) {
+            baseTick = tick;
+        }
+        cellWeight = Math.pow(tickScaleFactor, -(tick - baseTick));
+        if(cellWeight > RESCALE_THRESHOLD) {
+            rescale(tick);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void rescale(long tick) {
+        for(CircuitQueue queue: circuitQueues.values()) {
+            queue.cellCount /= cellWeight;
+        }
+        baseTick = tick;
+        cellWeight = 1.0;
+    }
+}
@@ -0,0 +1,135 @@
+package com.subgraph.orchid.connections;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.TorException;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Maps the 16-bit circuit id values of a connection to the circuits bound to them.
+ * <p>
+ * The id space is divided into pages of 256 slots which are only allocated once an id in
+ * the page has been handed out.  Since ids are assigned sequentially, the circuits of a
+ * connection usually occupy one or two pages.  Lookups and removals never lock or allocate,
+ * and a new id is claimed by a compare and set on the next free slot after the previous one.
+ * <p>
+ * Each slot holds the {@link CircuitCellQueue} which delivers received cells to the circuit.
+ */
+@ThreadSafe
+class CircuitTable {
+    private final static int MAX_CIRCUIT_ID = 0xFFFF;
+    private final static int PAGE_BITS = 8;
+    private final static int PAGE_SIZE = 1 << PAGE_BITS;
+    private final static int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<CircuitCellQueue>> pages;
+    private final AtomicInteger nextId;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Executor dispatchExecutor;
+
+    CircuitTable(int initialId) {
+        this(initialId, null);
+    }
+
+    /**
+     * @param dispatchExecutor The executor on which received cells are delivered to circuits, or
+     *                         <code>null</code> to deliver them on the thread which received them.
+     */
+    CircuitTable(int initialId, Executor dispatchExecutor) {
+        this.pages = new AtomicReferenceArray<>((MAX_CIRCUIT_ID + 1) >> PAGE_BITS);
+        this.nextId = new AtomicInteger(initialId);
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    /**
+     * Return the circuit bound to <code>circuitId</code>, or <code>null</code> if no circuit is bound to it.
+     */
+    Circuit get(int circuitId) {
+        final CircuitCellQueue queue = getCellQueue(circuitId);
+        return (queue == null) ? null : queue.getCircuit();
+    }
+
+    /**
+     * Return the cell queue of the circuit bound to <code>circuitId</code>, or <code>null</code> if no
+     * circuit is bound to it.
+     */
+    CircuitCellQueue getCellQueue(int circuitId) {
+        if(circuitId <= 0 || circuitId > MAX_CIRCUIT_ID) {
+            return null;
+        }
+        final AtomicReferenceArray<CircuitCellQueue> page = pages.get(circuitId >>> PAGE_BITS);
+        if(page == null) {
+            return null;
+        }
+        return page.get(circuitId & PAGE_MASK);
+    }
+
+    /**
+     * Bind <code>circuit</code> to the next unused circuit id and return that id.
+     *
+     * @throws TorException If every circuit id is already in use.
+     */
+    int bind(Circuit circuit) {
+        final CircuitCellQueue queue = new CircuitCellQueue(circuit, dispatchExecutor);
+        for(int i = 0; i < MAX_CIRCUIT_ID; i++) {
+            final int id = nextCandidateId();
+            if(getPage(id).compareAndSet(id & PAGE_MASK, null, queue)) {
+                size.incrementAndGet();
+                return id;
+            }
+        }
+        throw new TorException("No free circuit id available on connection");
+    }
+
+    /**
+     * Remove the binding of <code>circuitId</code> if it is still bound to <code>circuit</code>.
+     *
+     * @return <code>true</code> if the binding was removed.
+     */
+    boolean remove(int circuitId, Circuit circuit) {
+        if(circuitId <= 0 || circuitId > MAX_CIRCUIT_ID) {
+            return false;
+        }
+        final AtomicReferenceArray<CircuitCellQueue> page = pages.get(circuitId >>> PAGE_BITS);
+        if(page == null) {
+            return false;
+        }
+        final CircuitCellQueue queue = page.get(circuitId & PAGE_MASK);
+        if(queue != null && queue.getCircuit() == circuit && page.compareAndSet(circuitId & PAGE_MASK, queue, null)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /* Id 0 is reserved and never assigned */
+    private int nextCandidateId() {
+        while(true) {
+            final int id = nextId.getAndIncrement() & MAX_CIRCUIT_ID;
+            if(id != 0) {
+                return id;
+            }
+        }
+    }
+
+    private AtomicReferenceArray<CircuitCellQueue> getPage(int circuitId) {
+        final int index = circuitId >>> PAGE_BITS;
+        final AtomicReferenceArray<CircuitCellQueue> page = pages.get(index);
+        if(page != null) {
+            return page;
+        }
+        pages.compareAndSet(index, null, new AtomicReferenceArray<CircuitCellQueue>(PAGE_SIZE));
+        return pages.get(index);
+    }
+}
@@ -9,13 +9,12 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
-import javax.net.ssl.SSLSocket;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.subgraph.orchid.Connection;
 import com.subgraph.orchid.ConnectionCache;
@@ -23,6 +22,7 @@ import com.subgraph.orchid.ConnectionFailedException;
 import com.subgraph.orchid.ConnectionHandshakeException;
 import com.subgraph.orchid.ConnectionTimeoutException;
 import com.subgraph.orchid.Router;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorConfig;
 import com.subgraph.orchid.circuits.TorInitializationTracker;
 import com.subgraph.orchid.dashboard.DashboardRenderable;
@@ -43,8 +43,7 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
         }
 
         public ConnectionImpl call() throws Exception {
-            final SSLSocket socket = factory.createSocket();
-            final ConnectionImpl conn = new ConnectionImpl(config, socket, router, initializationTracker, isDirectoryConnection);
+            final ConnectionImpl conn = new ConnectionImpl(config, createLink(), router, initializationTracker, isDirectoryConnection, getDispatchExecutor());
             conn.connect();
             return conn;
         }
@@ -52,25 +51,142 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
 
     private class CloseIdleConnectionCheckTask implements Runnable {
         public void run() {
-            for(Future<ConnectionImpl> f: activeConnections.values()) {
-                if(f.isDone()) {
-                    try {
-                        final ConnectionImpl c = f.get();
-                        c.idleCloseCheck();
-                    } catch (Exception e) { 
-                        //swallow
+            for(RouterLinks links: activeConnections.values()) {
+                for(Future<ConnectionImpl> f: links.getLinks()) {
+                    if(f.isDone()) {
+                        try {
+                            final ConnectionImpl c = f.get();
+                            c.idleCloseCheck();
+                            if(c.isClosed()) {
+                                links.remove(f);
+                            }
+                        } catch (Exception e) {
+                            //swallow
+                        }
                     }
                 }
             }
         }
     }
 
-    private final ConcurrentMap<Router, Future<ConnectionImpl>> activeConnections = new ConcurrentHashMap<>();
+    /*
+     * The links which are open or being opened to a single router.  Circuits are placed on the
+     * least loaded open link, and another link is only opened while every open link already
+     * carries at least one circuit.
+     */
+    private class RouterLinks {
+        private final Router router;
+        private final AtomicReferenceArray<Future<ConnectionImpl>> slots;
+
+        RouterLinks(Router router, int linkCount) {
+            this.router = router;
+            this.slots = new AtomicReferenceArray<>(Math.max(1, linkCount));
+        }
+
+        Future<ConnectionImpl> chooseLink(boolean isDirectoryConnection) {
+            Future<ConnectionImpl> best = null;
+            Future<ConnectionImpl> pending = null;
+            int emptySlot = -1;
+            for(int i = 0; i < slots.length(); i++) {
+                final Future<ConnectionImpl> f = slots.get(i);
+                if(f == null) {
+                    emptySlot = (emptySlot < 0) ? i : emptySlot;
+                } else if(!f.isDone()) {
+                    pending = (pending == null) ? f : pending;
+                } else if(!isOpen(f)) {
+                    /* Whoever was waiting on a failed link has already seen the failure */
+                    slots.compareAndSet(i, f, null);
+                    emptySlot = (emptySlot < 0) ? i : emptySlot;
+                } else if(best == null || compareLoad(f, best) < 0) {
+                    best = f;
+                }
+            }
+            if(best != null && (emptySlot < 0 || pending != null || getConnection(best).getCircuitCount() == 0)) {
+                return best;
+            }
+            if(pending != null) {
+                /* Wait for a link which is already being opened rather than opening another */
+                return pending;
+            }
+            return createLinkIfAbsent(emptySlot, isDirectoryConnection);
+        }
+
+        ConnectionImpl getLeastLoadedConnection() {
+            Future<ConnectionImpl> best = null;
+            for(Future<ConnectionImpl> f: getLinks()) {
+                if(f.isDone() && isOpen(f) && (best == null || compareLoad(f, best) < 0)) {
+                    best = f;
+                }
+            }
+            return (best == null) ? null : getConnection(best);
+        }
+
+        List<Future<ConnectionImpl>> getLinks() {
+            final List<Future<ConnectionImpl>> links = new ArrayList<>();
+            for(int i = 0; i < slots.length(); i++) {
+                final Future<ConnectionImpl> f = slots.get(i);
+                if(f != null) {
+                    links.add(f);
+                }
+            }
+            return links;
+        }
+
+        void remove(Future<ConnectionImpl> link) {
+            for(int i = 0; i < slots.length(); i++) {
+                slots.compareAndSet(i, link, null);
+            }
+        }
+
+        int size() {
+            return slots.length();
+        }
+
+        private Future<ConnectionImpl> createLinkIfAbsent(int slot, boolean isDirectoryConnection) {
+            final FutureTask<ConnectionImpl> futureTask = new FutureTask<>(new ConnectionTask(router, isDirectoryConnection));
+            if(!slots.compareAndSet(slot, null, futureTask)) {
+                final Future<ConnectionImpl> f = slots.get(slot);
+                return (f != null) ? f : chooseLink(isDirectoryConnection);
+            }
+            futureTask.run();
+            return futureTask;
+        }
+
+        /* Only called for futures which have completed */
+        private boolean isOpen(Future<ConnectionImpl> f) {
+            final ConnectionImpl c = getConnection(f);
+            return c != null && !c.isClosed();
+        }
+
+        private int compareLoad(Future<ConnectionImpl> f1, Future<ConnectionImpl> f2) {
+            final ConnectionImpl c1 = getConnection(f1);
+            final ConnectionImpl c2 = getConnection(f2);
+            if(c1.getCircuitCount() != c2.getCircuitCount()) {
+                return Integer.compare(c1.getCircuitCount(), c2.getCircuitCount());
+            }
+            return Integer.compare(c1.getQueuedCellCount(), c2.getQueuedCellCount());
+        }
+
+        private ConnectionImpl getConnection(Future<ConnectionImpl> f) {
+            try {
+                return f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | CancellationException e) {
+                return null;
+            }
+        }
+    }
+
+    private final ConcurrentMap<Router, RouterLinks> activeConnections = new ConcurrentHashMap<>();
     private final ConnectionSocketFactory factory = new ConnectionSocketFactory();
-    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService scheduledExecutor = Threading.newSingleThreadScheduledPool("ConnectionCache idle check");
 
     private final TorConfig config;
     private final TorInitializationTracker initializationTracker;
+    private ConnectionSelector connectionSelector;
+    private ExecutorService dispatchExecutor;
     private volatile boolean isClosed;
 
 
@@ -86,7 +202,7 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
             return;
         }
         isClosed = true;
-        for(Future<ConnectionImpl> f: activeConnections.values()) {
+        for(Future<ConnectionImpl> f: getAllLinks()) {
             if(f.isDone()) {
                 try {
                     ConnectionImpl conn = f.get();
@@ -105,6 +221,37 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
         }
         activeConnections.clear();
         scheduledExecutor.shutdownNow();
+        synchronized (this) {
+            if(connectionSelector != null) {
+                connectionSelector.close();
+            }
+            if(dispatchExecutor != null) {
+                dispatchExecutor.shutdown();
+            }
+        }
+    }
+
+    private ConnectionLink createLink() {
+        if(config.getConnectionEngine() == TorConfig.ConnectionEngine.SELECTOR) {
+            return new SelectorConnectionLink(factory.createEngine(), getConnectionSelector().chooseLoop());
+        } else {
+            return new BlockingConnectionLink(factory.createSocket(), config.getBufferedCellReads());
+        }
+    }
+
+    /* Shared by every connection, returns null if cells are to be delivered on the link reading thread */
+    private synchronized ExecutorService getDispatchExecutor() {
+        if(dispatchExecutor == null && config.getCircuitDispatchThreads() > 0) {
+            dispatchExecutor = Threading.newFixedPool("Circuit cell dispatch", config.getCircuitDispatchThreads());
+        }
+        return dispatchExecutor;
+    }
+
+    private synchronized ConnectionSelector getConnectionSelector() {
+        if(connectionSelector == null) {
+            connectionSelector = new ConnectionSelector();
+        }
+        return connectionSelector;
     }
 
     @Override
@@ -117,19 +264,25 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
             throw new IllegalStateException("ConnectionCache has been closed");
         }
         logger.debug("Get connection to "+ router.getAddress() + " "+ router.getOnionPort() + " " + router.getNickname());
+        final RouterLinks links = getRouterLinks(router);
         while(true) {
-            Future<ConnectionImpl> f = getFutureFor(router, isDirectoryConnection);
+            final Future<ConnectionImpl> f = links.chooseLink(isDirectoryConnection);
             try {
                 Connection c = f.get();
                 if(c.isClosed()) {
-                    activeConnections.remove(router, f);
+                    links.remove(f);
                 } else {
                     return c;
                 }
             } catch (CancellationException e) {
-                activeConnections.remove(router, f);
+                links.remove(f);
             } catch (ExecutionException e) {
-                activeConnections.remove(router, f);
+                links.remove(f);
+                final ConnectionImpl fallback = links.getLeastLoadedConnection();
+                if(fallback != null) {
+                    logger.debug("Failed to open additional link to "+ router.getNickname() +": "+ e.getCause());
+                    return fallback;
+                }
                 final Throwable t = e.getCause();
                 if(t instanceof ConnectionTimeoutException) {
                     throw (ConnectionTimeoutException) t;
@@ -143,25 +296,22 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
         }
     }
 
-    private Future<ConnectionImpl> getFutureFor(Router router, boolean isDirectoryConnection) {
-        Future<ConnectionImpl> f = activeConnections.get(router);
-        if(f != null) {
-            return f;
+    private RouterLinks getRouterLinks(Router router) {
+        final RouterLinks links = activeConnections.get(router);
+        if(links != null) {
+            return links;
         }
-        return createFutureForIfAbsent(router, isDirectoryConnection);
+        final RouterLinks newLinks = new RouterLinks(router, config.getLinksPerRouter());
+        final RouterLinks existing = activeConnections.putIfAbsent(router, newLinks);
+        return (existing != null) ? existing : newLinks;
     }
 
-    private Future<ConnectionImpl> createFutureForIfAbsent(Router router, boolean isDirectoryConnection) {
-        final Callable<ConnectionImpl> task = new ConnectionTask(router, isDirectoryConnection);
-        final FutureTask<ConnectionImpl> futureTask = new FutureTask<>(task);
-
-        final Future<ConnectionImpl> f = activeConnections.putIfAbsent(router, futureTask);
-        if(f != null) {
-            return f;
+    private List<Future<ConnectionImpl>> getAllLinks() {
+        final List<Future<ConnectionImpl>> fs = new ArrayList<>();
+        for(RouterLinks links: activeConnections.values()) {
+            fs.addAll(links.getLinks());
         }
-
-        futureTask.run();
-        return futureTask;
+        return fs;
     }
 
     @Override
@@ -170,14 +320,34 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
             return;
         }
         printDashboardBanner(writer, flags);
-        for(Connection c: getActiveConnections()) {
-            if(!c.isClosed()) {
-                renderer.renderComponent(writer, flags, c);
+        for(RouterLinks links: activeConnections.values()) {
+            final List<Connection> cs = new ArrayList<>();
+            for(Future<ConnectionImpl> f: links.getLinks()) {
+                addConnectionFromFuture(f, cs);
+            }
+            if(links.size() > 1 && !cs.isEmpty()) {
+                renderLinkUtilisation(writer, links.router, cs, links.size());
+            }
+            for(Connection c: cs) {
+                if(!c.isClosed()) {
+                    renderer.renderComponent(writer, flags, c);
+                }
             }
         }
         writer.println();
     }
 
+    private void renderLinkUtilisation(PrintWriter writer, Router router, List<Connection> cs, int maxLinks) {
+        final StringBuilder circuits = new StringBuilder();
+        final StringBuilder queued = new StringBuilder();
+        for(Connection c: cs) {
+            final ConnectionImpl conn = (ConnectionImpl) c;
+            circuits.append((circuits.length() == 0) ? "" : ",").append(conn.getCircuitCount());
+            queued.append((queued.length() == 0) ? "" : ",").append(conn.getQueuedCellCount());
+        }
+        writer.println(" [Links router="+ router.getNickname() +" links="+ cs.size() +"/"+ maxLinks +" circuits="+ circuits +" queued="+ queued +"]");
+    }
+
     private void printDashboardBanner(PrintWriter writer, int flags) {
         final boolean verbose = (flags & DASHBOARD_CONNECTIONS_VERBOSE) != 0;
         if(verbose) {
@@ -190,7 +360,7 @@ public class ConnectionCacheImpl implements ConnectionCache, DashboardRenderable
 
     List<Connection> getActiveConnections() {
         final List<Connection> cs = new ArrayList<>();
-        for(Future<ConnectionImpl> future: activeConnections.values()) {
+        for(Future<ConnectionImpl> future: getAllLinks()) {
             addConnectionFromFuture(future, cs);
         }
         return cs;
@@ -8,8 +8,6 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
-import javax.net.ssl.SSLSocket;
-
 import com.subgraph.orchid.BridgeRouter;
 import com.subgraph.orchid.Cell;
 import com.subgraph.orchid.ConnectionHandshakeException;
@@ -25,27 +23,28 @@ import com.subgraph.orchid.logging.Logger;
 public abstract class ConnectionHandshake {
     private static final Logger logger = Logger.getInstance(ConnectionHandshake.class);
 	
-    static ConnectionHandshake createHandshake(TorConfig config, ConnectionImpl connection, SSLSocket socket) throws ConnectionHandshakeException {
-        if(config.getHandshakeV3Enabled() && ConnectionHandshakeV3.sessionSupportsHandshake(socket.getSession())) {
-            return new ConnectionHandshakeV3(connection, socket);
-        } else if(config.getHandshakeV2Enabled()) {
-            return new ConnectionHandshakeV2(connection, socket);
+    static ConnectionHandshake createHandshake(TorConfig config, ConnectionImpl connection, ConnectionLink link) throws ConnectionHandshakeException {
+        if(config.getHandshakeV3Enabled() && ConnectionHandshakeV3.sessionSupportsHandshake(link.getSession())) {
+            return new ConnectionHandshakeV3(connection, link);
+        } else if(config.getHandshakeV2Enabled() && (link instanceof BlockingConnectionLink)) {
+            // The V2 handshake renegotiates TLS, which is only supported on a blocking SSLSocket
+            return new ConnectionHandshakeV2(connection, link, ((BlockingConnectionLink) link).getSocket());
         } else {
             throw new ConnectionHandshakeException("No valid handshake type available for this connection");
         }
     }
 
     protected final ConnectionImpl connection;
-    protected final SSLSocket socket;
+    protected final ConnectionLink link;
 
     protected final List<Integer> remoteVersions;
     private int remoteTimestamp;
     private IPv4Address myAddress;
     private final List<IPv4Address> remoteAddresses;
 
-    ConnectionHandshake(ConnectionImpl connection, SSLSocket socket) {
+    ConnectionHandshake(ConnectionImpl connection, ConnectionLink link) {
         this.connection = connection;
-        this.socket = socket;
+        this.link = link;
         this.remoteVersions = new ArrayList<>();
         this.remoteAddresses = new ArrayList<>();
     }
@@ -37,8 +37,11 @@ public class ConnectionHandshakeV2 extends ConnectionHandshake {
 		}
 	}
 	
-	ConnectionHandshakeV2(ConnectionImpl connection, SSLSocket socket) {
-		super(connection, socket);
+	private final SSLSocket socket;
+
+	ConnectionHandshakeV2(ConnectionImpl connection, ConnectionLink link, SSLSocket socket) {
+		super(connection, link);
+		this.socket = socket;
 	}
 
 	void runHandshake() throws IOException, InterruptedException, ConnectionIOException {
@@ -6,7 +6,6 @@ import com.subgraph.orchid.ConnectionIOException;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocket;
 import java.io.ByteArrayInputStream;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -22,8 +21,8 @@ public class ConnectionHandshakeV3 extends ConnectionHandshake {
     private X509Certificate linkCertificate;
 	private X509Certificate identityCertificate;
 
-	ConnectionHandshakeV3(ConnectionImpl connection, SSLSocket socket) {
-		super(connection, socket);
+	ConnectionHandshakeV3(ConnectionImpl connection, ConnectionLink link) {
+		super(connection, link);
 	}
 
 	void runHandshake() throws ConnectionIOException {
@@ -69,7 +68,7 @@ public class ConnectionHandshakeV3 extends ConnectionHandshake {
 	
 	RSAPublicKey getConnectionPublicKey() {
 		try {
-			java.security.cert.X509Certificate[] chain = (X509Certificate[]) socket.getSession().getPeerCertificates();
+			java.security.cert.X509Certificate[] chain = (X509Certificate[]) link.getSession().getPeerCertificates();
 			return (RSAPublicKey) chain[0].getPublicKey();
 		} catch (SSLPeerUnverifiedException e) {
 			return null;
@@ -2,22 +2,21 @@ package com.subgraph.orchid.connections;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
-import javax.net.ssl.SSLSocket;
-
 import com.subgraph.orchid.Cell;
 import com.subgraph.orchid.Circuit;
 import com.subgraph.orchid.Connection;
@@ -36,54 +35,68 @@ import com.subgraph.orchid.crypto.TorRandom;
 import com.subgraph.orchid.dashboard.DashboardRenderable;
 import com.subgraph.orchid.dashboard.DashboardRenderer;
 import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.GuardedBy;
 
 /**
  * This class represents a transport link between two onion routers or
  * between an onion proxy and an entry router.
- *
+ * <p>
+ * Outgoing cells are placed on a bounded queue.  Whichever sending thread finds the queue without
+ * an active writer becomes the writer and drains it, packing as many cells as fit into a single TLS
+ * record into each write to the link.  When the queue is full, senders block until the writer has
+ * made room, which pushes back on every circuit sharing this connection.  The order in which cells
+ * of different circuits leave the queue is chosen by a {@link CircuitScheduler}.
+ * <p>
+ * Incoming cells for a circuit are passed to its {@link CircuitCellQueue} so that they are
+ * decrypted and processed off the thread reading from the link.
  */
 public class ConnectionImpl implements Connection, DashboardRenderable {
     private static final Logger logger = Logger.getInstance(ConnectionImpl.class);
     private final static int CONNECTION_IDLE_TIMEOUT = 5 * 60 * 1000; // 5 minutes
     private final static int DEFAULT_CONNECT_TIMEOUT = 5000;
     private final static Cell connectionClosedSentinel = CellImpl.createCell(0, 0);
+    private final static int MAX_QUEUED_CELLS = 512;
+    private final static int WRITE_BATCH_SIZE = 16 * 1024; // Maximum TLS record payload
+    private final static int OUTPUT_WAIT_MS = 1000;
+    /* Writes out cells queued by dispatch threads, which may block on a congested link */
+    private final static Executor outputExecutor = Threading.newPool("Connection output");
 
     private final TorConfig config;
-    private final SSLSocket socket;
-    private InputStream input;
-    private OutputStream output;
+    private final ConnectionLink link;
     private final Router router;
-    private final Map<Integer, Circuit> circuitMap;
+    private final CircuitTable circuitTable;
     private final BlockingQueue<Cell> connectionControlCells;
     private final TorInitializationTracker initializationTracker;
     private final boolean isDirectoryConnection;
 
-    private int currentId = 1;
     private boolean isConnected;
     private volatile boolean isClosed;
-    private final Thread readCellsThread;
     private final ReentrantLock connectLock = Threading.lock("connect");
     private final ReentrantLock circuitsLock = Threading.lock("circuits");
-    private final ReentrantLock outputLock = Threading.lock("output");
     private final AtomicLong lastActivity = new AtomicLong();
 
+    private final CircuitScheduler outputScheduler;
+    private final AtomicInteger outputQueueSize = new AtomicInteger();
+    private final ReentrantLock writerLock = Threading.lock("writer");
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean();
+    private final ReentrantLock outputSpaceLock = Threading.lock("outputSpace");
+    private final Condition outputSpaceAvailable = outputSpaceLock.newCondition();
+    @GuardedBy("writerLock") private final byte[] writeBatch = new byte[WRITE_BATCH_SIZE];
 
-    public ConnectionImpl(TorConfig config, SSLSocket socket, Router router, TorInitializationTracker tracker, boolean isDirectoryConnection) {
+    ConnectionImpl(TorConfig config, ConnectionLink link, Router router, TorInitializationTracker tracker, boolean isDirectoryConnection, Executor dispatchExecutor) {
         this.config = config;
-        this.socket = socket;
+        this.link = link;
         this.router = router;
-        this.circuitMap = new HashMap<>();
-        this.readCellsThread = new Thread(createReadCellsRunnable());
-        this.readCellsThread.setDaemon(true);
+        this.circuitTable = new CircuitTable(chooseInitialCircuitId(), dispatchExecutor);
+        this.outputScheduler = new CircuitScheduler(config.getCircuitPriorityHalflife());
         this.connectionControlCells = new LinkedBlockingQueue<>();
         this.initializationTracker = tracker;
         this.isDirectoryConnection = isDirectoryConnection;
-        initializeCurrentCircuitId();
     }
 
-    private void initializeCurrentCircuitId() {
+    private static int chooseInitialCircuitId() {
         final TorRandom random = new TorRandom();
-        currentId = random.nextInt(0xFFFF) + 1;
+        return random.nextInt(0xFFFF) + 1;
     }
 
     @Override
@@ -98,27 +111,15 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
 
     @Override
     public int bindCircuit(Circuit circuit) {
+        /* Only held so that an idle connection is not closed while a circuit is being bound to it */
         circuitsLock.lock();
         try {
-            while(circuitMap.containsKey(currentId)) {
-                incrementNextId();
-            }
-            final int id = currentId;
-            incrementNextId();
-            circuitMap.put(id, circuit);
-            return id;
+            return circuitTable.bind(circuit);
         } finally {
             circuitsLock.unlock();
         }
     }
 
-    private void incrementNextId() {
-        currentId++;
-        if(currentId > 0xFFFF){
-                currentId = 1;
-        }
-    }
-
     void connect() throws ConnectionFailedException, ConnectionTimeoutException, ConnectionHandshakeException {
         connectLock.lock();
         try {
@@ -147,10 +148,8 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
 
     private void doConnect() throws IOException, InterruptedException, ConnectionIOException {
         connectSocket();
-        final ConnectionHandshake handshake = ConnectionHandshake.createHandshake(config, this, socket);
-        input = socket.getInputStream();
-        output = socket.getOutputStream();
-        readCellsThread.start();
+        final ConnectionHandshake handshake = ConnectionHandshake.createHandshake(config, this, link);
+        link.start(this);
         handshake.runHandshake();
         updateLastActivity();
     }
@@ -164,7 +163,7 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
             }
         }
 
-        socket.connect(routerToSocketAddress(router), DEFAULT_CONNECT_TIMEOUT);
+        link.connect(routerToSocketAddress(router), DEFAULT_CONNECT_TIMEOUT);
 
         if(initializationTracker != null) {
             if(isDirectoryConnection) {
@@ -181,36 +180,141 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
     }
 
     public void sendCell(Cell cell) throws ConnectionIOException  {
-        if(!socket.isConnected()) {
+        if(!link.isConnected()) {
+            cell.release();
             throw new ConnectionIOException("Cannot send cell because connection is not connected");
         }
+        if(isClosed) {
+            cell.release();
+            throw new ConnectionIOException("Cannot send cell because connection is closed");
+        }
         updateLastActivity();
-        outputLock.lock();
-        try {
+        if(CircuitCellQueue.isDispatchThread()) {
+            /*
+             * Cells such as SENDMEs sent while delivering received cells are queued without waiting
+             * for output space, and written out by another thread, so that a congested link cannot
+             * tie up the dispatch threads which are shared with every other connection.
+             */
+            outputScheduler.add(cell);
+            outputQueueSize.incrementAndGet();
+            scheduleDrainOutputQueue();
+            return;
+        }
+        enqueueCell(cell);
+        drainOutputQueue();
+    }
+
+    private void scheduleDrainOutputQueue() {
+        if(!isDrainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        outputExecutor.execute(() -> {
+            isDrainScheduled.set(false);
+            try {
+                drainOutputQueue();
+            } catch (ConnectionIOException e) {
+                logger.debug("Failed to write queued cells: "+ e.getMessage());
+            }
+        });
+    }
+
+    private void enqueueCell(Cell cell) throws ConnectionIOException {
+        /*
+         * The thread which flushes the link (the selector thread) may not wait here since it may be
+         * the only thread able to make progress on the queue, so it is allowed to exceed the limit.
+         */
+        if(link.mayBlockOnOutput()) {
+            waitForOutputSpace(cell);
+        }
+        outputScheduler.add(cell);
+        outputQueueSize.incrementAndGet();
+    }
+
+    private void waitForOutputSpace(Cell cell) throws ConnectionIOException {
+        while(outputQueueSize.get() >= MAX_QUEUED_CELLS) {
+            /* Become the writer if nobody else is currently draining the queue */
+            drainOutputQueue();
+            outputSpaceLock.lock();
             try {
-                output.write(cell.getCellBytes());
+                if(outputQueueSize.get() >= MAX_QUEUED_CELLS) {
+                    outputSpaceAvailable.await(OUTPUT_WAIT_MS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cell.release();
+                throw new ConnectionIOException("Interrupted waiting to send cell");
+            } finally {
+                outputSpaceLock.unlock();
+            }
+            if(isClosed) {
+                cell.release();
+                throw new ConnectionIOException("Cannot send cell because connection is closed");
+            }
+        }
+    }
+
+    /*
+     * Write out queued cells unless another thread is already doing so.  The queue is checked
+     * again after giving up the writer role, so a cell added while the previous writer was
+     * finishing is never left behind.
+     */
+    private void drainOutputQueue() throws ConnectionIOException {
+        while(outputQueueSize.get() > 0 && writerLock.tryLock()) {
+            try {
+                writeQueuedCells();
             } catch (IOException e) {
                 logger.debug("IOException writing cell to connection "+ e.getMessage());
                 closeSocket();
+                discardQueuedCells();
                 throw new ConnectionIOException(e.getClass().getName() + " : "+ e.getMessage());
+            } finally {
+                writerLock.unlock();
+                signalOutputSpace();
             }
-        } finally {
-            outputLock.unlock();
         }
     }
 
-    private Cell recvCell() throws ConnectionIOException {
-        try {
-            return CellImpl.readFromInputStream(input);
-        } catch(EOFException e) {
-            closeSocket();
-            throw new ConnectionIOException();
-        } catch (IOException e) {
-            if(!isClosed) {
-                logger.debug("IOException reading cell from connection "+ this + " : "+ e.getMessage());
-                closeSocket();
+    @GuardedBy("writerLock")
+    private void writeQueuedCells() throws IOException {
+        int batchLength = 0;
+        Cell cell;
+        while((cell = outputScheduler.poll()) != null) {
+            outputQueueSize.decrementAndGet();
+            try {
+                final byte[] bytes = cell.getCellBytes();
+                if(batchLength + bytes.length > writeBatch.length) {
+                    link.write(writeBatch, 0, batchLength);
+                    batchLength = 0;
+                }
+                if(bytes.length > writeBatch.length) {
+                    link.write(bytes, 0, bytes.length);
+                } else {
+                    System.arraycopy(bytes, 0, writeBatch, batchLength, bytes.length);
+                    batchLength += bytes.length;
+                }
+            } finally {
+                cell.release();
             }
-            throw new ConnectionIOException(e.getClass().getName() + " " + e.getMessage());
+        }
+        if(batchLength > 0) {
+            link.write(writeBatch, 0, batchLength);
+        }
+    }
+
+    private void discardQueuedCells() {
+        Cell cell;
+        while((cell = outputScheduler.poll()) != null) {
+            outputQueueSize.decrementAndGet();
+            cell.release();
+        }
+    }
+
+    private void signalOutputSpace() {
+        outputSpaceLock.lock();
+        try {
+            outputSpaceAvailable.signalAll();
+        } finally {
+            outputSpaceLock.unlock();
         }
     }
 
@@ -218,35 +322,26 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
         try {
             logger.debug("Closing connection to "+ this);
             isClosed = true;
-            socket.close();
+            link.close();
             isConnected = false;
+            discardQueuedCells();
+            signalOutputSpace();
         } catch (IOException e) {
             logger.warn("Error closing socket: "+ e.getMessage());
         }
     }
 
-    private Runnable createReadCellsRunnable() {
-        return () -> {
-            try {
-                readCellsLoop();
-            } catch(Exception e) {
-                logger.warn("Unhandled exception processing incoming cells on connection "+ e, e);
-            }
-        };
-    }
-
-    private void readCellsLoop() {
-        while(!Thread.interrupted()) {
-            try {
-                processCell( recvCell() );
-            } catch(ConnectionIOException e) {
-                connectionControlCells.add(connectionClosedSentinel);
-                notifyCircuitsLinkClosed();
-                return;
-            } catch(TorException e) {
-                logger.warn("Unhandled Tor exception reading and processing cells: "+ e.getMessage(), e);
-            }
+    /*
+     * Called by the link when reading from the underlying transport fails or the remote
+     * side closes the connection.  No further cells will be delivered after this.
+     */
+    void linkClosed(IOException e) {
+        if(!isClosed && !(e instanceof EOFException)) {
+            logger.debug("IOException reading cell from connection "+ this + " : "+ e.getMessage());
         }
+        closeSocket();
+        connectionControlCells.add(connectionClosedSentinel);
+        notifyCircuitsLinkClosed();
     }
 
     private void notifyCircuitsLinkClosed() {
@@ -262,7 +357,16 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
         }
     }
 
-    private void processCell(Cell cell) {
+    /* Called by the link for every cell received on this connection. */
+    void processCell(Cell cell) {
+        try {
+            dispatchCell(cell);
+        } catch(TorException e) {
+            logger.warn("Unhandled Tor exception reading and processing cells: "+ e.getMessage(), e);
+        }
+    }
+
+    private void dispatchCell(Cell cell) {
         updateLastActivity();
         final int command = cell.getCommand();
 
@@ -276,6 +380,7 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
         case Cell.VERSIONS:
         case Cell.CERTS:
         case Cell.AUTH_CHALLENGE:
+            CellImpl.detachFromPool(cell);
             connectionControlCells.add(cell);
             break;
 
@@ -286,44 +391,34 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
             break;
         default:
             // Ignore everything else
+            cell.release();
             break;
         }
     }
 
     private void processRelayCell(Cell cell) {
-        Circuit circuit;
-        circuitsLock.lock();
-        try {
-            circuit = circuitMap.get(cell.getCircuitId());
-            if(circuit == null) {
-                logger.warn("Could not deliver relay cell for circuit id = "+ cell.getCircuitId() +" on connection "+ this +". Circuit not found");
-                return;
-            }
-        } finally {
-            circuitsLock.unlock();
+        final CircuitCellQueue queue = circuitTable.getCellQueue(cell.getCircuitId());
+        if(queue == null) {
+            logger.warn("Could not deliver relay cell for circuit id = "+ cell.getCircuitId() +" on connection "+ this +". Circuit not found");
+            cell.release();
+            return;
         }
-
-        circuit.deliverRelayCell(cell);
+        queue.add(cell);
     }
 
     private void processControlCell(Cell cell) {
-        Circuit circuit;
-        circuitsLock.lock();
-        try {
-            circuit = circuitMap.get(cell.getCircuitId());
-        } finally {
-            circuitsLock.unlock();
-        }
-
-        if(circuit != null) {
-            circuit.deliverControlCell(cell);
+        final CircuitCellQueue queue = circuitTable.getCellQueue(cell.getCircuitId());
+        if(queue != null) {
+            queue.add(cell);
+        } else {
+            cell.release();
         }
     }
 
     void idleCloseCheck() {
         circuitsLock.lock();
         try {
-            final boolean needClose =  (!isClosed && circuitMap.isEmpty() && getIdleMilliseconds() > CONNECTION_IDLE_TIMEOUT);
+            final boolean needClose =  (!isClosed && circuitTable.isEmpty() && getIdleMilliseconds() > CONNECTION_IDLE_TIMEOUT);
             if(needClose) {
                 logger.debug("Closing connection to "+ this +" on idle timeout");
                 closeSocket();
@@ -333,6 +428,14 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
         }
     }
 
+    int getCircuitCount() {
+        return circuitTable.size();
+    }
+
+    int getQueuedCellCount() {
+        return outputQueueSize.get();
+    }
+
     private void updateLastActivity() {
         lastActivity.set(System.currentTimeMillis());
     }
@@ -346,11 +449,8 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
 
     @Override
     public void removeCircuit(Circuit circuit) {
-        circuitsLock.lock();
-        try {
-            circuitMap.remove(circuit.getCircuitId());
-        } finally {
-            circuitsLock.unlock();
+        if(circuitTable.remove(circuit.getCircuitId(), circuit)) {
+            outputScheduler.removeCircuit(circuit.getCircuitId());
         }
     }
 
@@ -361,18 +461,13 @@ public class ConnectionImpl implements Connection, DashboardRenderable {
 
     @Override
     public void dashboardRender(DashboardRenderer renderer, PrintWriter writer, int flags) {
-        final int circuitCount;
-        circuitsLock.lock();
-        try {
-            circuitCount = circuitMap.size();
-        } finally {
-            circuitsLock.unlock();
-        }
+        final int circuitCount = circuitTable.size();
         if(circuitCount == 0 && (flags & DASHBOARD_CONNECTIONS_VERBOSE) == 0) {
             return;
         }
         writer.print("  [Connection router="+ router.getNickname());
         writer.print(" circuits="+ circuitCount);
+        writer.print(" queued="+ outputQueueSize.get());
         writer.print(" idle="+ (getIdleMilliseconds()/1000) + "s");
         writer.println("]");
     }
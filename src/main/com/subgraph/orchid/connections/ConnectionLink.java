@@ -0,0 +1,65 @@
+package com.subgraph.orchid.connections;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+import com.subgraph.orchid.Cell;
+
+/**
+ * The TLS transport underneath a {@link ConnectionImpl}.  A link is responsible for
+ * establishing the TLS session, writing outgoing cell data and delivering every incoming
+ * cell back to the connection with {@link ConnectionImpl#processCell(Cell)}.
+ */
+interface ConnectionLink {
+
+	/**
+	 * Open the TCP connection to <code>address</code>.
+	 *
+	 * @param address The address of the onion router.
+	 * @param timeout The connect timeout in milliseconds.
+	 * @throws IOException If the connection could not be established.
+	 */
+	void connect(SocketAddress address, int timeout) throws IOException;
+
+	/**
+	 * Return the TLS session for this link, completing the TLS handshake first if necessary.
+	 *
+	 * @return The TLS session of this link.
+	 */
+	SSLSession getSession();
+
+	/**
+	 * Begin reading cells from this link and delivering them to <code>connection</code>.  When
+	 * the link fails or is closed by the remote side {@link ConnectionImpl#linkClosed(IOException)}
+	 * is called once.
+	 *
+	 * @param connection The connection which receives incoming cells.
+	 * @throws IOException If reading could not be started.
+	 */
+	void start(ConnectionImpl connection) throws IOException;
+
+	boolean isConnected();
+
+	/**
+	 * Write a block of cell data to this link.  Calls are serialized by the owning connection, which
+	 * batches as many queued cells as will fit into a single TLS record into each call.
+	 *
+	 * @param data A buffer containing one or more complete cells.
+	 * @param offset The offset of the first byte to write.
+	 * @param length The number of bytes to write.
+	 * @throws IOException If writing to the underlying transport fails.
+	 */
+	void write(byte[] data, int offset, int length) throws IOException;
+
+	/**
+	 * Return <code>false</code> if the calling thread must never wait for queued output to drain
+	 * because it is the thread which flushes output for this link.
+	 *
+	 * @return <code>true</code> if the calling thread may block waiting for output space.
+	 */
+	boolean mayBlockOnOutput();
+
+	void close() throws IOException;
+}
@@ -0,0 +1,143 @@
+package com.subgraph.orchid.connections;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.TorException;
+import com.subgraph.orchid.logging.Logger;
+
+/**
+ * Drives every {@link SelectorConnectionLink} from a small fixed set of selector threads
+ * instead of running one blocking reader thread for each connection.  Links are assigned
+ * to the selector threads in round robin order when they are created.
+ */
+class ConnectionSelector {
+    private static final Logger logger = Logger.getInstance(ConnectionSelector.class);
+    private final static int MAX_SELECTOR_THREADS = 4;
+
+    /**
+     * A single selector thread.  All operations on a {@link SelectionKey} are performed on
+     * this thread, other threads submit them as tasks with {@link #execute(Runnable)}.
+     */
+    static class Loop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        private volatile Thread selectorThread;
+        private volatile boolean isClosed;
+
+        Loop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        boolean inSelectorThread() {
+            return Thread.currentThread() == selectorThread;
+        }
+
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        Selector getSelector() {
+            return selector;
+        }
+
+        public void run() {
+            selectorThread = Thread.currentThread();
+            try {
+                while(!isClosed) {
+                    selector.select();
+                    runPendingTasks();
+                    for(SelectionKey key: selector.selectedKeys()) {
+                        processKey(key);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                logger.warn("IOException in connection selector loop: "+ e.getMessage(), e);
+            } finally {
+                closeSelector();
+            }
+        }
+
+        private void runPendingTasks() {
+            Runnable task;
+            while((task = pendingTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch(Exception e) {
+                    logger.warn("Unhandled exception running connection selector task: "+ e, e);
+                }
+            }
+        }
+
+        private void processKey(SelectionKey key) {
+            final SelectorConnectionLink link = (SelectorConnectionLink) key.attachment();
+            try {
+                if(key.isValid() && key.isWritable()) {
+                    link.handleWritable();
+                }
+                if(key.isValid() && key.isReadable()) {
+                    link.handleReadable();
+                }
+            } catch(Exception e) {
+                logger.warn("Unhandled exception processing incoming cells on connection "+ e, e);
+            }
+        }
+
+        void close() {
+            isClosed = true;
+            selector.wakeup();
+        }
+
+        private void closeSelector() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("Error closing selector: "+ e.getMessage());
+            }
+        }
+    }
+
+    private final Loop[] loops;
+    private final ExecutorService executor;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    ConnectionSelector() {
+        this(Math.min(MAX_SELECTOR_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    ConnectionSelector(int threadCount) {
+        this.loops = new Loop[Math.max(1, threadCount)];
+        this.executor = Threading.newPool("ConnectionSelector worker");
+        try {
+            for(int i = 0; i < loops.length; i++) {
+                loops[i] = new Loop();
+                executor.execute(loops[i]);
+            }
+        } catch (IOException e) {
+            close();
+            throw new TorException("Failed to open selector: "+ e.getMessage(), e);
+        }
+    }
+
+    Loop chooseLoop() {
+        final int idx = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length;
+        return loops[idx];
+    }
+
+    void close() {
+        for(Loop loop: loops) {
+            if(loop != null) {
+                loop.close();
+            }
+        }
+        executor.shutdown();
+    }
+}
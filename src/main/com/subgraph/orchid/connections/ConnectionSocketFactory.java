@@ -7,6 +7,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -95,10 +96,12 @@ public class ConnectionSocketFactory {
 		}
 	}
 	
+	private final SSLContext sslContext;
 	private final SSLSocketFactory socketFactory;
 	
 	ConnectionSocketFactory() {
-		socketFactory = createSSLContext().getSocketFactory();
+		sslContext = createSSLContext();
+		socketFactory = sslContext.getSocketFactory();
 	}
 	
 	SSLSocket createSocket() {
@@ -111,4 +114,11 @@ public class ConnectionSocketFactory {
 			throw new TorException(e);
 		}
 	}
+
+	SSLEngine createEngine() {
+		final SSLEngine engine = sslContext.createSSLEngine();
+		engine.setEnabledCipherSuites(MANDATORY_CIPHERS);
+		engine.setUseClientMode(true);
+		return engine;
+	}
 }
@@ -0,0 +1,391 @@
+package com.subgraph.orchid.connections;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+import com.subgraph.orchid.logging.Logger;
+
+/**
+ * A link which runs TLS over a non-blocking <code>SocketChannel</code> with an <code>SSLEngine</code>.
+ * The TCP connect and the TLS handshake are performed in blocking mode on the thread which opens
+ * the connection, after which the channel is handed to a {@link ConnectionSelector.Loop} which reads
+ * and decrypts incoming data and frames it into cells.
+ * <p>
+ * Outgoing cell data is encrypted directly into a pending output buffer by the sending thread and written
+ * without blocking.  Anything the socket does not accept immediately is flushed by the selector thread.
+ * Senders block once more than <code>OUTPUT_HIGH_WATER</code> bytes are pending, except for the selector
+ * thread itself which must never wait on its own flush.
+ */
+class SelectorConnectionLink implements ConnectionLink {
+    private static final Logger logger = Logger.getInstance(SelectorConnectionLink.class);
+    private final static int OUTPUT_HIGH_WATER = 64 * 1024;
+    private final static ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    private final ConnectionSelector.Loop loop;
+    private final ReentrantLock outputLock = Threading.lock("output");
+    private final Condition outputDrained = outputLock.newCondition();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ConnectionImpl connection;
+    private volatile boolean isClosed;
+    private boolean isCloseNotified;
+
+    private ByteBuffer networkInput;
+    private ByteBuffer applicationInput;
+    private ByteBuffer networkOutput;
+
+    SelectorConnectionLink(SSLEngine engine, ConnectionSelector.Loop loop) {
+        this.engine = engine;
+        this.loop = loop;
+        final SSLSession session = engine.getSession();
+        this.networkInput = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.applicationInput = ByteBuffer.allocate(session.getApplicationBufferSize());
+        this.networkOutput = ByteBuffer.allocate(OUTPUT_HIGH_WATER + session.getPacketBufferSize());
+    }
+
+    @Override
+    public void connect(SocketAddress address, int timeout) throws IOException {
+        channel = SocketChannel.open();
+        channel.configureBlocking(true);
+        channel.socket().connect(address, timeout);
+        runHandshake();
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return engine.getSession();
+    }
+
+    @Override
+    public void start(ConnectionImpl connection) throws IOException {
+        this.connection = connection;
+        channel.configureBlocking(false);
+        loop.execute(this::register);
+    }
+
+    private void register() {
+        try {
+            key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+            if(networkOutput.position() > 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            // Data may already have arrived along with the end of the TLS handshake
+            handleReadable();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel != null && channel.isConnected();
+    }
+
+    @Override
+    public boolean mayBlockOnOutput() {
+        return !loop.inSelectorThread();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        final ByteBuffer source = ByteBuffer.wrap(data, offset, length);
+        outputLock.lock();
+        try {
+            while(source.hasRemaining()) {
+                waitForOutputSpace();
+                final SSLEngineResult result = engine.wrap(source, networkOutput);
+                if(result.getStatus() == Status.CLOSED) {
+                    throw new SSLException("SSLEngine is closed");
+                }
+                writePendingOutput();
+            }
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /* outputLock must be held */
+    private void waitForOutputSpace() throws IOException {
+        if(loop.inSelectorThread()) {
+            ensureOutputCapacity();
+            return;
+        }
+        while(!isClosed && networkOutput.position() > OUTPUT_HIGH_WATER) {
+            try {
+                outputDrained.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if(isClosed) {
+            throw new IOException("Connection closed");
+        }
+    }
+
+    private void ensureOutputCapacity() {
+        final int needed = engine.getSession().getPacketBufferSize();
+        if(networkOutput.remaining() < needed) {
+            final ByteBuffer larger = ByteBuffer.allocate(networkOutput.capacity() + needed);
+            networkOutput.flip();
+            larger.put(networkOutput);
+            networkOutput = larger;
+        }
+    }
+
+    /* outputLock must be held */
+    private void writePendingOutput() throws IOException {
+        networkOutput.flip();
+        try {
+            channel.write(networkOutput);
+        } finally {
+            networkOutput.compact();
+        }
+        if(networkOutput.position() > 0 && !loop.inSelectorThread()) {
+            loop.execute(this::enableWriteInterest);
+        } else if(networkOutput.position() > 0) {
+            enableWriteInterest();
+        }
+    }
+
+    private void enableWriteInterest() {
+        if(key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /* Called on the selector thread when the channel can accept more output */
+    void handleWritable() {
+        outputLock.lock();
+        try {
+            networkOutput.flip();
+            channel.write(networkOutput);
+            networkOutput.compact();
+            if(networkOutput.position() == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            outputDrained.signalAll();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /* Called on the selector thread when the channel has data to read */
+    void handleReadable() {
+        try {
+            final int n = channel.read(networkInput);
+            unwrapInput();
+            deliverCells();
+            if(n == -1) {
+                throw new EOFException();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void unwrapInput() throws IOException {
+        networkInput.flip();
+        try {
+            while(networkInput.hasRemaining()) {
+                final SSLEngineResult result = engine.unwrap(networkInput, applicationInput);
+                switch(result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    return;
+                case BUFFER_OVERFLOW:
+                    deliverCells();
+                    ensureInputCapacity();
+                    break;
+                case CLOSED:
+                    throw new EOFException();
+                case OK:
+                default:
+                    break;
+                }
+                processHandshakeStatus(result.getHandshakeStatus());
+            }
+        } finally {
+            networkInput.compact();
+        }
+    }
+
+    /* A single variable length cell may not fit into the initial application buffer */
+    private void ensureInputCapacity() {
+        final int needed = engine.getSession().getApplicationBufferSize();
+        if(applicationInput.remaining() < needed) {
+            final ByteBuffer larger = ByteBuffer.allocate(applicationInput.capacity() + needed);
+            applicationInput.flip();
+            larger.put(applicationInput);
+            applicationInput = larger;
+        }
+    }
+
+    /* Handle post-handshake messages such as TLS 1.3 key updates */
+    private void processHandshakeStatus(HandshakeStatus hs) throws IOException {
+        if(hs == HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+            hs = engine.getHandshakeStatus();
+        }
+        if(hs == HandshakeStatus.NEED_WRAP) {
+            outputLock.lock();
+            try {
+                ensureOutputCapacity();
+                engine.wrap(EMPTY_BUFFER, networkOutput);
+                writePendingOutput();
+            } finally {
+                outputLock.unlock();
+            }
+        }
+    }
+
+    private void deliverCells() {
+        applicationInput.flip();
+        try {
+            CellImpl cell;
+            while((cell = CellImpl.readFromBuffer(applicationInput)) != null) {
+                connection.processCell(cell);
+            }
+        } finally {
+            applicationInput.compact();
+        }
+    }
+
+    /* Runs on the selector thread, notifies the connection exactly once */
+    private void fail(IOException e) {
+        if(key != null) {
+            key.cancel();
+        }
+        // Output will never be drained now, so wake up any writers waiting for space
+        isClosed = true;
+        signalOutputDrained();
+        if(!isCloseNotified) {
+            isCloseNotified = true;
+            connection.linkClosed(e);
+        }
+    }
+
+    private void signalOutputDrained() {
+        outputLock.lock();
+        try {
+            outputDrained.signalAll();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        // The close_notify is best effort and is skipped if another thread is writing
+        if(outputLock.tryLock()) {
+            try {
+                sendCloseNotify();
+            } finally {
+                outputLock.unlock();
+            }
+        }
+        signalOutputDrained();
+        if(channel != null) {
+            channel.close();
+        }
+        if(connection != null) {
+            // A closed channel is never selected again, so report the close from the selector thread
+            loop.execute(() -> fail(new EOFException()));
+        }
+    }
+
+    private void sendCloseNotify() {
+        try {
+            engine.closeOutbound();
+            if(channel != null && channel.isConnected()) {
+                ensureOutputCapacity();
+                engine.wrap(EMPTY_BUFFER, networkOutput);
+                networkOutput.flip();
+                channel.write(networkOutput);
+                networkOutput.clear();
+            }
+        } catch (IOException e) {
+            logger.debug("Error sending TLS close_notify: "+ e.getMessage());
+        }
+    }
+
+    private void runHandshake() throws IOException {
+        engine.beginHandshake();
+        HandshakeStatus hs = engine.getHandshakeStatus();
+        while(hs != HandshakeStatus.FINISHED && hs != HandshakeStatus.NOT_HANDSHAKING) {
+            switch(hs) {
+            case NEED_TASK:
+                runDelegatedTasks();
+                hs = engine.getHandshakeStatus();
+                break;
+            case NEED_WRAP:
+                hs = handshakeWrap();
+                break;
+            default:
+                hs = handshakeUnwrap();
+                break;
+            }
+        }
+    }
+
+    private HandshakeStatus handshakeWrap() throws IOException {
+        final SSLEngineResult result = engine.wrap(EMPTY_BUFFER, networkOutput);
+        networkOutput.flip();
+        while(networkOutput.hasRemaining()) {
+            channel.write(networkOutput);
+        }
+        networkOutput.clear();
+        if(result.getStatus() == Status.CLOSED) {
+            throw new SSLException("SSLEngine closed during handshake");
+        }
+        return result.getHandshakeStatus();
+    }
+
+    private HandshakeStatus handshakeUnwrap() throws IOException {
+        networkInput.flip();
+        final SSLEngineResult result = engine.unwrap(networkInput, applicationInput);
+        networkInput.compact();
+        switch(result.getStatus()) {
+        case BUFFER_UNDERFLOW:
+            if(channel.read(networkInput) == -1) {
+                throw new EOFException("Connection closed during TLS handshake");
+            }
+            return engine.getHandshakeStatus();
+        case BUFFER_OVERFLOW:
+            ensureInputCapacity();
+            return engine.getHandshakeStatus();
+        case CLOSED:
+            throw new SSLException("SSLEngine closed during handshake");
+        case OK:
+        default:
+            return result.getHandshakeStatus();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable r;
+        while((r = engine.getDelegatedTask()) != null) {
+            r.run();
+        }
+    }
+}
@@ -41,8 +41,7 @@ public class Curve25519
 
 	public static void crypto_scalarmult_base(byte[] q, byte[] n)
 	{
-		byte[] basevp = basev;
-		crypto_scalarmult(q, n, basevp);
+		Curve25519FixedBase.scalarMultBase(q, n);
 	}
 	
 	static void add(int[] outv, int[] a, int[] b, int boffset)
@@ -0,0 +1,322 @@
+package com.subgraph.orchid.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * Curve25519 public key computation using a precomputed table of multiples of the base point.
+ * <p>
+ * The generic Montgomery ladder of {@link Curve25519} takes 255 ladder steps whatever the input
+ * point.  Since the base point is fixed, the public key is computed instead on the birationally
+ * equivalent twisted Edwards curve (edwards25519) using a signed radix 16 representation of the
+ * scalar and a table of <code>j * 256^i * B</code> for <code>i</code> in 0..31 and
+ * <code>j</code> in 1..8, as in the "ref10" implementation of Ed25519.  This requires 64 point
+ * additions and 4 doublings, and the result is mapped back to the Montgomery u coordinate.
+ * <p>
+ * The table only holds public values and is computed once when first used.  Table entries are
+ * selected by scanning every entry with masks, and the sequence of field operations does not
+ * depend on the scalar.
+ * <p>
+ * Field elements use the representation of {@link Curve25519}: 32 limbs of 8 bits in an
+ * <code>int[32]</code>, little endian, kept in the partially reduced form produced by
+ * <code>Curve25519.squeeze()</code>.
+ */
+final class Curve25519FixedBase {
+	private final static int LIMBS = 32;
+	private final static BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+	private final static BigInteger D = BigInteger.valueOf(-121665).multiply(BigInteger.valueOf(121666).modInverse(P)).mod(P);
+
+	/* A point in precomputed form: (y + x, y - x, 2 * d * x * y) */
+	private static class NielsPoint {
+		final int[] yPlusX = new int[LIMBS];
+		final int[] yMinusX = new int[LIMBS];
+		final int[] xy2d = new int[LIMBS];
+	}
+
+	/* A point in extended coordinates: x = X / Z, y = Y / Z, x * y = T / Z */
+	private static class ExtendedPoint {
+		final int[] x = new int[LIMBS];
+		final int[] y = new int[LIMBS];
+		final int[] z = new int[LIMBS];
+		final int[] t = new int[LIMBS];
+	}
+
+	private static class TableHolder {
+		final static NielsPoint[][] table = createTable();
+	}
+
+	private Curve25519FixedBase() {}
+
+	/**
+	 * Compute the Curve25519 public key for <code>secretKey</code> and store it in <code>out</code>.
+	 * The secret key is clamped in the same way as by <code>Curve25519.crypto_scalarmult()</code>.
+	 */
+	static void scalarMultBase(byte[] out, byte[] secretKey) {
+		final NielsPoint[][] table = TableHolder.table;
+		final int[] digits = toSignedDigits(secretKey);
+		final ExtendedPoint h = new ExtendedPoint();
+		h.y[0] = 1;
+		h.z[0] = 1;
+		final NielsPoint selected = new NielsPoint();
+		final int[][] scratch = new int[8][LIMBS];
+
+		for(int i = 1; i < 64; i += 2) {
+			select(selected, table[i / 2], digits[i]);
+			addNiels(h, selected, scratch);
+		}
+		for(int i = 0; i < 4; i++) {
+			dbl(h, scratch);
+		}
+		for(int i = 0; i < 64; i += 2) {
+			select(selected, table[i / 2], digits[i]);
+			addNiels(h, selected, scratch);
+		}
+		toMontgomery(out, h);
+	}
+
+	/* Clamp the scalar and write it as 64 digits in -8..8, least significant first */
+	private static int[] toSignedDigits(byte[] secretKey) {
+		final byte[] e = new byte[32];
+		System.arraycopy(secretKey, 0, e, 0, 32);
+		e[0] &= 248;
+		e[31] &= 127;
+		e[31] |= 64;
+
+		final int[] digits = new int[64];
+		for(int i = 0; i < 32; i++) {
+			digits[2 * i] = e[i] & 15;
+			digits[2 * i + 1] = (e[i] >>> 4) & 15;
+		}
+		int carry = 0;
+		for(int i = 0; i < 63; i++) {
+			digits[i] += carry;
+			carry = (digits[i] + 8) >> 4;
+			digits[i] -= carry << 4;
+		}
+		digits[63] += carry;
+		return digits;
+	}
+
+	/* Set r to b * entries[0], where entries[j - 1] = j * P, without branching on b */
+	private static void select(NielsPoint r, NielsPoint[] entries, int b) {
+		final int negative = b >>> 31;
+		final int abs = b - ((-negative & b) << 1);
+		setIdentity(r);
+		for(int j = 0; j < 8; j++) {
+			final int mask = equalMask(abs, j + 1);
+			cmov(r.yPlusX, entries[j].yPlusX, mask);
+			cmov(r.yMinusX, entries[j].yMinusX, mask);
+			cmov(r.xy2d, entries[j].xy2d, mask);
+		}
+		/* -(x, y) = (-x, y), which swaps y + x with y - x and negates xy2d */
+		final int[] negXy2d = new int[LIMBS];
+		sub(negXy2d, new int[LIMBS], r.xy2d);
+		final int swap = -negative;
+		for(int i = 0; i < LIMBS; i++) {
+			final int t = swap & (r.yPlusX[i] ^ r.yMinusX[i]);
+			r.yPlusX[i] ^= t;
+			r.yMinusX[i] ^= t;
+		}
+		cmov(r.xy2d, negXy2d, swap);
+	}
+
+	private static void setIdentity(NielsPoint r) {
+		for(int i = 0; i < LIMBS; i++) {
+			r.yPlusX[i] = 0;
+			r.yMinusX[i] = 0;
+			r.xy2d[i] = 0;
+		}
+		r.yPlusX[0] = 1;
+		r.yMinusX[0] = 1;
+	}
+
+	private static int equalMask(int a, int b) {
+		return -((((a ^ b) - 1) >>> 31) & 1);
+	}
+
+	private static void cmov(int[] r, int[] a, int mask) {
+		for(int i = 0; i < LIMBS; i++) {
+			r[i] ^= mask & (r[i] ^ a[i]);
+		}
+	}
+
+	/* h = h + q */
+	private static void addNiels(ExtendedPoint h, NielsPoint q, int[][] s) {
+		final int[] a = s[0], b = s[1], c = s[2], d = s[3], e = s[4], f = s[5], g = s[6], hh = s[7];
+		add(e, h.y, h.x);
+		mult(a, e, q.yPlusX);
+		sub(e, h.y, h.x);
+		mult(b, e, q.yMinusX);
+		mult(c, q.xy2d, h.t);
+		add(d, h.z, h.z);
+		sub(e, a, b);
+		sub(f, d, c);
+		add(g, d, c);
+		add(hh, a, b);
+		toExtended(h, e, f, g, hh);
+	}
+
+	/* h = 2 * h */
+	private static void dbl(ExtendedPoint h, int[][] s) {
+		final int[] xx = s[0], yy = s[1], b = s[2], a = s[3], e = s[4], f = s[5], g = s[6], hh = s[7];
+		square(xx, h.x);
+		square(yy, h.y);
+		square(a, h.z);
+		add(b, a, a);
+		add(e, h.x, h.y);
+		square(a, e);
+		add(hh, yy, xx);
+		sub(g, yy, xx);
+		sub(e, a, hh);
+		sub(f, b, g);
+		toExtended(h, e, f, g, hh);
+	}
+
+	/* Convert the completed point ((e : g), (hh : f)) to extended coordinates */
+	private static void toExtended(ExtendedPoint r, int[] e, int[] f, int[] g, int[] hh) {
+		mult(r.x, e, f);
+		mult(r.y, g, hh);
+		mult(r.z, f, g);
+		mult(r.t, e, hh);
+	}
+
+	/* u = (1 + y) / (1 - y) = (Z + Y) / (Z - Y) */
+	private static void toMontgomery(byte[] out, ExtendedPoint h) {
+		final int[] work = new int[96];
+		final int[] numerator = new int[LIMBS];
+		final int[] denominator = new int[LIMBS];
+		add(numerator, h.z, h.y);
+		sub(denominator, h.z, h.y);
+		System.arraycopy(numerator, 0, work, 0, LIMBS);
+		System.arraycopy(denominator, 0, work, 32, LIMBS);
+		Curve25519.recip(work, work);
+		Curve25519.mult(work, 64, work, 0, work, 32);
+		final int[] u = new int[LIMBS];
+		System.arraycopy(work, 64, u, 0, LIMBS);
+		reduce(u);
+		for(int i = 0; i < LIMBS; i++) {
+			out[i] = (byte) u[i];
+		}
+	}
+
+	/* Reduce a squeezed value fully modulo p */
+	private static void reduce(int[] a) {
+		final int[] t = new int[LIMBS];
+		int u = 19;
+		for(int j = 0; j < 31; j++) {
+			u += a[j];
+			t[j] = u & 255;
+			u >>>= 8;
+		}
+		u += a[31];
+		t[31] = u & 127;
+		/* a + 19 >= 2^255 exactly when a >= p, and then a - p = a + 19 - 2^255 */
+		cmov(a, t, -((u >>> 7) & 1));
+	}
+
+	private static void add(int[] r, int[] a, int[] b) {
+		for(int i = 0; i < LIMBS; i++) {
+			r[i] = a[i] + b[i];
+		}
+		Curve25519.squeeze(r, 0);
+	}
+
+	/* r = a - b + 2p, as Curve25519.sub() computes it */
+	private static void sub(int[] r, int[] a, int[] b) {
+		int u = 218;
+		for(int j = 0; j < 31; j++) {
+			u += a[j] + 65280 - b[j];
+			r[j] = u & 255;
+			u >>>= 8;
+		}
+		u += a[31] - b[31];
+		r[31] = u;
+		Curve25519.squeeze(r, 0);
+	}
+
+	/* r must not be the same array as a or b */
+	private static void mult(int[] r, int[] a, int[] b) {
+		Curve25519.mult(r, 0, a, 0, b, 0);
+	}
+
+	private static void square(int[] r, int[] a) {
+		Curve25519.square(r, 0, a, 0);
+	}
+
+	/* Points are computed in projective coordinates (X : Y : Z), and converted to affine coordinates together at the end */
+	private static NielsPoint[][] createTable() {
+		final BigInteger by = BigInteger.valueOf(4).multiply(BigInteger.valueOf(5).modInverse(P)).mod(P);
+		BigInteger[] base = { recoverX(by), by, BigInteger.ONE };
+		final BigInteger[][] points = new BigInteger[32 * 8][];
+		for(int i = 0; i < 32; i++) {
+			BigInteger[] q = base;
+			for(int j = 0; j < 8; j++) {
+				points[i * 8 + j] = q;
+				q = projectiveAdd(q, base);
+			}
+			for(int j = 0; j < 8; j++) {
+				base = projectiveAdd(base, base);
+			}
+		}
+
+		/* Invert every Z with a single inversion */
+		final BigInteger[] products = new BigInteger[points.length];
+		BigInteger product = BigInteger.ONE;
+		for(int i = 0; i < points.length; i++) {
+			products[i] = product;
+			product = product.multiply(points[i][2]).mod(P);
+		}
+		BigInteger inverse = product.modInverse(P);
+		final NielsPoint[][] table = new NielsPoint[32][8];
+		for(int i = points.length - 1; i >= 0; i--) {
+			final BigInteger zInverse = inverse.multiply(products[i]).mod(P);
+			inverse = inverse.multiply(points[i][2]).mod(P);
+			final BigInteger x = points[i][0].multiply(zInverse).mod(P);
+			final BigInteger y = points[i][1].multiply(zInverse).mod(P);
+			table[i / 8][i % 8] = toNiels(new BigInteger[] { x, y });
+		}
+		return table;
+	}
+
+	/* The even square root of (y^2 - 1) / (d * y^2 + 1) */
+	private static BigInteger recoverX(BigInteger y) {
+		final BigInteger yy = y.multiply(y);
+		final BigInteger xx = yy.subtract(BigInteger.ONE).multiply(D.multiply(yy).add(BigInteger.ONE).modInverse(P)).mod(P);
+		BigInteger x = xx.modPow(P.add(BigInteger.valueOf(3)).shiftRight(3), P);
+		if(!x.multiply(x).mod(P).equals(xx)) {
+			final BigInteger sqrtMinusOne = BigInteger.valueOf(2).modPow(P.subtract(BigInteger.ONE).shiftRight(2), P);
+			x = x.multiply(sqrtMinusOne).mod(P);
+		}
+		return x.testBit(0) ? P.subtract(x) : x;
+	}
+
+	/* The "add-2008-bbjlp" formulas for a = -1, which also double */
+	private static BigInteger[] projectiveAdd(BigInteger[] p1, BigInteger[] p2) {
+		final BigInteger a = p1[2].multiply(p2[2]).mod(P);
+		final BigInteger b = a.multiply(a).mod(P);
+		final BigInteger c = p1[0].multiply(p2[0]).mod(P);
+		final BigInteger d = p1[1].multiply(p2[1]).mod(P);
+		final BigInteger e = D.multiply(c).multiply(d).mod(P);
+		final BigInteger f = b.subtract(e);
+		final BigInteger g = b.add(e);
+		final BigInteger sum = p1[0].add(p1[1]).multiply(p2[0].add(p2[1])).subtract(c).subtract(d);
+		final BigInteger x3 = a.multiply(f).mod(P).multiply(sum).mod(P);
+		final BigInteger y3 = a.multiply(g).mod(P).multiply(d.add(c)).mod(P);
+		final BigInteger z3 = f.multiply(g).mod(P);
+		return new BigInteger[] { x3, y3, z3 };
+	}
+
+	private static NielsPoint toNiels(BigInteger[] point) {
+		final BigInteger x = point[0], y = point[1];
+		final NielsPoint n = new NielsPoint();
+		toLimbs(n.yPlusX, y.add(x).mod(P));
+		toLimbs(n.yMinusX, y.subtract(x).mod(P));
+		toLimbs(n.xy2d, D.shiftLeft(1).multiply(x).multiply(y).mod(P));
+		return n;
+	}
+
+	private static void toLimbs(int[] r, BigInteger v) {
+		for(int i = 0; i < LIMBS; i++) {
+			r[i] = v.shiftRight(8 * i).intValue() & 255;
+		}
+	}
+}
@@ -1,12 +1,10 @@
 package com.subgraph.orchid.crypto;
 
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 
 import com.subgraph.orchid.TorException;
 
@@ -32,18 +30,12 @@ public class HybridEncryption {
      *     Pad and encrypt K|M1 with PK.  Encrypt M2 with our stream cipher,
      *     using the key K.  Concatenate these encrypted values.
 	 */
-	final private Cipher cipher;
 	
 	/**
 	 * Create a new <code>HybridEncryption</code> instance which can be used for performing
 	 * "hybrid encryption" operations as described in the main Tor specification (tor-spec.txt).
 	 */
 	public HybridEncryption() {
-		try {
-			cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA1AndMGF1Padding");
-		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-			throw new TorException(e);
-		}
 	}
 	
 	/**
@@ -80,6 +72,7 @@ public class HybridEncryption {
 	
 	private byte[] encryptSimple(byte[] data, TorPublicKey publicKey) {
 		try {
+			final Cipher cipher = TorCryptoCache.getRsaOaep();
 			cipher.init(Cipher.ENCRYPT_MODE, publicKey.getRSAPublicKey());
 			return cipher.doFinal(data);
 		} catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException e) {
@@ -129,6 +122,7 @@ public class HybridEncryption {
 	
 	private byte[] decryptSimple(byte[] data, TorPrivateKey privateKey) {
 		try {
+			final Cipher cipher = TorCryptoCache.getRsaOaep();
 			cipher.init(Cipher.DECRYPT_MODE, privateKey.getRSAPrivateKey());
 			return cipher.doFinal(data);
 		} catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException e) {
@@ -0,0 +1,92 @@
+package com.subgraph.orchid.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.subgraph.orchid.TorException;
+
+/**
+ * Per-thread instances of the <code>Mac</code>, <code>MessageDigest</code> and <code>Cipher</code>
+ * objects used by the circuit handshakes and key derivation functions.
+ * <p>
+ * Looking up an implementation from the security providers costs considerably more than the
+ * handshake computation which follows it, so each thread keeps one instance of each algorithm.
+ * Every method returns the instance in its initial state: a <code>Mac</code> is initialized with
+ * the requested key, a <code>MessageDigest</code> is reset, and a <code>Cipher</code> must be
+ * initialized by the caller.  The returned instance must not be kept or used after another call
+ * to the same method on the same thread.
+ */
+final class TorCryptoCache {
+	private final static String HMAC_SHA256 = "HmacSHA256";
+	private final static String SHA1 = "SHA-1";
+	private final static String RSA_OAEP = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
+
+	private final static ThreadLocal<Mac> hmacSha256 = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance(HMAC_SHA256);
+			} catch (GeneralSecurityException e) {
+				throw new TorException(e);
+			}
+		}
+	};
+
+	private final static ThreadLocal<MessageDigest> sha1 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance(SHA1);
+			} catch (GeneralSecurityException e) {
+				throw new TorException(e);
+			}
+		}
+	};
+
+	private final static ThreadLocal<Cipher> rsaOaep = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			try {
+				return Cipher.getInstance(RSA_OAEP);
+			} catch (GeneralSecurityException e) {
+				throw new TorException(e);
+			}
+		}
+	};
+
+	private TorCryptoCache() {}
+
+	/**
+	 * Return the HMAC-SHA256 instance of this thread, initialized with <code>key</code>.
+	 */
+	static Mac getHmacSha256(byte[] key) {
+		final Mac mac = hmacSha256.get();
+		try {
+			mac.init(new SecretKeySpec(key, HMAC_SHA256));
+		} catch (InvalidKeyException e) {
+			throw new IllegalStateException("Could not initialize HmacSHA256 instance: "+ e);
+		}
+		return mac;
+	}
+
+	/**
+	 * Return the SHA-1 instance of this thread, reset to its initial state.
+	 */
+	static MessageDigest getSha1() {
+		final MessageDigest md = sha1.get();
+		md.reset();
+		return md;
+	}
+
+	/**
+	 * Return the RSA-OAEP cipher instance of this thread.  The caller must initialize it.
+	 */
+	static Cipher getRsaOaep() {
+		return rsaOaep.get();
+	}
+}
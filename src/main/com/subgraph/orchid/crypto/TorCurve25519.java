@@ -0,0 +1,171 @@
+package com.subgraph.orchid.crypto;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreement;
+
+import com.subgraph.orchid.TorException;
+import com.subgraph.orchid.logging.Logger;
+
+/**
+ * Curve25519 scalar multiplication as used by the ntor handshake.
+ * <p>
+ * The X25519 key agreement of the JDK is used when the JVM provides one, since it is considerably
+ * faster than the bundled {@link Curve25519}, which remains as the fallback.  The JDK implementation
+ * is checked against the bundled one once before it is used.
+ */
+public abstract class TorCurve25519 {
+	private static final Logger logger = Logger.getInstance(TorCurve25519.class);
+
+	public final static int KEY_LEN = 32;
+	private final static byte[] BASE_POINT = new byte[KEY_LEN];
+	static {
+		BASE_POINT[0] = 9;
+	}
+
+	private final static TorCurve25519 instance = selectInstance();
+
+	/**
+	 * Return the fastest implementation available on this JVM.
+	 */
+	public static TorCurve25519 getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Multiply the point <code>publicKey</code> by the scalar <code>secretKey</code> and store the
+	 * result in <code>out</code>.  The output is all zero if <code>publicKey</code> is a point of small order.
+	 */
+	public abstract void scalarMult(byte[] out, byte[] secretKey, byte[] publicKey);
+
+	/**
+	 * Compute the public key for <code>secretKey</code> and store it in <code>out</code>.
+	 */
+	public void scalarMultBase(byte[] out, byte[] secretKey) {
+		scalarMult(out, secretKey, BASE_POINT);
+	}
+
+	public abstract String getName();
+
+	static TorCurve25519 createBundled() {
+		return new BundledCurve25519();
+	}
+
+	/* Returns null if the JDK does not provide X25519 */
+	static TorCurve25519 createJdk() {
+		try {
+			return new JdkCurve25519();
+		} catch (GeneralSecurityException e) {
+			return null;
+		} catch (LinkageError e) {
+			/* The XEC key specs only exist since Java 11 */
+			return null;
+		}
+	}
+
+	private static TorCurve25519 selectInstance() {
+		final TorCurve25519 bundled = createBundled();
+		final TorCurve25519 jdk = createJdk();
+		if(jdk == null) {
+			return bundled;
+		}
+		final byte[] secret = new byte[KEY_LEN];
+		for(int i = 0; i < KEY_LEN; i++) {
+			secret[i] = (byte) (i * 37 + 11);
+		}
+		final byte[] expected = new byte[KEY_LEN];
+		final byte[] actual = new byte[KEY_LEN];
+		try {
+			bundled.scalarMultBase(expected, secret);
+			jdk.scalarMultBase(actual, secret);
+		} catch (TorException e) {
+			logger.warn("JDK X25519 implementation failed, using bundled Curve25519: "+ e.getMessage());
+			return bundled;
+		}
+		if(!Arrays.equals(expected, actual)) {
+			logger.warn("JDK X25519 implementation gave unexpected result, using bundled Curve25519");
+			return bundled;
+		}
+		return jdk;
+	}
+
+	private static class BundledCurve25519 extends TorCurve25519 {
+		@Override
+		public void scalarMult(byte[] out, byte[] secretKey, byte[] publicKey) {
+			Curve25519.crypto_scalarmult(out, secretKey, publicKey);
+		}
+
+		@Override
+		public void scalarMultBase(byte[] out, byte[] secretKey) {
+			Curve25519.crypto_scalarmult_base(out, secretKey);
+		}
+
+		@Override
+		public String getName() {
+			return "bundled";
+		}
+	}
+
+	private static class JdkCurve25519 extends TorCurve25519 {
+		private final KeyFactory keyFactory;
+		private final ThreadLocal<KeyAgreement> agreements = new ThreadLocal<KeyAgreement>();
+
+		JdkCurve25519() throws GeneralSecurityException {
+			keyFactory = KeyFactory.getInstance("X25519");
+			getAgreement();
+		}
+
+		@Override
+		public void scalarMult(byte[] out, byte[] secretKey, byte[] publicKey) {
+			try {
+				final KeyAgreement agreement = getAgreement();
+				agreement.init(createPrivateKey(secretKey));
+				agreement.doPhase(createPublicKey(publicKey), true);
+				agreement.generateSecret(out, 0);
+			} catch (InvalidKeyException e) {
+				/* Thrown for a point of small order, where the bundled implementation returns zero */
+				Arrays.fill(out, 0, KEY_LEN, (byte) 0);
+			} catch (GeneralSecurityException e) {
+				throw new TorException(e);
+			}
+		}
+
+		/* A KeyAgreement is not thread safe, but is reset by init() so each thread can reuse one */
+		private KeyAgreement getAgreement() throws GeneralSecurityException {
+			KeyAgreement agreement = agreements.get();
+			if(agreement == null) {
+				agreement = KeyAgreement.getInstance("X25519");
+				agreements.set(agreement);
+			}
+			return agreement;
+		}
+
+		private PrivateKey createPrivateKey(byte[] secretKey) throws GeneralSecurityException {
+			return keyFactory.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, secretKey.clone()));
+		}
+
+		/* The u coordinate is encoded little endian, and the top bit is ignored */
+		private PublicKey createPublicKey(byte[] publicKey) throws GeneralSecurityException {
+			final byte[] bigEndian = new byte[KEY_LEN];
+			for(int i = 0; i < KEY_LEN; i++) {
+				bigEndian[i] = publicKey[KEY_LEN - 1 - i];
+			}
+			bigEndian[0] &= 0x7F;
+			return keyFactory.generatePublic(new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, bigEndian)));
+		}
+
+		@Override
+		public String getName() {
+			return "JDK X25519";
+		}
+	}
+}
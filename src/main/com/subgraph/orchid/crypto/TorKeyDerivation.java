@@ -1,6 +1,7 @@
 package com.subgraph.orchid.crypto;
 
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 
 public class TorKeyDerivation {
 	
@@ -31,10 +32,9 @@ public class TorKeyDerivation {
 	}
 	
 	private byte[] calculateRoundData() {
-		final TorMessageDigest md = new TorMessageDigest();
+		final MessageDigest md = TorCryptoCache.getSha1();
 		kdfBuffer[kdfBuffer.length - 1] = (byte) round;
 		round += 1;
-		md.update(kdfBuffer);
-		return md.getDigestBytes();
+		return md.digest(kdfBuffer);
 	}
 }
@@ -2,6 +2,7 @@ package com.subgraph.orchid.crypto;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -22,12 +23,14 @@ public class TorMessageDigest {
 	private static final String TOR_DIGEST_ALGORITHM = "SHA-1";
 	private static final String TOR_DIGEST256_ALGORITHM = "SHA-256";
 
-	private final MessageDigest digestInstance;
+	private MessageDigest digestInstance;
 	private final boolean isDigest256;
+	private final byte[] scratchDigest;
 	
 	public TorMessageDigest(boolean isDigest256) {
 		digestInstance = createDigestInstance(isDigest256);
 		this.isDigest256 = isDigest256;
+		this.scratchDigest = new byte[isDigest256 ? TOR_DIGEST256_SIZE : TOR_DIGEST_SIZE];
 	}
 
 	public TorMessageDigest() {
@@ -57,14 +60,9 @@ public class TorMessageDigest {
 	 * @return The digest value as an array of <code>TOR_DIGEST_SIZE<code> or <code>TOR_DIGEST256_SIZE</code> bytes.
 	 */
 	public byte[] getDigestBytes() {
-		try {
-			// Make a clone because #digest() will reset the MessageDigest instance
-			// and we want to be able to use this class for running digests on circuits
-			final MessageDigest clone = (MessageDigest) digestInstance.clone();
-			return clone.digest();
-		} catch (CloneNotSupportedException e) {
-			throw new TorException(e);
-		}
+		// Digest a clone because #digest() will reset the MessageDigest instance
+		// and we want to be able to use this class for running digests on circuits
+		return cloneDigestInstance().digest();
 	}
 
 	/**
@@ -73,10 +71,49 @@ public class TorMessageDigest {
 	 * calculation.
 	 */
 	public byte[] peekDigest(byte[] data, int offset, int length) {
+		final MessageDigest clone = cloneDigestInstance();
+		clone.update(data, offset, length);
+		return clone.digest();
+	}
+
+	/**
+	 * Add <code>data</code> to the running digest if the first <code>expected.length</code> bytes of
+	 * the resulting digest value are equal to <code>expected</code>, otherwise leave the running
+	 * digest unchanged.  This is the same as comparing against {@link #peekDigest(byte[], int, int)}
+	 * and then calling {@link #update(byte[], int, int)} on a match, but only hashes the data once.
+	 * <p>
+	 * Every call clones the running digest twice, whether or not the digest matches: once to hold
+	 * the updated state and once more to read the digest value, since finishing a
+	 * <code>MessageDigest</code> resets it.
+	 *
+	 * @return <tt>true</tt> if the digest matched and the data was added.
+	 */
+	public boolean updateIfDigestMatches(byte[] data, int offset, int length, byte[] expected) {
+		// First clone: updating a copy leaves the running digest untouched on a mismatch.
+		// Second clone: finishing a MessageDigest resets it, so the value is read from a copy.
+		final MessageDigest updated = cloneDigestInstance();
+		updated.update(data, offset, length);
+		try {
+			cloneDigest(updated).digest(scratchDigest, 0, scratchDigest.length);
+		} catch (DigestException e) {
+			throw new TorException(e);
+		}
+		for(int i = 0; i < expected.length; i++) {
+			if(expected[i] != scratchDigest[i]) {
+				return false;
+			}
+		}
+		digestInstance = updated;
+		return true;
+	}
+
+	private MessageDigest cloneDigestInstance() {
+		return cloneDigest(digestInstance);
+	}
+
+	private static MessageDigest cloneDigest(MessageDigest digest) {
 		try {
-			final MessageDigest clone = (MessageDigest) digestInstance.clone();
-			clone.update(data, offset, length);
-			return clone.digest();
+			return (MessageDigest) digest.clone();
 		} catch (CloneNotSupportedException e) {
 			throw new TorException(e);
 		}
@@ -3,11 +3,6 @@ package com.subgraph.orchid.crypto;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 
 import com.subgraph.orchid.data.HexDigest;
 import com.subgraph.orchid.misc.Utils;
@@ -25,7 +20,7 @@ public class TorNTorKeyAgreement implements TorKeyAgreement {
 	final static int AUTH_INPUT_LEN = DIGEST256_LEN + DIGEST_LEN + (CURVE25519_PUBKEY_LEN * 3) + PROTOID.length()  + SERVER_STR.length(); 
 	final static Charset cs = StandardCharsets.ISO_8859_1;
 	
-	private final TorRandom random = new TorRandom();
+	private final TorCurve25519 curve25519 = TorCurve25519.getInstance();
 	private final HexDigest peerIdentity;
 	private final byte[] peerNTorOnionKey;  /* pubkey_B */
 	private final byte[] secretKey_x; 
@@ -34,8 +29,9 @@ public class TorNTorKeyAgreement implements TorKeyAgreement {
 	public TorNTorKeyAgreement(HexDigest peerIdentity, byte[] peerNTorOnionKey) {
 		this.peerIdentity = peerIdentity;
 		this.peerNTorOnionKey = peerNTorOnionKey;
-		this.secretKey_x = generateSecretKey();
-		this.publicKey_X = getPublicKeyForPrivate(secretKey_x);
+		final TorNTorKeyPairPool.KeyPair keyPair = TorNTorKeyPairPool.take();
+		this.secretKey_x = keyPair.getSecretKey();
+		this.publicKey_X = keyPair.getPublicKey();
 	}
 	
 	
@@ -52,20 +48,6 @@ public class TorNTorKeyAgreement implements TorKeyAgreement {
 		return ByteBuffer.wrap(array);
 	}
 	
-	byte[] generateSecretKey() {
-		final byte[]key = random.getBytes(32);
-		key[0] &= 248;
-		key[31] &= 127;
-		key[31] |= 64;
-		return key;
-	}
-	
-	byte[] getPublicKeyForPrivate(byte[] secretKey) {
-		final byte[] pub = new byte[32];
-		Curve25519.crypto_scalarmult_base(pub, secretKey);
-		return pub;
-	}
-	
 	private boolean isBad;
 
 	public boolean deriveKeysFromHandshakeResponse(byte[] handshakeResponse, byte[] keyMaterialOut, byte[] verifyHashOut) {
@@ -120,7 +102,7 @@ public class TorNTorKeyAgreement implements TorKeyAgreement {
 	
 	private byte[] scalarMult(byte[] peerValue) {
 		final byte[] out = new byte[CURVE25519_OUTPUT_LEN];
-		Curve25519.crypto_scalarmult(out, secretKey_x, peerValue);
+		curve25519.scalarMult(out, secretKey_x, peerValue);
 		isBad |= isAllZero(out);
 		return out;
 	}
@@ -138,14 +120,7 @@ public class TorNTorKeyAgreement implements TorKeyAgreement {
 	}
 
 	byte[] hmac256(byte[] input, byte[] key) {
-		final SecretKeySpec keyspec = new SecretKeySpec(key, "HmacSHA256");
-		try {
-			final Mac mac = Mac.getInstance("HmacSHA256");
-			mac.init(keyspec);
-			return mac.doFinal(input);
-		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
-			throw new IllegalStateException("Failed to create HmacSHA256 instance: "+ e);
-		}
+		return TorCryptoCache.getHmacSha256(key).doFinal(input);
 	}
 	
 	byte[] getStringConstant(String suffix) {
@@ -0,0 +1,116 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.logging.Logger;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * A bounded pool of ephemeral Curve25519 key pairs for the client side of the ntor handshake.
+ * <p>
+ * Generating the ephemeral key pair requires a base point multiplication, which otherwise adds
+ * to the time taken to build every circuit.  A low priority background thread keeps the pool
+ * topped up so that circuit building threads can usually take a pair which is ready to use.  Each
+ * pair is removed from the pool when it is taken, so it is never used for more than one handshake.
+ * <p>
+ * The thread is started by {@link #start()} when circuit building starts, so that the pool is full
+ * before the first handshakes.  When a burst of handshakes empties the pool the pair is still
+ * generated on the calling thread, since the handshake cannot proceed without it and waiting for the
+ * background thread would be no faster.  These misses are counted by {@link #getMissCount()}.
+ */
+@ThreadSafe
+public class TorNTorKeyPairPool {
+	private static final Logger logger = Logger.getInstance(TorNTorKeyPairPool.class);
+	private final static int POOL_SIZE = 16;
+
+	public static class KeyPair {
+		private final byte[] secretKey;
+		private final byte[] publicKey;
+
+		private KeyPair(byte[] secretKey, byte[] publicKey) {
+			this.secretKey = secretKey;
+			this.publicKey = publicKey;
+		}
+
+		public byte[] getSecretKey() {
+			return secretKey;
+		}
+
+		public byte[] getPublicKey() {
+			return publicKey;
+		}
+	}
+
+	private final static BlockingQueue<KeyPair> keyPairs = new ArrayBlockingQueue<>(POOL_SIZE);
+	private final static AtomicBoolean isWorkerStarted = new AtomicBoolean();
+	private final static AtomicLong hitCount = new AtomicLong();
+	private final static AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Remove and return a key pair from the pool, or generate one if the pool is empty.
+	 *
+	 * @return A key pair which has not been returned before.
+	 */
+	public static KeyPair take() {
+		start();
+		final KeyPair keyPair = keyPairs.poll();
+		if(keyPair != null) {
+			hitCount.incrementAndGet();
+			return keyPair;
+		}
+		missCount.incrementAndGet();
+		return generateKeyPair(new TorRandom());
+	}
+
+	/** Return the number of key pairs which were served from the pool. */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/** Return the number of key pairs which had to be generated because the pool was empty. */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+
+	static KeyPair generateKeyPair(TorRandom random) {
+		final byte[] secretKey = random.getBytes(TorCurve25519.KEY_LEN);
+		secretKey[0] &= 248;
+		secretKey[31] &= 127;
+		secretKey[31] |= 64;
+		final byte[] publicKey = new byte[TorCurve25519.KEY_LEN];
+		TorCurve25519.getInstance().scalarMultBase(publicKey, secretKey);
+		return new KeyPair(secretKey, publicKey);
+	}
+
+	/**
+	 * Start filling the pool in the background if this has not been done already.
+	 */
+	public static void start() {
+		if(isWorkerStarted.get() || !isWorkerStarted.compareAndSet(false, true)) {
+			return;
+		}
+		final Thread thread = Threading.newThread("NTor key pair generator", new Runnable() {
+			public void run() {
+				fillPool();
+			}
+		});
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/* Blocks whenever the pool is full */
+	private static void fillPool() {
+		final TorRandom random = new TorRandom();
+		try {
+			while(true) {
+				keyPairs.put(generateKeyPair(random));
+			}
+		} catch (InterruptedException e) {
+			logger.debug("NTor key pair generator interrupted");
+		}
+	}
+}
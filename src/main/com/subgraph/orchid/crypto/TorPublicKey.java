@@ -76,14 +76,26 @@ public class TorPublicKey {
 		return verifySignatureFromDigestBytes(signature, digest.getDigestBytes());
 	}
 
+	/**
+	 * Verify <code>signature</code> over <code>digestBytes</code>, skipping the RSA operation if the
+	 * same signature has already been verified with this key.
+	 */
 	public boolean verifySignatureFromDigestBytes(TorSignature signature, byte[] digestBytes) {
+		final TorSignatureCache cache = TorSignatureCache.getInstance();
+		if(cache.isVerified(this, digestBytes, signature)) {
+			return true;
+		}
 		final Cipher cipher = createCipherInstance();
 		try {
 			byte[] decrypted = cipher.doFinal(signature.getSignatureBytes());
-			return Utils.constantTimeArrayEquals(decrypted, digestBytes);
+			if(!Utils.constantTimeArrayEquals(decrypted, digestBytes)) {
+				return false;
+			}
 		} catch (IllegalBlockSizeException | BadPaddingException e) {
 			throw new TorException(e);
 		}
+		cache.addVerified(this, digestBytes, signature);
+		return true;
 	}
 
 	private Cipher createCipherInstance() {
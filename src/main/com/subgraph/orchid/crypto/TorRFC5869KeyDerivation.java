@@ -1,11 +1,8 @@
 package com.subgraph.orchid.crypto;
 
 import java.nio.ByteBuffer;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 
 import com.subgraph.orchid.Tor;
 
@@ -30,9 +27,10 @@ public class TorRFC5869KeyDerivation {
 	public ByteBuffer deriveKeys(int length) {
 		int round = 1;
 		final ByteBuffer bb = makeBuffer(length);
+		final Mac mac = TorCryptoCache.getHmacSha256(seed);
 		byte[] macOutput = null;
 		while(bb.hasRemaining()) {
-			macOutput = expandRound(round, macOutput);
+			macOutput = expandRound(mac, round, macOutput);
 			if(macOutput.length > bb.remaining()) {
 				bb.put(macOutput, 0, bb.remaining());
 			} else {
@@ -44,7 +42,7 @@ public class TorRFC5869KeyDerivation {
 		return bb;
 	}
 	
-	private byte[] expandRound(int round, byte[] priorMac) {
+	private byte[] expandRound(Mac mac, int round, byte[] priorMac) {
 		final ByteBuffer bb;
 		if(round == 1) {
 			bb = makeBuffer(M_EXPAND_BYTES.length + 1);
@@ -55,7 +53,7 @@ public class TorRFC5869KeyDerivation {
 		bb.put(M_EXPAND_BYTES);
 		bb.put((byte) round);
 
-		final Mac mac = createMacInstance();
+		/* doFinal() resets the Mac, keeping the key, ready for the next round */
 		return mac.doFinal(bb.array());
 	}
 	
@@ -63,15 +61,4 @@ public class TorRFC5869KeyDerivation {
 		final byte[] bs = new byte[len];
 		return ByteBuffer.wrap(bs);
 	}
-
-	private Mac createMacInstance() {
-		final SecretKeySpec keyspec = new SecretKeySpec(seed, "HmacSHA256");
-		try {
-			final Mac mac = Mac.getInstance("HmacSHA256");
-			mac.init(keyspec);
-			return mac;
-		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
-			throw new IllegalStateException("Could not create HmacSHA256 instance: "+ e);
-		}
-	}
 }
@@ -5,14 +5,27 @@ import java.security.SecureRandom;
 
 import com.subgraph.orchid.TorException;
 
+/**
+ * Cryptographically secure random values.
+ * <p>
+ * All instances draw from a shared set of <code>SHA1PRNG</code> generators, and each thread
+ * is assigned one of them based on its id.  Creating an instance is therefore cheap, and threads
+ * using the same instance at the same time rarely wait for each other.
+ */
 public class TorRandom {
 
-	private final SecureRandom random;
-	
-	public TorRandom() {
-		random = createRandom();
+	private final static SecureRandom[] generators = createGenerators();
+	private final static int generatorMask = generators.length - 1;
+
+	private static SecureRandom[] createGenerators() {
+		final int n = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+		final SecureRandom[] rs = new SecureRandom[n];
+		for(int i = 0; i < n; i++) {
+			rs[i] = createRandom();
+		}
+		return rs;
 	}
-	
+
 	private static SecureRandom createRandom() {
 		try {
 			return SecureRandom.getInstance("SHA1PRNG");
@@ -21,9 +34,15 @@ public class TorRandom {
 		}
 	}
 
+	@SuppressWarnings("deprecation")
+	private static SecureRandom getGenerator() {
+		final long id = Thread.currentThread().getId();
+		return generators[(int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & generatorMask];
+	}
+
 	public byte[] getBytes(int n) {
 		final byte[] bs = new byte[n];
-		random.nextBytes(bs);
+		getGenerator().nextBytes(bs);
 		return bs;
 	}
 
@@ -37,11 +56,11 @@ public class TorRandom {
 	}
 
 	public int nextInt(int n) {
-		return random.nextInt(n);
+		return getGenerator().nextInt(n);
 	}
 	
 	public int nextInt() {
-		return random.nextInt() & Integer.MAX_VALUE;
+		return getGenerator().nextInt() & Integer.MAX_VALUE;
 	}
 	
 	/**
@@ -50,7 +69,7 @@ public class TorRandom {
 	 * @return A positive random value between 0 and Long.MAX_VALUE.
 	 */
 	public long nextLong() {
-		return random.nextLong() & Long.MAX_VALUE;
+		return getGenerator().nextLong() & Long.MAX_VALUE;
 	}
 
 }
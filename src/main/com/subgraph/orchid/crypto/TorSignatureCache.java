@@ -0,0 +1,173 @@
+package com.subgraph.orchid.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.subgraph.orchid.TorException;
+import com.subgraph.orchid.misc.ThreadSafe;
+
+/**
+ * Remembers RSA signatures which have already been verified, so that documents loaded again
+ * from the directory cache do not have to be verified again.
+ * <p>
+ * An entry is a SHA-256 digest over the fingerprint of the signing key, the signed document
+ * digest and the signature itself, so a change to any of these is a cache miss and the signature
+ * is verified in full.  Only signatures which verified successfully are recorded.  The cache holds
+ * at most {@link #MAX_ENTRIES} entries and discards the least recently used entries beyond that.
+ */
+@ThreadSafe
+public class TorSignatureCache {
+	public final static int MAX_ENTRIES = 16384;
+	private final static int ENTRY_LEN = 32;
+	private final static byte[] HEADER = "orchid-verified-signatures 1\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final static TorSignatureCache instance = new TorSignatureCache();
+
+	public static TorSignatureCache getInstance() {
+		return instance;
+	}
+
+	private final Map<Entry, Boolean> entries = new LinkedHashMap<Entry, Boolean>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Entry, Boolean> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private boolean isModified;
+
+	TorSignatureCache() {}
+
+	/**
+	 * Return <code>true</code> if <code>signature</code> has previously been verified for
+	 * <code>digestBytes</code> with <code>publicKey</code>.
+	 */
+	public boolean isVerified(TorPublicKey publicKey, byte[] digestBytes, TorSignature signature) {
+		final Entry entry = createEntry(publicKey, digestBytes, signature);
+		synchronized(entries) {
+			return entries.get(entry) != null;
+		}
+	}
+
+	/**
+	 * Record that <code>signature</code> is a valid signature of <code>digestBytes</code> by
+	 * <code>publicKey</code>.
+	 */
+	public void addVerified(TorPublicKey publicKey, byte[] digestBytes, TorSignature signature) {
+		final Entry entry = createEntry(publicKey, digestBytes, signature);
+		synchronized(entries) {
+			if(entries.put(entry, Boolean.TRUE) == null) {
+				isModified = true;
+			}
+		}
+	}
+
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized(entries) {
+			isModified |= !entries.isEmpty();
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Return <code>true</code> if entries have been added since the cache was last loaded or saved.
+	 */
+	public boolean isModified() {
+		synchronized(entries) {
+			return isModified;
+		}
+	}
+
+	/**
+	 * Add the entries stored in <code>buffer</code> by {@link #saveToBuffer()}.  The entire
+	 * buffer is ignored if it is not in the expected format.
+	 *
+	 * @return <code>true</code> if the buffer was loaded.
+	 */
+	public boolean loadFromBuffer(ByteBuffer buffer) {
+		if(buffer.remaining() < HEADER.length || (buffer.remaining() - HEADER.length) % ENTRY_LEN != 0) {
+			return false;
+		}
+		final byte[] header = new byte[HEADER.length];
+		buffer.get(header);
+		if(!Arrays.equals(header, HEADER)) {
+			return false;
+		}
+		synchronized(entries) {
+			while(buffer.hasRemaining()) {
+				final byte[] bs = new byte[ENTRY_LEN];
+				buffer.get(bs);
+				entries.put(new Entry(bs), Boolean.TRUE);
+			}
+			isModified = false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the contents of the cache in the format read by {@link #loadFromBuffer(ByteBuffer)},
+	 * least recently used entries first.
+	 */
+	public ByteBuffer saveToBuffer() {
+		synchronized(entries) {
+			final ByteBuffer buffer = ByteBuffer.allocate(HEADER.length + entries.size() * ENTRY_LEN);
+			buffer.put(HEADER);
+			final Iterator<Entry> it = entries.keySet().iterator();
+			while(it.hasNext()) {
+				buffer.put(it.next().bytes);
+			}
+			isModified = false;
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	private static Entry createEntry(TorPublicKey publicKey, byte[] digestBytes, TorSignature signature) {
+		final MessageDigest md = createDigest();
+		md.update(publicKey.getFingerprint().getRawBytes());
+		md.update(digestBytes);
+		md.update(signature.getSignatureBytes());
+		return new Entry(md.digest());
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new TorException(e);
+		}
+	}
+
+	private static class Entry {
+		private final byte[] bytes;
+		private final int hashCode;
+
+		Entry(byte[] bytes) {
+			this.bytes = bytes;
+			this.hashCode = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Entry) && Arrays.equals(bytes, ((Entry) o).bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
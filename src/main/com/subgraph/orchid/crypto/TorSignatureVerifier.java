@@ -0,0 +1,62 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.data.HexDigest;
+
+/**
+ * Verifies RSA signatures on directory documents in parallel.
+ * <p>
+ * Verification tasks run on a shared fork-join pool with at most {@link #MAX_PARALLELISM}
+ * threads.  Callers submit every signature of a document or a batch of documents first and
+ * then join the returned tasks in order, so the results are used exactly as if the signatures
+ * had been verified one after another.  On a single processor the tasks run immediately on the
+ * calling thread.  Exceptions thrown during verification are thrown again when the task is joined.
+ */
+public class TorSignatureVerifier {
+	private final static int MAX_PARALLELISM = 8;
+
+	private static class PoolHolder {
+		final static ForkJoinPool pool = Threading.newForkJoinPool("Signature verification", getParallelism());
+	}
+
+	private static int getParallelism() {
+		return Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Start verifying <code>signature</code> over the digest value of <code>digest</code>.  The
+	 * task returns <code>true</code> if the signature is valid.
+	 */
+	public static ForkJoinTask<Boolean> verify(final TorPublicKey publicKey, final TorSignature signature, final TorMessageDigest digest) {
+		return submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return publicKey.verifySignature(signature, digest);
+			}
+		});
+	}
+
+	/**
+	 * Start verifying <code>signature</code> over <code>digest</code>.  The task returns
+	 * <code>true</code> if the signature is valid.
+	 */
+	public static ForkJoinTask<Boolean> verify(final TorPublicKey publicKey, final TorSignature signature, final HexDigest digest) {
+		return submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return publicKey.verifySignatureFromDigestBytes(signature, digest.getRawBytes());
+			}
+		});
+	}
+
+	private static ForkJoinTask<Boolean> submit(Callable<Boolean> callable) {
+		final ForkJoinTask<Boolean> task = ForkJoinTask.adapt(callable);
+		if(getParallelism() < 2) {
+			task.quietlyInvoke();
+			return task;
+		}
+		return PoolHolder.pool.submit(task);
+	}
+}
@@ -5,6 +5,7 @@ import java.security.GeneralSecurityException;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.subgraph.orchid.TorException;
@@ -26,11 +27,12 @@ public class TorStreamCipher {
 	}
 
 	private static final int BLOCK_SIZE = 16;
+	/*
+	 * AES in counter mode with a 128 bit big endian counter starting at the IV (or zero), which is
+	 * exactly how Tor defines its relay cipher.  The JCE cipher keeps track of how much of the current
+	 * keystream block has been used, so consecutive calls continue the same keystream.
+	 */
 	private final Cipher cipher;
-	private final byte[] counter;
-	private final byte[] counterOut;
-	/* Next byte of keystream in counterOut */
-	private int keystreamPointer = -1;
 	private final SecretKeySpec key;
 	
 	
@@ -39,21 +41,11 @@ public class TorStreamCipher {
 	}
 	
 	private TorStreamCipher(byte[] keyBytes, byte[] iv) {
-		key = keyBytesToSecretKey(keyBytes);
-		cipher = createCipher(key);
-		counter = new byte[BLOCK_SIZE];
-		counterOut = new byte[BLOCK_SIZE];
-		
-		if(iv != null) {
-			applyIV(iv);
-		}
-	}
-	
-	private void applyIV(byte[] iv) {
-		if(iv.length != BLOCK_SIZE) {
+		if(iv != null && iv.length != BLOCK_SIZE) {
 			throw new IllegalArgumentException();
 		}
-		System.arraycopy(iv, 0, counter, 0, BLOCK_SIZE);
+		key = keyBytesToSecretKey(keyBytes);
+		cipher = createCipher(key, (iv == null) ? new byte[BLOCK_SIZE] : iv);
 	}
 	
 	public void encrypt(byte[] data) {
@@ -61,8 +53,11 @@ public class TorStreamCipher {
 	}
 	
 	public synchronized void encrypt(byte[] data, int offset, int length) {
-		for(int i = 0; i < length; i++) 
-			data[i + offset] ^= nextKeystreamByte();
+		try {
+			cipher.update(data, offset, length, data, offset);
+		} catch (GeneralSecurityException e) {
+			throw new TorException(e);
+		}
 	}
 	
 	public byte[] getKeyBytes() {
@@ -73,10 +68,10 @@ public class TorStreamCipher {
 		return new SecretKeySpec(keyBytes, "AES");
 	}
 	
-	private static Cipher createCipher(SecretKeySpec keySpec) {
+	private static Cipher createCipher(SecretKeySpec keySpec, byte[] iv) {
 		try {
-			final Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
-			cipher.init(Cipher.ENCRYPT_MODE, keySpec);
+			final Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(iv));
 			return cipher;
 		} catch (GeneralSecurityException e) {
 			throw new TorException(e);
@@ -92,36 +87,4 @@ public class TorStreamCipher {
 			throw new TorException(e);
 		} 
 	}
-	
-	private byte nextKeystreamByte() {
-		if(keystreamPointer == -1 || (keystreamPointer >= BLOCK_SIZE))
-			updateCounter();
-		return counterOut[keystreamPointer++];
-	}
-	private void updateCounter() {
-		encryptCounter();
-		incrementCounter();
-		keystreamPointer = 0;
-	}
-	
-	private void encryptCounter() {
-		try {
-			cipher.doFinal(counter, 0, BLOCK_SIZE, counterOut, 0);
-		} catch (GeneralSecurityException e) {
-			throw new TorException(e);
-		}
-	}
-	
-	private void incrementCounter() {
-		int carry = 1;
-		for(int i = counter.length - 1; i >= 0; i--) {
-			int x = (counter[i] & 0xff) + carry;
-			if(x > 0xff) 
-				carry = 1;
-			else
-				carry = 0;
-			counter[i] = (byte)x;
-		}
-	}
-
 }
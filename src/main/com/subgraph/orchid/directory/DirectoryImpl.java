@@ -28,6 +28,7 @@ import com.subgraph.orchid.TorConfig;
 import com.subgraph.orchid.TorConfig.AutoBoolValue;
 import com.subgraph.orchid.TorException;
 import com.subgraph.orchid.crypto.TorRandom;
+import com.subgraph.orchid.crypto.TorSignatureCache;
 import com.subgraph.orchid.data.HexDigest;
 import com.subgraph.orchid.data.RandomSet;
 import com.subgraph.orchid.directory.parsing.DocumentParser;
@@ -131,6 +132,8 @@ public class DirectoryImpl implements Directory {
             }
             boolean useMicrodescriptors = config.getUseMicrodescriptors() != AutoBoolValue.FALSE;
             last = System.currentTimeMillis();
+            TorSignatureCache.getInstance().loadFromBuffer(store.loadCacheFile(CacheFile.VERIFIED_SIGNATURES));
+
             logger.info("Loading certificates");
             loadCertificates(store.loadCacheFile(CacheFile.CERTIFICATES));
             logElapsed();
@@ -153,6 +156,8 @@ public class DirectoryImpl implements Directory {
             stateFile.parseBuffer(store.loadCacheFile(CacheFile.STATE));
             logElapsed();
 
+            storeSignatureCache();
+
             isLoaded = true;
             loadLock.notifyAll();
         }
@@ -284,6 +289,7 @@ public class DirectoryImpl implements Directory {
             }
             store.writeDocumentList(CacheFile.CERTIFICATES, certs);
         }
+        storeSignatureCache();
     }
 
     @Override
@@ -353,6 +359,14 @@ public class DirectoryImpl implements Directory {
                 store.writeDocument(CacheFile.CONSENSUS, currentConsensus);
             }
         }
+        storeSignatureCache();
+    }
+
+    private void storeSignatureCache() {
+        final TorSignatureCache cache = TorSignatureCache.getInstance();
+        if(cache.isModified()) {
+            store.writeData(CacheFile.VERIFIED_SIGNATURES, cache.saveToBuffer());
+        }
     }
 
     private Descriptor getDescriptorForRouterStatus(RouterStatus rs, boolean isMicrodescriptor) {
@@ -532,6 +546,24 @@ public class DirectoryImpl implements Directory {
         stateFile.addGuardEntry(entry);
     }
 
+    @Override
+    public Map<Integer, Integer> getCircuitBuildTimeHistogram() {
+        waitUntilLoaded();
+        return stateFile.getCircuitBuildTimeHistogram();
+    }
+
+    @Override
+    public int getAbandonedCircuitBuildCount() {
+        waitUntilLoaded();
+        return stateFile.getAbandonedCircuitBuildCount();
+    }
+
+    @Override
+    public void storeCircuitBuildTimes(Map<Integer, Integer> histogram, int abandonedCount) {
+        waitUntilLoaded();
+        stateFile.setCircuitBuildTimes(histogram, abandonedCount);
+    }
+
     @Override
     public RouterMicrodescriptor getMicrodescriptorFromCache(HexDigest descriptorDigest) {
         return microdescriptorCache.getDescriptor(descriptorDigest);
@@ -7,6 +7,8 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.subgraph.orchid.Directory;
 import com.subgraph.orchid.DirectoryStore;
@@ -27,8 +29,14 @@ public class StateFile {
     final static String KEYWORD_ENTRY_GUARD_ADDED_BY = "EntryGuardAddedBy";
     final static String KEYWORD_ENTRY_GUARD_DOWN_SINCE = "EntryGuardDownSince";
     final static String KEYWORD_ENTRY_GUARD_UNLISTED_SINCE = "EntryGuardUnlistedSince";
+    final static String KEYWORD_TOTAL_BUILD_TIMES = "TotalBuildTimes";
+    final static String KEYWORD_CIRCUIT_BUILD_ABANDONED_COUNT = "CircuitBuildAbandonedCount";
+    final static String KEYWORD_CIRCUIT_BUILD_TIME_BIN = "CircuitBuildTimeBin";
 
     private final List<GuardEntryImpl> guardEntries = new ArrayList<>();
+    /* Completed circuit build times, count of builds by the midpoint of each histogram bin in milliseconds */
+    private final Map<Integer, Integer> circuitBuildTimeBins = new TreeMap<>();
+    private int circuitBuildAbandonedCount;
     private final TorRandom random = new TorRandom();
     private final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
@@ -151,6 +159,27 @@ public class StateFile {
         }
     }
 
+    public Map<Integer, Integer> getCircuitBuildTimeHistogram() {
+        synchronized (circuitBuildTimeBins) {
+            return new TreeMap<>(circuitBuildTimeBins);
+        }
+    }
+
+    public int getAbandonedCircuitBuildCount() {
+        synchronized (circuitBuildTimeBins) {
+            return circuitBuildAbandonedCount;
+        }
+    }
+
+    public void setCircuitBuildTimes(Map<Integer, Integer> histogram, int abandonedCount) {
+        synchronized (circuitBuildTimeBins) {
+            circuitBuildTimeBins.clear();
+            circuitBuildTimeBins.putAll(histogram);
+            circuitBuildAbandonedCount = abandonedCount;
+        }
+        writeFile();
+    }
+
     void writeFile() {
         directoryStore.writeData(CacheFile.STATE, getFileContents());
     }
@@ -162,12 +191,34 @@ public class StateFile {
                 sb.append(entry.writeToString());
             }
         }
+        writeCircuitBuildTimes(sb);
         return ByteBuffer.wrap(sb.toString().getBytes(Tor.getDefaultCharset()));
     }
 
+    private void writeCircuitBuildTimes(StringBuilder sb) {
+        synchronized (circuitBuildTimeBins) {
+            if(circuitBuildTimeBins.isEmpty() && circuitBuildAbandonedCount == 0) {
+                return;
+            }
+            int total = circuitBuildAbandonedCount;
+            for(int count: circuitBuildTimeBins.values()) {
+                total += count;
+            }
+            sb.append(KEYWORD_TOTAL_BUILD_TIMES).append(" ").append(total).append("\n");
+            sb.append(KEYWORD_CIRCUIT_BUILD_ABANDONED_COUNT).append(" ").append(circuitBuildAbandonedCount).append("\n");
+            for(Map.Entry<Integer, Integer> e: circuitBuildTimeBins.entrySet()) {
+                sb.append(KEYWORD_CIRCUIT_BUILD_TIME_BIN).append(" ").append(e.getKey()).append(",").append(e.getValue()).append("\n");
+            }
+        }
+    }
+
     void parseBuffer(ByteBuffer buffer) {
         synchronized (guardEntries) {
             guardEntries.clear();
+            synchronized (circuitBuildTimeBins) {
+                circuitBuildTimeBins.clear();
+                circuitBuildAbandonedCount = 0;
+            }
             loadGuardEntries(buffer);
         }
     }
@@ -205,6 +256,12 @@ public class StateFile {
         } else if(keyword.equals(KEYWORD_ENTRY_GUARD_UNLISTED_SINCE)) {
             processEntryGuardUnlistedSince(line, current);
             return current;
+        } else if(keyword.equals(KEYWORD_CIRCUIT_BUILD_ABANDONED_COUNT)) {
+            processCircuitBuildAbandonedCount(line);
+            return current;
+        } else if(keyword.equals(KEYWORD_CIRCUIT_BUILD_TIME_BIN)) {
+            processCircuitBuildTimeBin(line);
+            return current;
         } else {
             return current;
         }
@@ -264,6 +321,43 @@ public class StateFile {
         current.setUnlistedSince(unlistedSince);
     }
 
+    private void processCircuitBuildAbandonedCount(Line line) {
+        final int count = parseNonNegativeInteger(line.nextToken());
+        if(count < 0) {
+            logger.warn("Failed to parse CircuitBuildAbandonedCount line in state file: "+ line.line);
+            return;
+        }
+        synchronized (circuitBuildTimeBins) {
+            circuitBuildAbandonedCount = count;
+        }
+    }
+
+    private void processCircuitBuildTimeBin(Line line) {
+        final String bin = line.nextToken();
+        final int comma = (bin == null) ? -1 : bin.indexOf(',');
+        final int milliseconds = (comma == -1) ? -1 : parseNonNegativeInteger(bin.substring(0, comma));
+        final int count = (comma == -1) ? -1 : parseNonNegativeInteger(bin.substring(comma + 1));
+        if(milliseconds <= 0 || count < 0) {
+            logger.warn("Failed to parse CircuitBuildTimeBin line in state file: "+ line.line);
+            return;
+        }
+        synchronized (circuitBuildTimeBins) {
+            circuitBuildTimeBins.merge(milliseconds, count, Integer::sum);
+        }
+    }
+
+    private static int parseNonNegativeInteger(String s) {
+        if(s == null) {
+            return -1;
+        }
+        try {
+            final int n = Integer.parseInt(s);
+            return (n < 0) ? -1 : n;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private void addEntryIfValid(GuardEntryImpl entry) {
         if(isValidEntry(entry)) {
             addGuardEntry(entry, false);
@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import com.subgraph.orchid.ConsensusDocument;
 import com.subgraph.orchid.DirectoryServer;
@@ -17,6 +18,7 @@ import com.subgraph.orchid.Tor;
 import com.subgraph.orchid.VoteAuthorityEntry;
 import com.subgraph.orchid.crypto.TorPublicKey;
 import com.subgraph.orchid.crypto.TorSignature.DigestAlgorithm;
+import com.subgraph.orchid.crypto.TorSignatureVerifier;
 import com.subgraph.orchid.data.HexDigest;
 import com.subgraph.orchid.data.Timestamp;
 import com.subgraph.orchid.directory.TrustedAuthorities;
@@ -222,8 +224,14 @@ public class ConsensusDocumentImpl implements ConsensusDocument {
         final int v3Count = TrustedAuthorities.getInstance().getV3AuthorityServerCount();
         final int required = (v3Count / 2) + 1;
 
+        /* Start verifying every signature before waiting for any result */
+        final List<AuthorityVerification> verifications = new ArrayList<>();
         for(VoteAuthorityEntry entry: voteAuthorityEntries.values()) {
-            switch(verifySingleAuthority(entry)) {
+            verifications.add(startAuthorityVerification(entry));
+        }
+
+        for(AuthorityVerification v: verifications) {
+            switch(v.getStatus()) {
             case STATUS_FAILED:
                 break;
             case STATUS_NEED_CERTS:
@@ -247,38 +255,56 @@ public class ConsensusDocumentImpl implements ConsensusDocument {
         }
     }
 
-    private SignatureStatus verifySingleAuthority(VoteAuthorityEntry authority) {
-        boolean certsNeeded = false;
-        boolean validSignature = false;
+    /* The signatures of one authority, whose RSA verification may still be in progress */
+    private static class AuthorityVerification {
+        private final List<DirectorySignature> signatures = new ArrayList<>();
+        private final List<ForkJoinTask<Boolean>> signatureChecks = new ArrayList<>();
+        private boolean isFailed;
+        private boolean certsNeeded;
+
+        SignatureStatus getStatus() {
+            if(isFailed) {
+                return SignatureStatus.STATUS_FAILED;
+            }
+            boolean validSignature = false;
+            for(int i = 0; i < signatureChecks.size(); i++) {
+                if(signatureChecks.get(i).join()) {
+                    validSignature = true;
+                } else {
+                    logger.warn("Signature failed on consensus for signing key: "+ signatures.get(i).getSigningKeyDigest());
+                }
+            }
+            if(validSignature) {
+                return SignatureStatus.STATUS_VERIFIED;
+            } else if(certsNeeded) {
+                return SignatureStatus.STATUS_NEED_CERTS;
+            } else {
+                return SignatureStatus.STATUS_FAILED;
+            }
+        }
+    }
+
+    private AuthorityVerification startAuthorityVerification(VoteAuthorityEntry authority) {
+        final AuthorityVerification verification = new AuthorityVerification();
         for(DirectorySignature s: authority.getSignatures()) {
             DirectoryServer trusted = TrustedAuthorities.getInstance().getAuthorityServerByIdentity(s.getIdentityDigest());
             if(trusted == null) {
                 logger.warn("Consensus signed by unrecognized directory authority: "+ s.getIdentityDigest());
-                return SignatureStatus.STATUS_FAILED;
+                verification.isFailed = true;
+                return verification;
             } else {
-                switch(verifySignatureForTrustedAuthority(trusted, s)) {
-                case STATUS_NEED_CERTS:
-                    certsNeeded = true;
-                    break;
-                case STATUS_VERIFIED:
-                    validSignature = true;
-                    break;
-                default:
-                    break;
+                final ForkJoinTask<Boolean> check = startSignatureVerification(trusted, s, verification);
+                if(check != null) {
+                    verification.signatures.add(s);
+                    verification.signatureChecks.add(check);
                 }
             }
         }
-
-        if(validSignature) {
-            return SignatureStatus.STATUS_VERIFIED;
-        } else if(certsNeeded) {
-            return SignatureStatus.STATUS_NEED_CERTS;
-        } else {
-            return SignatureStatus.STATUS_FAILED;
-        }
+        return verification;
     }
 
-    private SignatureStatus verifySignatureForTrustedAuthority(DirectoryServer trustedAuthority, DirectorySignature signature) {
+    /* Returns null if the signature cannot be verified */
+    private ForkJoinTask<Boolean> startSignatureVerification(DirectoryServer trustedAuthority, DirectorySignature signature, AuthorityVerification verification) {
         logger.debug("trustedAuthority.toString(): "+trustedAuthority.toString());
         logger.debug("signature.getSigningKeyDigest(): "+signature.getSigningKeyDigest());
 	// https://github.com/geo-gs/Orchid/commit/22beeae1b881707491addaba6a7654e9de9f9db1
@@ -288,22 +314,17 @@ public class ConsensusDocumentImpl implements ConsensusDocument {
         if(certificate == null) {
             logger.debug("Missing certificate for signing key: "+ signature.getSigningKeyDigest());
             addRequiredCertificateForSignature(signature);
-            return SignatureStatus.STATUS_NEED_CERTS;
+            verification.certsNeeded = true;
+            return null;
         }
         if(certificate.isExpired()) {
             logger.debug("certificate.isExpired(): "+true);
-            return SignatureStatus.STATUS_FAILED;
+            return null;
         }
 
         final TorPublicKey signingKey = certificate.getAuthoritySigningKey();
         final HexDigest d = (signature.useSha256()) ? signingHash256 : signingHash;
-        logger.debug("trustedAuthority.toString(): "+trustedAuthority.toString());
-        logger.debug("signature.getSigningKeyDigest(): "+signature.getSigningKeyDigest());
-        if(signingKey.verifySignature(signature.getSignature(), d)) {
-            logger.warn("Signature failed on consensus for signing key: "+ signature.getSigningKeyDigest());
-            return SignatureStatus.STATUS_FAILED;
-        }
-        return SignatureStatus.STATUS_VERIFIED;
+        return TorSignatureVerifier.verify(signingKey, signature.getSignature(), d);
     }
 
     @Override
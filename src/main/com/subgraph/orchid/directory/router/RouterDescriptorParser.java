@@ -1,8 +1,13 @@
 package com.subgraph.orchid.directory.router;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
 import com.subgraph.orchid.RouterDescriptor;
 import com.subgraph.orchid.TorParsingException;
 import com.subgraph.orchid.crypto.TorSignature;
+import com.subgraph.orchid.crypto.TorSignatureVerifier;
 import com.subgraph.orchid.data.BandwidthHistory;
 import com.subgraph.orchid.data.Timestamp;
 import com.subgraph.orchid.directory.parsing.BasicDocumentParsingResult;
@@ -18,6 +23,13 @@ public class RouterDescriptorParser implements DocumentParser<RouterDescriptor>
 	
 	private RouterDescriptorImpl currentDescriptor;
 	private DocumentParsingResultHandler<RouterDescriptor> resultHandler;
+
+	/*
+	 * Descriptors whose signatures are being verified.  They are passed to the result handler
+	 * in document order once verified.
+	 */
+	private final List<RouterDescriptorImpl> pendingDescriptors = new ArrayList<>();
+	private final List<ForkJoinTask<Boolean>> pendingSignatureChecks = new ArrayList<>();
 	
 	public RouterDescriptorParser(DocumentFieldParser fieldParser, boolean verifySignatures) {
 		this.fieldParser = fieldParser;
@@ -58,8 +70,10 @@ public class RouterDescriptorParser implements DocumentParser<RouterDescriptor>
 		startNewDescriptor();
 		try {
 			fieldParser.processDocument();
+			completePendingDescriptors();
 			return true;
 		} catch(TorParsingException e) {
+			completePendingDescriptors();
 			resultHandler.parsingError(e.getMessage());
 			return false;
 		}
@@ -174,18 +188,30 @@ public class RouterDescriptorParser implements DocumentParser<RouterDescriptor>
 		currentDescriptor.setDirectoryPort(fieldParser.parsePort());
 	}
 	
-	private boolean verifyCurrentDescriptor(TorSignature signature) {
-		if(verifySignatures && fieldParser.verifySignedEntity(currentDescriptor.getIdentityKey(), signature)) {
-			resultHandler.documentInvalid(currentDescriptor, "Signature failed.");
-			fieldParser.logWarn("Signature failed for router: " + currentDescriptor.getNickname());
-			return false;
+	private void completePendingDescriptors() {
+		try {
+			for(int i = 0; i < pendingDescriptors.size(); i++) {
+				completeDescriptor(pendingDescriptors.get(i), pendingSignatureChecks.get(i).join());
+			}
+		} finally {
+			pendingDescriptors.clear();
+			pendingSignatureChecks.clear();
 		}
-		currentDescriptor.setValidSignature();
-		if(!currentDescriptor.isValidDocument()) {
-			resultHandler.documentInvalid(currentDescriptor, "Router data invalid");
-			fieldParser.logWarn("Router data invalid for router: " + currentDescriptor.getNickname());
+	}
+
+	private void completeDescriptor(RouterDescriptorImpl descriptor, boolean isSignatureValid) {
+		if(!isSignatureValid) {
+			resultHandler.documentInvalid(descriptor, "Signature failed.");
+			fieldParser.logWarn("Signature failed for router: " + descriptor.getNickname());
+			return;
 		}
-		return currentDescriptor.isValidDocument();
+		descriptor.setValidSignature();
+		if(!descriptor.isValidDocument()) {
+			resultHandler.documentInvalid(descriptor, "Router data invalid");
+			fieldParser.logWarn("Router data invalid for router: " + descriptor.getNickname());
+			return;
+		}
+		resultHandler.documentParsed(descriptor);
 	}
 	
 	private void processBandwidth() {
@@ -216,8 +242,13 @@ public class RouterDescriptorParser implements DocumentParser<RouterDescriptor>
 		final TorSignature signature = fieldParser.parseSignature();
 		currentDescriptor.setRawDocumentData(fieldParser.getRawDocument());
 		
-		if(verifyCurrentDescriptor(signature))
-			resultHandler.documentParsed(currentDescriptor);
+		if(verifySignatures) {
+			/* A new digest is started for the next descriptor, so this one is not modified again */
+			pendingDescriptors.add(currentDescriptor);
+			pendingSignatureChecks.add(TorSignatureVerifier.verify(currentDescriptor.getIdentityKey(), signature, fieldParser.getSignatureMessageDigest()));
+		} else {
+			completeDescriptor(currentDescriptor, true);
+		}
 		startNewDescriptor();
 	}
 }
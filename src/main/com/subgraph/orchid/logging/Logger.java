@@ -21,6 +21,10 @@ public class Logger {
         return level.isGreaterOrEqual(ApplicationProperties.getLoggingThreshold());
     }
     
+    public boolean isDebugEnabled(){
+        return shouldLog(SysLog.DEBUG);
+    }
+    
     public void debug(Object message){
         debug(message, null);
     }
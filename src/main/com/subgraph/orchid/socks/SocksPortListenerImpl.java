@@ -12,6 +12,7 @@ import java.util.concurrent.Executors;
 
 import com.subgraph.orchid.CircuitManager;
 import com.subgraph.orchid.SocksPortListener;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.TorConfig;
 import com.subgraph.orchid.TorException;
 import com.subgraph.orchid.logging.Logger;
@@ -23,12 +24,15 @@ public class SocksPortListenerImpl implements SocksPortListener {
     private final TorConfig config;
     private final CircuitManager circuitManager;
     private final ExecutorService executor;
+    private final ExecutorService clientExecutor;
     private boolean isStopped;
 
     public SocksPortListenerImpl(TorConfig config, CircuitManager circuitManager) {
         this.config = config;
         this.circuitManager = circuitManager;
+        // Accept loops run on non-daemon platform threads which keep the JVM alive while listening
         executor = Executors.newCachedThreadPool();
+        clientExecutor = Threading.newPool("SocksClientTask worker");
     }
 
     @Override
@@ -62,6 +66,7 @@ public class SocksPortListenerImpl implements SocksPortListener {
                 t.stop();
             }
             executor.shutdownNow();
+            clientExecutor.shutdownNow();
             isStopped = true;
         }
     }
@@ -114,7 +119,7 @@ public class SocksPortListenerImpl implements SocksPortListener {
         private void runAcceptLoop() throws IOException {
             while(!Thread.interrupted() && !stopped) {
                 final Socket s = socket.accept();
-                executor.execute(newClientSocket(s));
+                clientExecutor.execute(newClientSocket(s));
             }
         }
     }
@@ -7,6 +7,7 @@ import java.io.OutputStream;
 import java.net.Socket;
 
 import com.subgraph.orchid.Stream;
+import com.subgraph.orchid.Threading;
 import com.subgraph.orchid.logging.Logger;
 
 public class SocksStreamConnection {
@@ -23,9 +24,6 @@ public class SocksStreamConnection {
     private final Socket socket;
     private final Thread incomingThread;
     private final Thread outgoingThread;
-    private final Object lock = new Object();
-    private volatile boolean outgoingClosed;
-    private volatile boolean incomingClosed;
 
     private SocksStreamConnection(Socket socket, Stream stream) {
         this.socket = socket;
@@ -40,52 +38,40 @@ public class SocksStreamConnection {
     private void run() {
         incomingThread.start();
         outgoingThread.start();
-        synchronized(lock) {
-            while(!(outgoingClosed && incomingClosed)) {
-                try {
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
+        // Joining rather than waiting on a monitor does not pin the carrier of a virtual thread
+        try {
+            incomingThread.join();
+            outgoingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
 
-            try {
-                socket.close();
-            } catch (IOException e) {
-                logger.warn("IOException on SOCKS socket close(): "+ e.getMessage());
-            }
-            closeStream(torInputStream);
-            closeStream(torOutputStream);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.warn("IOException on SOCKS socket close(): "+ e.getMessage());
         }
+        closeStream(torInputStream);
+        closeStream(torOutputStream);
     }
 
     private Thread createIncomingThread() {
-        return new Thread(() -> {
+        return Threading.newThread("SOCKS incoming", () -> {
             try {
                 incomingTransferLoop();
             } catch (IOException e) {
                 logger.debug("System error on incoming stream IO  "+ stream +" : "+ e.getMessage());
-            } finally {
-                synchronized(lock) {
-                    incomingClosed = true;
-                    lock.notifyAll();
-                }
             }
         });
     }
 
     private Thread createOutgoingThread() {
-        return new Thread(() -> {
+        return Threading.newThread("SOCKS outgoing", () -> {
             try {
                 outgoingTransferLoop();
             } catch (IOException e) {
                 logger.debug("System error on outgoing stream IO "+ stream +" : "+ e.getMessage());
-            } finally {
-                synchronized(lock) {
-                    outgoingClosed = true;
-                    lock.notifyAll();
-                }
             }
         });
     }
@@ -1,6 +1,7 @@
 package com.subgraph.orchid;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -94,6 +95,42 @@ public class TorConfigTest {
 		assertEquals(TorConfig.AutoBoolValue.AUTO, config.getUseNTorHandshake());
 	}
 	
+	@Test
+	public void testConnectionEngine() {
+		assertEquals(TorConfig.ConnectionEngine.BLOCKING, config.getConnectionEngine());
+		config.setConnectionEngine(TorConfig.ConnectionEngine.SELECTOR);
+		assertEquals(TorConfig.ConnectionEngine.SELECTOR, config.getConnectionEngine());
+	}
+
+	@Test
+	public void testBufferedCellReads() {
+		assertTrue(config.getBufferedCellReads());
+		config.setBufferedCellReads(false);
+		assertFalse(config.getBufferedCellReads());
+	}
+
+	@Test
+	public void testCircuitPriorityHalflife() {
+		assertEquals(30 * 1000, config.getCircuitPriorityHalflife());
+		config.setCircuitPriorityHalflife(0, TimeUnit.SECONDS);
+		assertEquals(0, config.getCircuitPriorityHalflife());
+	}
+
+	@Test
+	public void testCircuitDispatchThreads() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		assertEquals((processors > 1) ? processors : 0, config.getCircuitDispatchThreads());
+		config.setCircuitDispatchThreads(0);
+		assertEquals(0, config.getCircuitDispatchThreads());
+	}
+
+	@Test
+	public void testLinksPerRouter() {
+		assertEquals(1, config.getLinksPerRouter());
+		config.setLinksPerRouter(4);
+		assertEquals(4, config.getLinksPerRouter());
+	}
+	
 	@Test
 	public void testBridges() {
 		final IPv4Address a1 = IPv4Address.createFromString("1.2.3.4");
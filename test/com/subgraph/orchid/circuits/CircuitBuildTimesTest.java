@@ -0,0 +1,145 @@
+package com.subgraph.orchid.circuits;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.easymock.Capture;
+import org.junit.Test;
+
+import com.subgraph.orchid.Directory;
+
+public class CircuitBuildTimesTest {
+
+	@Test
+	public void testDefaultTimeoutUntilEnoughBuilds() {
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(Collections.<Integer, Integer>emptyMap(), 0, null));
+		for(int i = 0; i < CircuitBuildTimes.MIN_BUILDS_TO_COMPUTE - 1; i++) {
+			buildTimes.addBuildTime(2000);
+		}
+		assertEquals(CircuitBuildTimes.DEFAULT_TIMEOUT_MS, buildTimes.getTimeout());
+	}
+
+	@Test
+	public void testTimeoutAbandonsSlowestBuilds() {
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(Collections.<Integer, Integer>emptyMap(), 0, null));
+		final int[] samples = createParetoSamples(CircuitBuildTimes.MAX_RECORDED_BUILDS);
+		for(int t: samples) {
+			buildTimes.addBuildTime(t);
+		}
+		final long timeout = buildTimes.getTimeout();
+		int slower = 0;
+		for(int t: samples) {
+			if(t > timeout) {
+				slower += 1;
+			}
+		}
+		final double fraction = (double) slower / samples.length;
+		assertTrue("timeout "+ timeout +" abandons "+ fraction, fraction > 0.1 && fraction < 0.3);
+	}
+
+	/* Builds slower than the current timeout are abandoned, as they would be by CircuitBuildTask */
+	@Test
+	public void testAbandonedBuildsDoNotShrinkTimeout() {
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(Collections.<Integer, Integer>emptyMap(), 0, null));
+		final int[] samples = createParetoSamples(10 * CircuitBuildTimes.MAX_RECORDED_BUILDS);
+		int measured = 0;
+		int abandoned = 0;
+		for(int i = 0; i < samples.length; i++) {
+			final boolean isAbandoned = samples[i] > buildTimes.getTimeout();
+			if(isAbandoned) {
+				buildTimes.addAbandonedBuild();
+			} else {
+				buildTimes.addBuildTime(samples[i]);
+			}
+			if(i >= samples.length / 2) {
+				measured += 1;
+				abandoned += isAbandoned ? 1 : 0;
+			}
+		}
+		final double fraction = (double) abandoned / measured;
+		assertTrue("timeout "+ buildTimes.getTimeout() +" abandons "+ fraction, fraction > 0.15 && fraction < 0.25);
+	}
+
+	@Test
+	public void testStoredHistogramRestoresTimeout() {
+		final Capture<Map<Integer, Integer>> stored = new Capture<>();
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(Collections.<Integer, Integer>emptyMap(), 0, stored));
+		for(int t: createParetoSamples(500)) {
+			buildTimes.addBuildTime(t);
+		}
+		buildTimes.addAbandonedBuild();
+		buildTimes.store();
+
+		final CircuitBuildTimes restored = new CircuitBuildTimes(createDirectory(stored.getValue(), 1, null));
+		final double difference = Math.abs(restored.getTimeout() - buildTimes.getTimeout());
+		assertTrue(difference < 0.05 * buildTimes.getTimeout());
+	}
+
+	@Test
+	public void testLoadedCountsAreBounded() {
+		final Map<Integer, Integer> histogram = new TreeMap<>();
+		histogram.put(1005, Integer.MAX_VALUE);
+		histogram.put(2005, -5);
+		final Capture<Map<Integer, Integer>> stored = new Capture<>();
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(histogram, Integer.MAX_VALUE, stored));
+		buildTimes.addBuildTime(1000);
+		buildTimes.store();
+
+		int total = 0;
+		for(int count: stored.getValue().values()) {
+			total += count;
+		}
+		assertTrue(total <= CircuitBuildTimes.MAX_RECORDED_BUILDS);
+		assertFalse(stored.getValue().containsKey(2005));
+
+		final CircuitBuildTimes negative = new CircuitBuildTimes(createDirectory(Collections.singletonMap(1005, -1), -1, null));
+		assertEquals(CircuitBuildTimes.DEFAULT_TIMEOUT_MS, negative.getTimeout());
+	}
+
+	@Test
+	public void testResetAfterRecentTimeouts() {
+		final CircuitBuildTimes buildTimes = new CircuitBuildTimes(createDirectory(Collections.<Integer, Integer>emptyMap(), 0, null));
+		for(int t: createParetoSamples(500)) {
+			buildTimes.addBuildTime(t);
+		}
+		assertTrue(buildTimes.getTimeout() < CircuitBuildTimes.DEFAULT_TIMEOUT_MS);
+		for(int i = 0; i < 18; i++) {
+			buildTimes.addAbandonedBuild();
+		}
+		assertEquals(CircuitBuildTimes.DEFAULT_TIMEOUT_MS, buildTimes.getTimeout());
+	}
+
+	/* Pareto distribution with scale 1000 ms and shape 2, the 80th percentile is 2236 ms */
+	private static int[] createParetoSamples(int n) {
+		final Random random = new Random(1);
+		final int[] samples = new int[n];
+		for(int i = 0; i < n; i++) {
+			samples[i] = (int) (1000 / Math.sqrt(1.0 - random.nextDouble()));
+		}
+		return samples;
+	}
+
+	private static Directory createDirectory(Map<Integer, Integer> histogram, int abandonedCount, Capture<Map<Integer, Integer>> stored) {
+		final Directory directory = createNiceMock(Directory.class);
+		expect(directory.getCircuitBuildTimeHistogram()).andReturn(histogram).anyTimes();
+		expect(directory.getAbandonedCircuitBuildCount()).andReturn(abandonedCount).anyTimes();
+		if(stored != null) {
+			directory.storeCircuitBuildTimes(capture(stored), anyInt());
+			expectLastCall().anyTimes();
+		}
+		replay(directory);
+		return directory;
+	}
+}
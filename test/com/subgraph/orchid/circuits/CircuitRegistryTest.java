@@ -0,0 +1,74 @@
+package com.subgraph.orchid.circuits;
+
+import static com.subgraph.orchid.circuits.TestCircuits.createExitCircuit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitRegistryTest {
+	private CircuitRegistry registry;
+
+	@Before
+	public void setup() {
+		registry = new CircuitRegistry();
+	}
+
+	@Test
+	public void testStateTransitions() {
+		final ExitCircuitImpl exit = createExitCircuit(80);
+		final DirectoryCircuitImpl dir = new DirectoryCircuitImpl(null, null);
+		registry.add(exit, CircuitRegistry.Type.EXIT);
+		registry.add(dir, CircuitRegistry.Type.DIRECTORY);
+		assertEquals(2, registry.size());
+		assertEquals(2, registry.getCount(CircuitRegistry.State.PENDING));
+
+		registry.setConnected(exit);
+		assertEquals(1, registry.getCount(CircuitRegistry.State.PENDING));
+		assertTrue(registry.getCircuits(CircuitRegistry.Type.EXIT, CircuitRegistry.State.CONNECTED).contains(exit));
+
+		registry.setMarkedForClose(dir);
+		registry.setConnected(dir);
+		assertTrue(registry.getCircuits(CircuitRegistry.State.MARKED_FOR_CLOSE).contains(dir));
+		assertEquals(0, registry.getCount(CircuitRegistry.State.PENDING));
+
+		registry.remove(exit);
+		registry.remove(dir);
+		assertEquals(0, registry.size());
+		assertTrue(registry.getCircuits(CircuitRegistry.State.CONNECTED).isEmpty());
+	}
+
+	@Test
+	public void testTypeChange() {
+		final DirectoryCircuitImpl circuit = new DirectoryCircuitImpl(null, null);
+		registry.add(circuit, CircuitRegistry.Type.INTERNAL);
+		registry.setConnected(circuit);
+		registry.setType(circuit, CircuitRegistry.Type.HIDDEN_SERVICE);
+		assertTrue(registry.getCircuits(CircuitRegistry.Type.INTERNAL, CircuitRegistry.State.CONNECTED).isEmpty());
+		assertTrue(registry.getCircuits(CircuitRegistry.Type.HIDDEN_SERVICE, CircuitRegistry.State.CONNECTED).contains(circuit));
+	}
+
+	@Test
+	public void testPortIndex() {
+		final ExitCircuitImpl web = createExitCircuit(80, 443);
+		final ExitCircuitImpl mail = createExitCircuit(25);
+		registry.add(web, CircuitRegistry.Type.EXIT);
+		registry.add(mail, CircuitRegistry.Type.EXIT);
+		assertEquals(1, registry.getExitCircuitsForPort(443).size());
+		assertTrue(registry.getExitCircuitsForPort(443).contains(web));
+
+		/* Circuits added after a port was indexed are added to the index */
+		final ExitCircuitImpl web2 = createExitCircuit(443);
+		registry.add(web2, CircuitRegistry.Type.EXIT);
+		registry.setConnected(web2);
+		assertEquals(2, registry.getExitCircuitsForPort(443).size());
+
+		registry.setMarkedForClose(web);
+		assertFalse(registry.getExitCircuitsForPort(443).contains(web));
+		registry.remove(web2);
+		assertTrue(registry.getExitCircuitsForPort(443).isEmpty());
+		assertTrue(registry.getExitCircuitsForPort(25).contains(mail));
+	}
+}
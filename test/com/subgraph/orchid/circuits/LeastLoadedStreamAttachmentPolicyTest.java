@@ -0,0 +1,76 @@
+package com.subgraph.orchid.circuits;
+
+import static com.subgraph.orchid.circuits.TestCircuits.createExitCircuit;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.data.exitpolicy.ExitTarget;
+
+public class LeastLoadedStreamAttachmentPolicyTest {
+	private final static ExitTarget TARGET = createTarget(80);
+
+	private final LeastLoadedStreamAttachmentPolicy policy = new LeastLoadedStreamAttachmentPolicy(10);
+
+	@Test
+	public void testChoosesFewestStreams() {
+		final CircuitLoad busy = createLoad(true, 5, 0, 1000);
+		final CircuitLoad idle = createLoad(true, 2, 0, 1000);
+		final CircuitLoad busiest = createLoad(true, 7, 0, 1000);
+		assertSame(idle, policy.chooseCircuit(TARGET, Arrays.asList(busy, idle, busiest)));
+	}
+
+	@Test
+	public void testQueuedCellsAndPackageWindow() {
+		final CircuitLoad queued = createLoad(true, 1, 64, 1000);
+		final CircuitLoad streams = createLoad(true, 3, 0, 1000);
+		assertSame(streams, policy.chooseCircuit(TARGET, Arrays.asList(queued, streams)));
+
+		final CircuitLoad closedWindow = createLoad(true, 1, 0, 0);
+		final CircuitLoad openWindow = createLoad(true, 1, 0, 500);
+		assertSame(openWindow, policy.chooseCircuit(TARGET, Arrays.asList(closedWindow, openWindow)));
+	}
+
+	@Test
+	public void testSkipsFullAndUnsuitableCircuits() {
+		final CircuitLoad full = createLoad(true, 10, 0, 1000);
+		final CircuitLoad rejects = createLoad(false, 0, 0, 1000);
+		assertNull(policy.chooseCircuit(TARGET, Arrays.asList(full, rejects)));
+	}
+
+	@Test
+	public void testSpreadsStreamsUntilCircuitsAreFull() {
+		final List<CircuitLoad> circuits = new ArrayList<>();
+		for(int i = 0; i < 4; i++) {
+			circuits.add(createLoad(true, 0, 0, 1000));
+		}
+		for(int i = 0; i < 40; i++) {
+			final CircuitLoad load = policy.chooseCircuit(TARGET, circuits);
+			assertEquals(i / 4, load.getStreamCount());
+			load.addStream();
+		}
+		assertNull(policy.chooseCircuit(TARGET, circuits));
+	}
+
+	private static CircuitLoad createLoad(boolean acceptsTarget, int streamCount, int queuedCellCount, int packageWindow) {
+		final ExitCircuitImpl circuit = acceptsTarget ? createExitCircuit(TARGET.getPort()) : createExitCircuit();
+		return new CircuitLoad(circuit, streamCount, queuedCellCount, packageWindow);
+	}
+
+	private static ExitTarget createTarget(int port) {
+		final ExitTarget target = createMock(ExitTarget.class);
+		expect(target.isAddressTarget()).andReturn(false).anyTimes();
+		expect(target.getPort()).andReturn(port).anyTimes();
+		replay(target);
+		return target;
+	}
+}
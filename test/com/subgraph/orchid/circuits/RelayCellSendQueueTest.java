@@ -0,0 +1,73 @@
+package com.subgraph.orchid.circuits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.subgraph.orchid.CircuitNode;
+import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.circuits.cells.RelayCellImpl;
+
+public class RelayCellSendQueueTest {
+	private CircuitNode node;
+	private RelayCellSendQueue queue;
+
+	@Before
+	public void setup() {
+		node = CircuitNodeImpl.createFirstHop(null, new byte[72], new byte[20]);
+		queue = new RelayCellSendQueue();
+	}
+
+	@Test
+	public void testStreamsTakeTurns() {
+		for(int i = 0; i < 3; i++) {
+			queue.add(createCell(1, RelayCell.RELAY_DATA), node);
+		}
+		for(int i = 0; i < 3; i++) {
+			queue.add(createCell(2, RelayCell.RELAY_DATA), node);
+		}
+		for(int i = 0; i < 6; i++) {
+			assertEquals(1 + (i % 2), queue.poll().cell.getStreamId());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testControlCellsBypassClosedWindow() {
+		while(node.tryDecrementSendWindow()) {}
+		final RelayCell data = createCell(1, RelayCell.RELAY_DATA);
+		final RelayCell sendme = createCell(1, RelayCell.RELAY_SENDME);
+		final RelayCell begin = createCell(2, RelayCell.RELAY_BEGIN);
+		queue.add(data, node);
+		queue.add(sendme, node);
+		queue.add(begin, node);
+		assertSame(sendme, queue.poll().cell);
+		assertSame(begin, queue.poll().cell);
+		assertFalse(queue.hasSendableCell());
+		assertNull(queue.poll());
+
+		node.incrementSendWindow();
+		assertTrue(queue.hasSendableCell());
+		assertSame(data, queue.poll().cell);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testEndFollowsQueuedData() {
+		final RelayCell data = createCell(1, RelayCell.RELAY_DATA);
+		final RelayCell end = createCell(1, RelayCell.RELAY_END);
+		queue.add(data, node);
+		queue.add(end, node);
+		assertSame(data, queue.poll().cell);
+		assertSame(end, queue.poll().cell);
+	}
+
+	private RelayCell createCell(int streamId, int command) {
+		return new RelayCellImpl(node, 1, streamId, command);
+	}
+}
@@ -0,0 +1,171 @@
+package com.subgraph.orchid.circuits;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.subgraph.orchid.CircuitNode;
+import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.Router;
+import com.subgraph.orchid.Stream;
+import com.subgraph.orchid.StreamConnectFailedException;
+
+public class StreamExitRequestTest {
+	private StreamExitRequest request;
+
+	@Before
+	public void setup() {
+		final ReentrantLock lock = new ReentrantLock();
+		request = new StreamExitRequest(lock, lock.newCondition(), "example.com", 80);
+	}
+
+	@Test
+	public void testSingleAttemptFailure() throws Exception {
+		request.addAttempt();
+		request.setCompletedTimeout();
+		assertTrue(request.isCompleted());
+		try {
+			request.getStream();
+		} catch (TimeoutException e) {
+			return;
+		}
+		throw new AssertionError("Expected TimeoutException");
+	}
+
+	@Test
+	public void testFirstSuccessClosesOtherStream() throws Exception {
+		final Stream winner = createMock(Stream.class);
+		final Stream loser = createMock(Stream.class);
+		loser.close();
+		replay(winner, loser);
+
+		request.addAttempt();
+		assertTrue(request.addOpeningStream(loser));
+		assertTrue(request.addRacingAttempt(request.getRound()));
+		assertTrue(request.addOpeningStream(winner));
+		assertTrue(request.setCompletedSuccessfully(winner));
+		verify(loser);
+		assertSame(winner, request.getStream());
+
+		/* The closed stream fails to connect, or connects too late */
+		request.setStreamOpenFailure(RelayCell.REASON_DONE);
+		assertFalse(request.setCompletedSuccessfully(loser));
+		assertSame(winner, request.getStream());
+		assertFalse(request.addOpeningStream(createMock(Stream.class)));
+	}
+
+	@Test
+	public void testStreamClosedBeforeBeginIsNotOpened() throws Exception {
+		final List<Integer> sentCommands = new ArrayList<>();
+		final ExitCircuitImpl circuit = new ExitCircuitImpl(null, (Router) null) {
+			@Override
+			public void sendRelayCellToFinalNode(RelayCell cell) {
+				sentCommands.add(cell.getRelayCommand());
+			}
+
+			@Override
+			public void removeStream(StreamImpl stream) {}
+		};
+		circuit.appendNode(createNiceMock(CircuitNode.class));
+		final StreamImpl loser = new StreamImpl(circuit, circuit.getFinalCircuitNode(), 1, false);
+
+		request.addAttempt();
+		assertTrue(request.addOpeningStream(loser));
+		assertTrue(request.addRacingAttempt(request.getRound()));
+		assertTrue(request.setCompletedSuccessfully(createMock(Stream.class)));
+
+		/* The losing attempt only gets to send its BEGIN cell after the other attempt has won */
+		try {
+			loser.openExit("example.com", 80, 1000);
+			throw new AssertionError("Expected StreamConnectFailedException");
+		} catch (StreamConnectFailedException e) {
+			assertEquals(RelayCell.REASON_DONE, e.getReason());
+		}
+		assertTrue(sentCommands.isEmpty());
+	}
+
+	@Test
+	public void testStreamClosedWhileSendingBeginSendsEnd() throws Exception {
+		final List<Integer> sentCommands = new ArrayList<>();
+		final StreamImpl[] stream = new StreamImpl[1];
+		final ExitCircuitImpl circuit = new ExitCircuitImpl(null, (Router) null) {
+			@Override
+			public void sendRelayCellToFinalNode(RelayCell cell) {
+				sentCommands.add(cell.getRelayCommand());
+				if(cell.getRelayCommand() == RelayCell.RELAY_BEGIN) {
+					/* The other attempt wins while the BEGIN cell is being sent */
+					stream[0].close();
+				}
+			}
+
+			@Override
+			public void removeStream(StreamImpl stream) {}
+		};
+		circuit.appendNode(createNiceMock(CircuitNode.class));
+		stream[0] = new StreamImpl(circuit, circuit.getFinalCircuitNode(), 1, false);
+
+		try {
+			stream[0].openExit("example.com", 80, 1000);
+			throw new AssertionError("Expected StreamConnectFailedException");
+		} catch (StreamConnectFailedException e) {
+			assertEquals(RelayCell.REASON_DONE, e.getReason());
+		}
+		assertEquals(Arrays.asList(RelayCell.RELAY_BEGIN, RelayCell.RELAY_END), sentCommands);
+	}
+
+	@Test
+	public void testFailureWaitsForOtherAttempt() throws Exception {
+		final Stream stream = createMock(Stream.class);
+		request.addAttempt();
+		assertTrue(request.addRacingAttempt(request.getRound()));
+		request.setCompletedTimeout();
+		assertFalse(request.isCompleted());
+		assertTrue(request.setCompletedSuccessfully(stream));
+		assertSame(stream, request.getStream());
+	}
+
+	@Test
+	public void testAllAttemptsFail() throws Exception {
+		request.addAttempt();
+		assertTrue(request.addRacingAttempt(request.getRound()));
+		request.setCompletedTimeout();
+		request.setStreamOpenFailure(RelayCell.REASON_EXITPOLICY);
+		assertTrue(request.isCompleted());
+		try {
+			request.getStream();
+		} catch (StreamConnectFailedException e) {
+			assertEquals(RelayCell.REASON_EXITPOLICY, e.getReason());
+			return;
+		}
+		throw new AssertionError("Expected StreamConnectFailedException");
+	}
+
+	@Test
+	public void testRaceOnlyOncePerRound() {
+		request.addAttempt();
+		final int round = request.getRound();
+		assertTrue(request.addRacingAttempt(round));
+		assertFalse(request.addRacingAttempt(round));
+
+		request.setCompletedTimeout();
+		request.setCompletedTimeout();
+		request.resetForRetry();
+		request.addAttempt();
+		assertFalse(request.addRacingAttempt(round));
+		assertTrue(request.addRacingAttempt(request.getRound()));
+	}
+}
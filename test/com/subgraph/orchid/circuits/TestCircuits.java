@@ -0,0 +1,37 @@
+package com.subgraph.orchid.circuits;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+
+import com.subgraph.orchid.Router;
+
+/**
+ * Circuits for tests which are never connected.
+ */
+class TestCircuits {
+
+	/**
+	 * Create an exit circuit whose exit router accepts exactly the listed ports.
+	 */
+	static ExitCircuitImpl createExitCircuit(final int... ports) {
+		final Router router = createMock(Router.class);
+		expect(router.exitPolicyAccepts(anyInt())).andAnswer(new IAnswer<Boolean>() {
+			public Boolean answer() throws Throwable {
+				final int port = (Integer) EasyMock.getCurrentArguments()[0];
+				for(int p: ports) {
+					if(p == port) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}).anyTimes();
+		replay(router);
+		return new ExitCircuitImpl(null, router);
+	}
+}
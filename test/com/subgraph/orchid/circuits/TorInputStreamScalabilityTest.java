@@ -0,0 +1,170 @@
+package com.subgraph.orchid.circuits;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.CircuitNode;
+import com.subgraph.orchid.RelayCell;
+import com.subgraph.orchid.Stream;
+import com.subgraph.orchid.Threading;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+import com.subgraph.orchid.circuits.cells.RelayCellImpl;
+
+/**
+ * Blocks a reader on each of 10,000 streams at the same time and then delivers data to all of
+ * them from a single stand-in exit thread.
+ * <p>
+ * When the JVM supports virtual threads the readers run on them, as the SOCKS transfer threads
+ * do after {@link Threading#useVirtualThreads()}.  A blocked read which pinned its carrier
+ * thread would leave no carriers for the readers which have not started yet, so the test would
+ * time out waiting for every reader to block.  On older JVMs the readers are daemon platform
+ * threads.
+ */
+public class TorInputStreamScalabilityTest {
+	private final static int STREAM_COUNT = 10000;
+	private final static int CELLS_PER_STREAM = 10;
+	private final static int DATA_LENGTH = Cell.CELL_LEN - RelayCell.HEADER_SIZE;
+	private final static long TIMEOUT_SECONDS = 60;
+
+	@After
+	public void after() {
+		Threading.usePlatformThreads();
+	}
+
+	@Test
+	public void testConcurrentBlockedReaders() throws Exception {
+		Threading.useVirtualThreads();
+		final List<StubStream> streams = new ArrayList<StubStream>();
+		for(int i = 0; i < STREAM_COUNT; i++) {
+			streams.add(new StubStream(i + 1));
+		}
+
+		final CountDownLatch readersStarted = new CountDownLatch(STREAM_COUNT);
+		final CountDownLatch readersFinished = new CountDownLatch(STREAM_COUNT);
+		final AtomicInteger completeStreams = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		for(final StubStream stream: streams) {
+			Threading.newThread("stream-reader", new Runnable() {
+				public void run() {
+					try {
+						readersStarted.countDown();
+						if(readAll(stream.getInputStream()) == CELLS_PER_STREAM * DATA_LENGTH) {
+							completeStreams.incrementAndGet();
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						stream.getInputStream().close();
+						readersFinished.countDown();
+					}
+				}
+			}).start();
+		}
+		assertTrue("readers did not start", readersStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		final Thread exit = new Thread(new Runnable() {
+			public void run() {
+				for(int i = 0; i < CELLS_PER_STREAM; i++) {
+					for(StubStream stream: streams) {
+						stream.inputStream.addInputCell(createRelayCell(stream.streamId, RelayCell.RELAY_DATA, DATA_LENGTH));
+					}
+				}
+				for(StubStream stream: streams) {
+					stream.inputStream.addEndCell(createRelayCell(stream.streamId, RelayCell.RELAY_END, 1));
+				}
+			}
+		}, "stand-in-exit");
+		exit.setDaemon(true);
+		exit.start();
+
+		assertTrue("readers did not finish", readersFinished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		if(failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(STREAM_COUNT, completeStreams.get());
+		final int[] closeCounts = new int[STREAM_COUNT];
+		final int[] expectedCounts = new int[STREAM_COUNT];
+		for(int i = 0; i < STREAM_COUNT; i++) {
+			closeCounts[i] = streams.get(i).closeCount.get();
+			expectedCounts[i] = 1;
+		}
+		assertArrayEquals(expectedCounts, closeCounts);
+	}
+
+	private static int readAll(InputStream input) throws IOException {
+		final byte[] buffer = new byte[DATA_LENGTH];
+		int total = 0;
+		int n;
+		while((n = input.read(buffer)) != -1) {
+			total += n;
+		}
+		return total;
+	}
+
+	private static RelayCell createRelayCell(int streamId, int relayCommand, int dataLength) {
+		final ByteBuffer buffer = ByteBuffer.allocate(Cell.CELL_LEN);
+		buffer.putShort((short) 1);
+		buffer.put((byte) Cell.RELAY);
+		buffer.put((byte) relayCommand);
+		buffer.putShort((short) 0);
+		buffer.putShort((short) streamId);
+		buffer.putInt(0);
+		buffer.putShort((short) dataLength);
+		buffer.rewind();
+		return RelayCellImpl.createFromCell(null, CellImpl.readFromBuffer(buffer));
+	}
+
+	private static class StubStream implements Stream {
+		private final int streamId;
+		private final TorInputStream inputStream;
+		private final AtomicInteger closeCount = new AtomicInteger();
+
+		StubStream(int streamId) {
+			this.streamId = streamId;
+			this.inputStream = new TorInputStream(this);
+		}
+
+		public Circuit getCircuit() {
+			return null;
+		}
+
+		public int getStreamId() {
+			return streamId;
+		}
+
+		public CircuitNode getTargetNode() {
+			return null;
+		}
+
+		public void close() {
+			closeCount.incrementAndGet();
+		}
+
+		public TorInputStream getInputStream() {
+			return inputStream;
+		}
+
+		public OutputStream getOutputStream() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void waitForSendWindow() {}
+	}
+}
@@ -44,6 +44,8 @@ public class TorInputStreamTest {
 		expectLastCall().times(2);
 		expect(cell.getRelayCommand()).andReturn(RelayCell.RELAY_DATA);
 		expect(cell.getPayloadBuffer()).andReturn(ByteBuffer.wrap(data));
+		cell.release();
+		expectLastCall().once();
 		replay(cell);
 		return cell;
 	}
@@ -51,6 +53,8 @@ public class TorInputStreamTest {
 	private static RelayCell createEndCell() {
 		final RelayCell cell = createMock("endCell", RelayCell.class);
 		expect(cell.getRelayCommand()).andReturn(RelayCell.RELAY_END);
+		cell.release();
+		expectLastCall().once();
 		replay(cell);
 		return cell;
 	}
@@ -0,0 +1,108 @@
+package com.subgraph.orchid.connections;
+
+import static org.easymock.EasyMock.createStrictMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+
+public class CircuitCellQueueTest {
+	private final static int CIRCUIT_COUNT = 8;
+	private final static int CELL_COUNT = 2000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testCellOrderPreservedPerCircuit() throws InterruptedException {
+		final List<Circuit> circuits = new ArrayList<>();
+		final List<CircuitCellQueue> queues = new ArrayList<>();
+		final List<List<Cell>> cells = new ArrayList<>();
+		final CountDownLatch destroyed = new CountDownLatch(CIRCUIT_COUNT);
+		for(int i = 0; i < CIRCUIT_COUNT; i++) {
+			final Circuit circuit = createStrictMock(Circuit.class);
+			final List<Cell> circuitCells = new ArrayList<>();
+			for(int j = 0; j < CELL_COUNT; j++) {
+				final Cell cell = CellImpl.createCell(i + 1, Cell.RELAY);
+				circuitCells.add(cell);
+				circuit.deliverRelayCell(cell);
+			}
+			final Cell destroy = CellImpl.createCell(i + 1, Cell.DESTROY);
+			circuitCells.add(destroy);
+			circuit.deliverControlCell(destroy);
+			expectLastCall().andAnswer(() -> {
+				destroyed.countDown();
+				return null;
+			});
+			replay(circuit);
+			circuits.add(circuit);
+			queues.add(new CircuitCellQueue(circuit, executor));
+			cells.add(circuitCells);
+		}
+
+		for(int j = 0; j <= CELL_COUNT; j++) {
+			for(int i = 0; i < CIRCUIT_COUNT; i++) {
+				queues.get(i).add(cells.get(i).get(j));
+			}
+		}
+		assertTrue(destroyed.await(10, TimeUnit.SECONDS));
+		for(Circuit c: circuits) {
+			verify(c);
+		}
+	}
+
+	@Test
+	public void testDispatchThreadIsMarked() throws InterruptedException {
+		final Circuit circuit = createStrictMock(Circuit.class);
+		final Cell cell = CellImpl.createCell(1, Cell.RELAY);
+		final AtomicBoolean wasDispatchThread = new AtomicBoolean();
+		final CountDownLatch delivered = new CountDownLatch(1);
+		circuit.deliverRelayCell(cell);
+		expectLastCall().andAnswer(() -> {
+			wasDispatchThread.set(CircuitCellQueue.isDispatchThread());
+			delivered.countDown();
+			return null;
+		});
+		replay(circuit);
+		new CircuitCellQueue(circuit, executor).add(cell);
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertTrue(wasDispatchThread.get());
+		assertFalse(CircuitCellQueue.isDispatchThread());
+	}
+
+	@Test
+	public void testInlineWithoutExecutor() {
+		final Circuit circuit = createStrictMock(Circuit.class);
+		final Cell cell = CellImpl.createCell(1, Cell.RELAY);
+		circuit.deliverRelayCell(cell);
+		replay(circuit);
+		new CircuitCellQueue(circuit, null).add(cell);
+		verify(circuit);
+	}
+}
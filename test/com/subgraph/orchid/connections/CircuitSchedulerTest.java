@@ -0,0 +1,139 @@
+package com.subgraph.orchid.connections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.circuits.cells.CellImpl;
+
+public class CircuitSchedulerTest {
+	private final static long HALFLIFE = 30 * 1000;
+	private final static int BULK_CIRCUIT = 1;
+	private final static int BULK_BACKLOG = 200;
+	private final static int INTERACTIVE_INTERVAL = 25;
+	private final static int STEPS = 20000;
+
+	@Test
+	public void testConnectionCellsFirst() {
+		final CircuitScheduler scheduler = new CircuitScheduler(HALFLIFE);
+		final Cell relay = CellImpl.createCell(5, Cell.RELAY);
+		final Cell netinfo = CellImpl.createCell(0, Cell.NETINFO);
+		scheduler.add(relay);
+		scheduler.add(netinfo);
+		assertSame(netinfo, scheduler.poll(0));
+		assertSame(relay, scheduler.poll(0));
+		assertNull(scheduler.poll(0));
+	}
+
+	@Test
+	public void testQuietCircuitFirst() {
+		final CircuitScheduler scheduler = new CircuitScheduler(HALFLIFE);
+		for(int i = 0; i < 10; i++) {
+			scheduler.add(CellImpl.createCell(1, Cell.RELAY));
+		}
+		for(int i = 0; i < 5; i++) {
+			scheduler.poll(0);
+		}
+		final Cell quiet = CellImpl.createCell(2, Cell.RELAY);
+		scheduler.add(quiet);
+		assertSame(quiet, scheduler.poll(0));
+	}
+
+	@Test
+	public void testRemovedCircuitDrains() {
+		final CircuitScheduler scheduler = new CircuitScheduler(HALFLIFE);
+		final Cell destroy = CellImpl.createCell(7, Cell.DESTROY);
+		scheduler.add(destroy);
+		scheduler.removeCircuit(7);
+		assertSame(destroy, scheduler.poll(0));
+		assertNull(scheduler.poll(0));
+	}
+
+	@Test
+	public void testFifoWhenDisabled() {
+		final CircuitScheduler scheduler = new CircuitScheduler(0);
+		final List<Cell> cells = new ArrayList<>();
+		for(int i = 0; i < 10; i++) {
+			final Cell c = CellImpl.createCell(1 + (i % 3), Cell.RELAY);
+			cells.add(c);
+			scheduler.add(c);
+		}
+		for(Cell c: cells) {
+			assertSame(c, scheduler.poll(0));
+		}
+	}
+
+	@Test
+	public void testInteractiveLatencyWithBulkCircuit() {
+		final List<Integer> ewma = runMixedTraffic(new CircuitScheduler(HALFLIFE));
+		final List<Integer> fifo = runMixedTraffic(new CircuitScheduler(0));
+
+		assertTrue("EWMA median "+ percentile(ewma, 50), percentile(ewma, 50) <= 1);
+		assertTrue("EWMA 99th percentile "+ percentile(ewma, 99), percentile(ewma, 99) <= 3);
+		assertTrue("FIFO median "+ percentile(fifo, 50), percentile(fifo, 50) >= BULK_BACKLOG - 1);
+	}
+
+	@Test
+	public void testBulkCircuitsShareEvenly() {
+		final CircuitScheduler scheduler = new CircuitScheduler(HALFLIFE);
+		for(int i = 0; i < 1000; i++) {
+			scheduler.add(CellImpl.createCell(1, Cell.RELAY));
+			scheduler.add(CellImpl.createCell(2, Cell.RELAY));
+		}
+		int first = 0;
+		for(int i = 0; i < 1000; i++) {
+			if(scheduler.poll(i).getCircuitId() == 1) {
+				first++;
+			}
+		}
+		assertEquals(500, first, 1);
+	}
+
+	/*
+	 * One bulk circuit keeps BULK_BACKLOG cells queued at all times while three interactive circuits
+	 * each queue a single cell every INTERACTIVE_INTERVAL cells written.  Returns how many cells were
+	 * written between queueing and writing each interactive cell.
+	 */
+	private List<Integer> runMixedTraffic(CircuitScheduler scheduler) {
+		final Map<Cell, Integer> queuedAt = new IdentityHashMap<>();
+		final List<Integer> delays = new ArrayList<>();
+		int bulkQueued = 0;
+		for(int step = 0; step < STEPS; step++) {
+			while(bulkQueued < BULK_BACKLOG) {
+				scheduler.add(CellImpl.createCell(BULK_CIRCUIT, Cell.RELAY));
+				bulkQueued++;
+			}
+			if(step % INTERACTIVE_INTERVAL == 0) {
+				for(int circuitId = 2; circuitId <= 4; circuitId++) {
+					final Cell cell = CellImpl.createCell(circuitId, Cell.RELAY);
+					queuedAt.put(cell, step);
+					scheduler.add(cell);
+				}
+			}
+			final Cell cell = scheduler.poll(step * 10L);
+			if(cell.getCircuitId() == BULK_CIRCUIT) {
+				bulkQueued--;
+			} else {
+				delays.add(step - queuedAt.remove(cell));
+			}
+		}
+		return delays;
+	}
+
+	private static int percentile(List<Integer> values, int percentile) {
+		final List<Integer> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		final int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index));
+	}
+}
@@ -0,0 +1,63 @@
+package com.subgraph.orchid.connections;
+
+import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.Circuit;
+import com.subgraph.orchid.TorException;
+
+public class CircuitTableTest {
+
+	@Test
+	public void testBindAndLookup() {
+		final CircuitTable table = new CircuitTable(100);
+		final Circuit c1 = createMock(Circuit.class);
+		final Circuit c2 = createMock(Circuit.class);
+		assertEquals(100, table.bind(c1));
+		assertEquals(101, table.bind(c2));
+		assertSame(c1, table.get(100));
+		assertSame(c2, table.get(101));
+		assertNull(table.get(102));
+		assertNull(table.get(0));
+		assertNull(table.get(0x10000));
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testRemoveOnlyMatchingCircuit() {
+		final CircuitTable table = new CircuitTable(1);
+		final Circuit c1 = createMock(Circuit.class);
+		final Circuit c2 = createMock(Circuit.class);
+		final int id = table.bind(c1);
+		table.remove(id, c2);
+		assertSame(c1, table.get(id));
+		table.remove(id, c1);
+		assertNull(table.get(id));
+		assertTrue(table.isEmpty());
+	}
+
+	@Test
+	public void testIdWrapsAndSkipsZero() {
+		final CircuitTable table = new CircuitTable(0xFFFF);
+		final Circuit c1 = createMock(Circuit.class);
+		final Circuit c2 = createMock(Circuit.class);
+		assertEquals(0xFFFF, table.bind(c1));
+		assertEquals(1, table.bind(c2));
+	}
+
+	@Test(expected=TorException.class)
+	public void testExhausted() {
+		final CircuitTable table = new CircuitTable(1);
+		final Circuit c = createMock(Circuit.class);
+		for(int i = 0; i < 0xFFFF; i++) {
+			table.bind(c);
+		}
+		assertEquals(0xFFFF, table.size());
+		table.bind(c);
+	}
+}
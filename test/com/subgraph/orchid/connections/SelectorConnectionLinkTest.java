@@ -0,0 +1,327 @@
+package com.subgraph.orchid.connections;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.subgraph.orchid.Cell;
+import com.subgraph.orchid.TorConfig;
+
+/**
+ * Runs a {@link SelectorConnectionLink} against a TLS server socket on the loopback interface.
+ */
+public class SelectorConnectionLinkTest {
+	private final static long TIMEOUT_MS = 10 * 1000;
+
+	private static SSLContext serverContext;
+
+	private final BlockingQueue<Cell> receivedCells = new LinkedBlockingQueue<>();
+	private final AtomicInteger closeCount = new AtomicInteger();
+	private ConnectionSelector.Loop loop;
+	private Thread loopThread;
+	private SSLServerSocket serverSocket;
+	private SelectorConnectionLink link;
+
+	@BeforeClass
+	public static void setupServerContext() throws Exception {
+		final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		final KeyPair keyPair = generator.generateKeyPair();
+		final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		keyStore.load(null, null);
+		keyStore.setKeyEntry("server", keyPair.getPrivate(), new char[0], new Certificate[] { createSelfSignedCertificate(keyPair) });
+		final KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(keyStore, new char[0]);
+		serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(kmf.getKeyManagers(), null, null);
+	}
+
+	@Before
+	public void setup() throws Exception {
+		loop = new ConnectionSelector.Loop();
+		loopThread = new Thread(loop, "Test connection selector");
+		loopThread.setDaemon(true);
+		loopThread.start();
+		serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		link = new SelectorConnectionLink(new ConnectionSocketFactory().createEngine(), loop);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		link.close();
+		serverSocket.close();
+		loop.close();
+		loopThread.join(TIMEOUT_MS);
+	}
+
+	@Test
+	public void testCellsSplitAcrossRecords() throws Exception {
+		final Socket server = connect();
+		final OutputStream out = server.getOutputStream();
+		final byte[] cells = new byte[3 * Cell.CELL_LEN];
+		for(int i = 0; i < 3; i++) {
+			fillCell(cells, i * Cell.CELL_LEN, i + 1);
+		}
+		/* Every write is a separate TLS record, so cells and cell headers span several records */
+		final int[] sizes = { 1, 2, 100, Cell.CELL_LEN, 7, Cell.CELL_LEN - 1 };
+		int offset = 0;
+		for(int i = 0; offset < cells.length; i++) {
+			final int n = Math.min(sizes[i % sizes.length], cells.length - offset);
+			out.write(cells, offset, n);
+			out.flush();
+			offset += n;
+		}
+		for(int i = 0; i < 3; i++) {
+			final Cell cell = receivedCells.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			assertNotNull(cell);
+			assertEquals(i + 1, cell.getCircuitId());
+			assertArrayEquals(copyOfCell(cells, i), cell.getCellBytes());
+		}
+		server.close();
+	}
+
+	/* The application input buffer starts at about one TLS record and must grow to hold this cell */
+	@Test
+	public void testVariableLengthCellLargerThanBuffer() throws Exception {
+		final Socket server = connect();
+		final int length = 3 * link.getSession().getApplicationBufferSize();
+		final byte[] cell = new byte[Cell.CELL_VAR_HEADER_LEN + length];
+		cell[2] = Cell.VERSIONS;
+		cell[3] = (byte) (length >> 8);
+		cell[4] = (byte) length;
+		for(int i = Cell.CELL_VAR_HEADER_LEN; i < cell.length; i++) {
+			cell[i] = (byte) i;
+		}
+		server.getOutputStream().write(cell);
+		server.getOutputStream().flush();
+
+		final Cell received = receivedCells.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertNotNull(received);
+		assertEquals(Cell.VERSIONS, received.getCommand());
+		assertArrayEquals(cell, received.getCellBytes());
+		server.close();
+	}
+
+	/* Writes well past the output high water mark while the server reads slowly */
+	@Test
+	public void testWritesBlockUntilDrained() throws Exception {
+		final Socket server = connect();
+		final int cellCount = 2048;
+		final AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+		final Thread writer = new Thread(new Runnable() {
+			public void run() {
+				final byte[] cell = new byte[Cell.CELL_LEN];
+				try {
+					for(int i = 0; i < cellCount; i++) {
+						fillCell(cell, 0, i);
+						link.write(cell, 0, cell.length);
+					}
+				} catch (Throwable t) {
+					writeFailure.set(t);
+				}
+			}
+		});
+		writer.start();
+
+		final DataInputStream in = new DataInputStream(server.getInputStream());
+		final byte[] expected = new byte[Cell.CELL_LEN];
+		final byte[] actual = new byte[Cell.CELL_LEN];
+		for(int i = 0; i < cellCount; i++) {
+			if(i % 256 == 0) {
+				Thread.sleep(20);
+			}
+			in.readFully(actual);
+			fillCell(expected, 0, i);
+			assertArrayEquals(expected, actual);
+		}
+		writer.join(TIMEOUT_MS);
+		assertFalse(writer.isAlive());
+		assertNull(writeFailure.get());
+		server.close();
+	}
+
+	@Test
+	public void testRemoteCloseNotifiesOnce() throws Exception {
+		final Socket server = connect();
+		server.close();
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while(closeCount.get() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		link.close();
+		Thread.sleep(100);
+		assertEquals(1, closeCount.get());
+	}
+
+	/* A writer waiting for output space must not outlive the connection */
+	@Test
+	public void testFailureWakesBlockedWriter() throws Exception {
+		final Socket server = connect();
+		final AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+		final Thread writer = new Thread(new Runnable() {
+			public void run() {
+				final byte[] data = new byte[64 * Cell.CELL_LEN];
+				try {
+					while(true) {
+						link.write(data, 0, data.length);
+					}
+				} catch (Throwable t) {
+					writeFailure.set(t);
+				}
+			}
+		});
+		writer.start();
+		/* The server never reads, so the writer soon waits for output space */
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while(writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(Thread.State.WAITING, writer.getState());
+
+		server.setSoLinger(true, 0);
+		server.close();
+		writer.join(TIMEOUT_MS);
+		assertFalse(writer.isAlive());
+		assertTrue(writeFailure.get() instanceof IOException);
+	}
+
+	private Socket connect() throws Exception {
+		final AtomicReference<Socket> accepted = new AtomicReference<>();
+		final Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					final SSLSocket s = (SSLSocket) serverSocket.accept();
+					s.startHandshake();
+					accepted.set(s);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		acceptor.start();
+		link.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), (int) TIMEOUT_MS);
+		link.start(createConnection());
+		acceptor.join(TIMEOUT_MS);
+		assertNotNull(accepted.get());
+		return accepted.get();
+	}
+
+	/* Records what the link delivers instead of processing it */
+	private ConnectionImpl createConnection() {
+		return new ConnectionImpl(createNiceMock(TorConfig.class), link, null, null, false, null) {
+			@Override
+			void processCell(Cell cell) {
+				receivedCells.add(cell);
+			}
+
+			@Override
+			void linkClosed(IOException e) {
+				closeCount.incrementAndGet();
+			}
+		};
+	}
+
+	private static void fillCell(byte[] buffer, int offset, int circuitId) {
+		buffer[offset] = (byte) (circuitId >> 8);
+		buffer[offset + 1] = (byte) circuitId;
+		buffer[offset + 2] = Cell.RELAY;
+		for(int i = Cell.CELL_HEADER_LEN; i < Cell.CELL_LEN; i++) {
+			buffer[offset + i] = (byte) (circuitId + i);
+		}
+	}
+
+	private static byte[] copyOfCell(byte[] cells, int index) {
+		final byte[] cell = new byte[Cell.CELL_LEN];
+		System.arraycopy(cells, index * Cell.CELL_LEN, cell, 0, Cell.CELL_LEN);
+		return cell;
+	}
+
+	/* A minimal self-signed X.509 v3 certificate, which is all the server side of the handshake needs */
+	private static Certificate createSelfSignedCertificate(KeyPair keyPair) throws Exception {
+		final byte[] sha256WithRSA = der(0x30, concat(
+				der(0x06, new byte[] { 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x0B }),
+				der(0x05, new byte[0])));
+		final byte[] name = der(0x30, der(0x31, der(0x30, concat(
+				der(0x06, new byte[] { 0x55, 0x04, 0x03 }),
+				der(0x0C, "orchid test".getBytes("UTF-8"))))));
+		final SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final long now = System.currentTimeMillis();
+		final byte[] validity = der(0x30, concat(
+				der(0x17, format.format(new Date(now - TimeUnit.DAYS.toMillis(1))).getBytes("US-ASCII")),
+				der(0x17, format.format(new Date(now + TimeUnit.DAYS.toMillis(1))).getBytes("US-ASCII"))));
+		final byte[] tbs = der(0x30, concat(
+				der(0xA0, der(0x02, new byte[] { 2 })),
+				der(0x02, BigInteger.valueOf(now).toByteArray()),
+				sha256WithRSA, name, validity, name,
+				keyPair.getPublic().getEncoded()));
+		final Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(keyPair.getPrivate());
+		signature.update(tbs);
+		final byte[] certificate = der(0x30, concat(tbs, sha256WithRSA, der(0x03, concat(new byte[1], signature.sign()))));
+		return CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(certificate));
+	}
+
+	private static byte[] der(int tag, byte[] content) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+		if(content.length < 0x80) {
+			out.write(content.length);
+		} else if(content.length < 0x100) {
+			out.write(0x81);
+			out.write(content.length);
+		} else {
+			out.write(0x82);
+			out.write(content.length >> 8);
+			out.write(content.length);
+		}
+		out.write(content, 0, content.length);
+		return out.toByteArray();
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(byte[] p: parts) {
+			out.write(p, 0, p.length);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,50 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.data.HexDigest;
+
+public class Curve25519FixedBaseTest {
+
+	/* RFC 7748 section 6.1 */
+	private final static String[][] KEY_PAIRS = {
+		{ "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a", "8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a" },
+		{ "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb", "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f" },
+	};
+
+	@Test
+	public void testKnownAnswers() {
+		for(String[] pair: KEY_PAIRS) {
+			final byte[] out = new byte[32];
+			Curve25519FixedBase.scalarMultBase(out, hex(pair[0]));
+			assertArrayEquals(hex(pair[1]), out);
+		}
+	}
+
+	@Test
+	public void testMatchesLadder() {
+		final Random random = new Random(1);
+		final byte[] secret = new byte[32];
+		for(int i = 0; i < 200; i++) {
+			random.nextBytes(secret);
+			if(i < 2) {
+				/* Scalars with every digit at its largest and smallest value */
+				Arrays.fill(secret, (byte) (i == 0 ? 0xff : 0x88));
+			}
+			final byte[] expected = new byte[32];
+			final byte[] actual = new byte[32];
+			Curve25519.crypto_scalarmult(expected, secret, Curve25519.basev);
+			Curve25519FixedBase.scalarMultBase(actual, secret);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	private static byte[] hex(String s) {
+		return HexDigest.createFromString(s).getRawBytes();
+	}
+}
@@ -0,0 +1,26 @@
+package com.subgraph.orchid.crypto;
+
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+
+/**
+ * Signatures for tests, made the same way directory authorities sign documents.
+ */
+class TestSignatures {
+
+	/**
+	 * Sign <code>digestBytes</code> with <code>key</code> and return the signature as it would be
+	 * parsed from a PEM encoded signature block.
+	 */
+	static TorSignature sign(TorPrivateKey key, byte[] digestBytes) {
+		try {
+			final Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, key.getRSAPrivateKey());
+			final String encoded = Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(cipher.doFinal(digestBytes));
+			return TorSignature.createFromPEMBuffer("-----BEGIN SIGNATURE-----\n"+ encoded +"\n-----END SIGNATURE-----\n");
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.data.HexDigest;
+
+public class TorCurve25519Test {
+
+	/* RFC 7748 section 5.2 */
+	private final static String SCALAR = "a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4";
+	private final static String U = "e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c";
+	private final static String RESULT = "c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552";
+
+	@Test
+	public void testKnownAnswer() {
+		for(TorCurve25519 c: getImplementations()) {
+			final byte[] out = new byte[32];
+			c.scalarMult(out, hex(SCALAR), hex(U));
+			assertArrayEquals(c.getName(), hex(RESULT), out);
+		}
+	}
+
+	@Test
+	public void testMatchesBundledImplementation() {
+		final TorCurve25519 bundled = TorCurve25519.createBundled();
+		final Random random = new Random(1);
+		for(TorCurve25519 c: getImplementations()) {
+			for(int i = 0; i < 20; i++) {
+				final byte[] secret = randomKey(random);
+				final byte[] peerSecret = randomKey(random);
+				final byte[] peerPublic = new byte[32];
+				bundled.scalarMultBase(peerPublic, peerSecret);
+
+				final byte[] expectedPublic = new byte[32];
+				final byte[] actualPublic = new byte[32];
+				bundled.scalarMultBase(expectedPublic, secret);
+				c.scalarMultBase(actualPublic, secret);
+				assertArrayEquals(c.getName(), expectedPublic, actualPublic);
+
+				final byte[] expectedShared = new byte[32];
+				final byte[] actualShared = new byte[32];
+				bundled.scalarMult(expectedShared, secret, peerPublic);
+				c.scalarMult(actualShared, secret, peerPublic);
+				assertArrayEquals(c.getName(), expectedShared, actualShared);
+			}
+		}
+	}
+
+	/* The bundled implementation returns the unreduced value p instead of zero here */
+	@Test
+	public void testSmallOrderPointGivesZero() {
+		final TorCurve25519 jdk = TorCurve25519.createJdk();
+		assumeNotNull(jdk);
+		final byte[] out = new byte[32];
+		out[0] = 1;
+		jdk.scalarMult(out, randomKey(new Random(2)), new byte[32]);
+		assertArrayEquals(new byte[32], out);
+
+		/* The key agreement reused by this thread is still usable after rejecting a point */
+		jdk.scalarMult(out, hex(SCALAR), hex(U));
+		assertArrayEquals(hex(RESULT), out);
+	}
+
+	@Test
+	public void testInstanceAvailable() {
+		assertNotNull(TorCurve25519.getInstance());
+	}
+
+	private static TorCurve25519[] getImplementations() {
+		final TorCurve25519 jdk = TorCurve25519.createJdk();
+		if(jdk == null) {
+			return new TorCurve25519[] { TorCurve25519.createBundled() };
+		}
+		return new TorCurve25519[] { TorCurve25519.createBundled(), jdk };
+	}
+
+	private static byte[] randomKey(Random random) {
+		final byte[] key = new byte[32];
+		random.nextBytes(key);
+		return key;
+	}
+
+	private static byte[] hex(String s) {
+		return HexDigest.createFromString(s).getRawBytes();
+	}
+}
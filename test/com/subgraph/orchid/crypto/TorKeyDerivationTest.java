@@ -0,0 +1,75 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import com.subgraph.orchid.Tor;
+
+public class TorKeyDerivationTest {
+	private final static int KEY_MATERIAL_LEN = 72;
+	private final static int VERIFY_LEN = 20;
+
+	@Test
+	public void testTorKdfMatchesSpecification() throws Exception {
+		final byte[] seed = createSeed(40, 1);
+		final byte[] keys = new byte[KEY_MATERIAL_LEN];
+		final byte[] verify = new byte[VERIFY_LEN];
+		new TorKeyDerivation(seed).deriveKeys(keys, verify);
+
+		/* K = H(K0 | [00]) | H(K0 | [01]) | ... and the first bytes are the verify value */
+		final ByteBuffer expected = ByteBuffer.allocate(5 * 20);
+		final MessageDigest md = MessageDigest.getInstance("SHA-1");
+		for(int i = 0; i < 5; i++) {
+			md.update(seed);
+			md.update((byte) i);
+			expected.put(md.digest());
+		}
+		expected.flip();
+		assertArrayEquals(readBytes(expected, VERIFY_LEN), verify);
+		assertArrayEquals(readBytes(expected, KEY_MATERIAL_LEN), keys);
+	}
+
+	@Test
+	public void testRfc5869MatchesSpecification() throws Exception {
+		for(int n = 0; n < 3; n++) {
+			/* Alternate keys on the same thread to check that cached instances take the new key */
+			final byte[] seed = createSeed(32, n);
+			final ByteBuffer actual = new TorRFC5869KeyDerivation(seed).deriveKeys(KEY_MATERIAL_LEN + 32);
+			final ByteBuffer expected = ByteBuffer.allocate(4 * 32);
+			final byte[] info = "ntor-curve25519-sha256-1:key_expand".getBytes(Tor.getDefaultCharset());
+			byte[] prior = new byte[0];
+			for(int round = 1; round <= 4; round++) {
+				final Mac mac = Mac.getInstance("HmacSHA256");
+				mac.init(new SecretKeySpec(seed, "HmacSHA256"));
+				mac.update(prior);
+				mac.update(info);
+				mac.update((byte) round);
+				prior = mac.doFinal();
+				expected.put(prior);
+			}
+			expected.flip();
+			assertArrayEquals(readBytes(expected, KEY_MATERIAL_LEN + 32), readBytes(actual, KEY_MATERIAL_LEN + 32));
+		}
+	}
+
+	private static byte[] createSeed(int length, int n) {
+		final byte[] seed = new byte[length];
+		for(int i = 0; i < length; i++) {
+			seed[i] = (byte) (i * 7 + n);
+		}
+		return seed;
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer, int length) {
+		final byte[] bs = new byte[length];
+		buffer.get(bs);
+		return bs;
+	}
+}
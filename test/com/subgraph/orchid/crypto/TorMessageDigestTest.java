@@ -0,0 +1,38 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TorMessageDigestTest {
+	private final static byte[] DATA = "relay cell payload".getBytes();
+
+	@Test
+	public void testUpdateIfDigestMatches() {
+		final TorMessageDigest digest = new TorMessageDigest();
+		final TorMessageDigest expected = new TorMessageDigest();
+		final byte[] prefix = Arrays.copyOf(digest.peekDigest(DATA, 0, DATA.length), 4);
+
+		assertTrue(digest.updateIfDigestMatches(DATA, 0, DATA.length, prefix));
+		expected.update(DATA);
+		assertArrayEquals(expected.getDigestBytes(), digest.getDigestBytes());
+	}
+
+	@Test
+	public void testNoUpdateOnMismatch() {
+		final TorMessageDigest digest = new TorMessageDigest();
+		digest.update(DATA);
+		final byte[] before = digest.getDigestBytes();
+		final byte[] prefix = Arrays.copyOf(digest.peekDigest(DATA, 0, DATA.length), 4);
+		prefix[3] ^= 1;
+
+		assertFalse(digest.updateIfDigestMatches(DATA, 0, DATA.length, prefix));
+		assertArrayEquals(before, digest.getDigestBytes());
+		prefix[3] ^= 1;
+		assertTrue(digest.updateIfDigestMatches(DATA, 0, DATA.length, prefix));
+	}
+}
@@ -0,0 +1,27 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TorNTorKeyPairPoolTest {
+
+	@Test
+	public void testKeyPairsAreValidAndSingleUse() {
+		final long before = TorNTorKeyPairPool.getHitCount() + TorNTorKeyPairPool.getMissCount();
+		final TorNTorKeyPairPool.KeyPair kp1 = TorNTorKeyPairPool.take();
+		final TorNTorKeyPairPool.KeyPair kp2 = TorNTorKeyPairPool.take();
+		assertFalse(Arrays.equals(kp1.getSecretKey(), kp2.getSecretKey()));
+		assertEquals(before + 2, TorNTorKeyPairPool.getHitCount() + TorNTorKeyPairPool.getMissCount());
+
+		for(TorNTorKeyPairPool.KeyPair kp: new TorNTorKeyPairPool.KeyPair[] { kp1, kp2 }) {
+			final byte[] expected = new byte[32];
+			TorCurve25519.createBundled().scalarMultBase(expected, kp.getSecretKey());
+			assertArrayEquals(expected, kp.getPublicKey());
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.subgraph.orchid.crypto;
+
+import static com.subgraph.orchid.crypto.TestSignatures.sign;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TorSignatureCacheTest {
+	private static TorPrivateKey signingKey;
+	private static TorPrivateKey otherKey;
+
+	@BeforeClass
+	public static void setup() {
+		signingKey = TorPrivateKey.generateNewKeypair();
+		otherKey = TorPrivateKey.generateNewKeypair();
+	}
+
+	@After
+	public void resetSignatureCache() {
+		TorSignatureCache.getInstance().clear();
+	}
+
+	@Test
+	public void testVerifiedSignatureSurvivesReload() {
+		final byte[] digest = createDigest("document");
+		final TorSignature signature = sign(signingKey, digest);
+		final TorSignatureCache cache = new TorSignatureCache();
+		assertFalse(cache.isVerified(signingKey.getPublicKey(), digest, signature));
+		cache.addVerified(signingKey.getPublicKey(), digest, signature);
+		assertTrue(cache.isModified());
+
+		final ByteBuffer saved = cache.saveToBuffer();
+		assertFalse(cache.isModified());
+		final TorSignatureCache loaded = new TorSignatureCache();
+		assertTrue(loaded.loadFromBuffer(saved));
+		assertTrue(loaded.isVerified(signingKey.getPublicKey(), digest, signature));
+	}
+
+	@Test
+	public void testMismatchIsNotVerified() {
+		final byte[] digest = createDigest("document");
+		final TorSignature signature = sign(signingKey, digest);
+		final TorSignatureCache cache = new TorSignatureCache();
+		cache.addVerified(signingKey.getPublicKey(), digest, signature);
+		assertFalse(cache.isVerified(signingKey.getPublicKey(), createDigest("changed document"), signature));
+		assertFalse(cache.isVerified(otherKey.getPublicKey(), digest, signature));
+		assertFalse(cache.isVerified(signingKey.getPublicKey(), digest, sign(otherKey, digest)));
+	}
+
+	@Test
+	public void testOnlyValidSignaturesAreRecorded() {
+		final TorSignatureCache cache = TorSignatureCache.getInstance();
+		final byte[] digest = createDigest("signed document");
+		final byte[] otherDigest = createDigest("other document");
+		final TorSignature signature = sign(otherKey, digest);
+		assertFalse(otherKey.getPublicKey().verifySignatureFromDigestBytes(signature, otherDigest));
+		assertFalse(cache.isVerified(otherKey.getPublicKey(), otherDigest, signature));
+
+		assertTrue(otherKey.getPublicKey().verifySignatureFromDigestBytes(signature, digest));
+		assertTrue(cache.isVerified(otherKey.getPublicKey(), digest, signature));
+	}
+
+	@Test
+	public void testCorruptBufferIgnored() {
+		final TorSignatureCache cache = new TorSignatureCache();
+		cache.addVerified(signingKey.getPublicKey(), createDigest("document"), sign(signingKey, createDigest("document")));
+		final ByteBuffer saved = cache.saveToBuffer();
+
+		final TorSignatureCache truncated = new TorSignatureCache();
+		assertFalse(truncated.loadFromBuffer(ByteBuffer.wrap(saved.array(), 0, saved.limit() - 1)));
+		assertEquals(0, truncated.size());
+
+		saved.array()[0] ^= 1;
+		final TorSignatureCache badHeader = new TorSignatureCache();
+		assertFalse(badHeader.loadFromBuffer(saved));
+		assertEquals(0, badHeader.size());
+	}
+
+	private static byte[] createDigest(String data) {
+		final TorMessageDigest digest = new TorMessageDigest();
+		digest.update(data);
+		return digest.getDigestBytes();
+	}
+}
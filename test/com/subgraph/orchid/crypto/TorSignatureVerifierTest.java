@@ -0,0 +1,63 @@
+package com.subgraph.orchid.crypto;
+
+import static com.subgraph.orchid.crypto.TestSignatures.sign;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.subgraph.orchid.TorException;
+
+public class TorSignatureVerifierTest {
+	private final static int SIGNATURE_COUNT = 20;
+
+	private static TorPrivateKey signingKey;
+	private static TorPrivateKey otherKey;
+
+	@BeforeClass
+	public static void setup() {
+		signingKey = TorPrivateKey.generateNewKeypair();
+		otherKey = TorPrivateKey.generateNewKeypair();
+	}
+
+	@After
+	public void resetSignatureCache() {
+		TorSignatureCache.getInstance().clear();
+	}
+
+	@Test
+	public void testResultsMatchSignatures() {
+		final List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+		for(int i = 0; i < SIGNATURE_COUNT; i++) {
+			final TorMessageDigest digest = createDigest("document "+ i);
+			final TorMessageDigest signed = (i % 3 == 0) ? createDigest("other document "+ i) : digest;
+			tasks.add(TorSignatureVerifier.verify(signingKey.getPublicKey(), sign(signingKey, signed.getDigestBytes()), digest));
+		}
+		for(int i = 0; i < SIGNATURE_COUNT; i++) {
+			if(i % 3 == 0) {
+				assertFalse(tasks.get(i).join());
+			} else {
+				assertTrue(tasks.get(i).join());
+			}
+		}
+	}
+
+	@Test(expected=TorException.class)
+	public void testExceptionThrownOnJoin() {
+		final TorMessageDigest digest = createDigest("document");
+		final ForkJoinTask<Boolean> task = TorSignatureVerifier.verify(signingKey.getPublicKey(), sign(otherKey, digest.getDigestBytes()), digest);
+		task.join();
+	}
+
+	private static TorMessageDigest createDigest(String data) {
+		final TorMessageDigest digest = new TorMessageDigest();
+		digest.update(data);
+		return digest;
+	}
+}
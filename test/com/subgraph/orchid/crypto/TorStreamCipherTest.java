@@ -0,0 +1,84 @@
+package com.subgraph.orchid.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class TorStreamCipherTest {
+	private final static int CELL_PAYLOAD_LEN = 509;
+
+	@Test
+	public void testMatchesEcbKeystream() throws Exception {
+		final Random random = new Random(1);
+		final byte[] key = new byte[TorStreamCipher.KEY_LEN];
+		random.nextBytes(key);
+		final byte[] data = new byte[CELL_PAYLOAD_LEN * 4];
+		random.nextBytes(data);
+
+		final byte[] encrypted = data.clone();
+		TorStreamCipher.createFromKeyBytes(key).encrypt(encrypted);
+		assertArrayEquals(xorKeystream(key, new byte[16], data), encrypted);
+	}
+
+	@Test
+	public void testPartialBlocksContinueKeystream() throws Exception {
+		final Random random = new Random(2);
+		final byte[] key = new byte[TorStreamCipher.KEY_LEN];
+		random.nextBytes(key);
+		final byte[] data = new byte[CELL_PAYLOAD_LEN * 3 + 7];
+		random.nextBytes(data);
+
+		final byte[] encrypted = data.clone();
+		final TorStreamCipher cipher = TorStreamCipher.createFromKeyBytes(key);
+		int offset = 0;
+		for(int length: new int[] { 1, 15, 509, 3, 16, 17, 509 }) {
+			cipher.encrypt(encrypted, offset, length);
+			offset += length;
+		}
+		cipher.encrypt(encrypted, offset, encrypted.length - offset);
+		assertArrayEquals(xorKeystream(key, new byte[16], data), encrypted);
+	}
+
+	@Test
+	public void testCounterCarry() throws Exception {
+		final byte[] key = new byte[TorStreamCipher.KEY_LEN];
+		final byte[] iv = new byte[16];
+		for(int i = 8; i < 16; i++) {
+			iv[i] = (byte) 0xFF;
+		}
+		final byte[] data = new byte[64];
+		final byte[] encrypted = data.clone();
+		TorStreamCipher.createFromKeyBytesWithIV(key, iv).encrypt(encrypted);
+		assertArrayEquals(xorKeystream(key, iv, data), encrypted);
+	}
+
+	/* The per-byte AES-ECB counter keystream which TorStreamCipher previously implemented */
+	private static byte[] xorKeystream(byte[] key, byte[] iv, byte[] data) throws Exception {
+		final Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+		ecb.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+		final byte[] counter = iv.clone();
+		final byte[] block = new byte[16];
+		final byte[] result = new byte[data.length];
+		for(int i = 0; i < data.length; i++) {
+			if(i % 16 == 0) {
+				ecb.doFinal(counter, 0, 16, block, 0);
+				incrementCounter(counter);
+			}
+			result[i] = (byte) (data[i] ^ block[i % 16]);
+		}
+		return result;
+	}
+
+	private static void incrementCounter(byte[] counter) {
+		for(int i = counter.length - 1; i >= 0; i--) {
+			if(++counter[i] != 0) {
+				return;
+			}
+		}
+	}
+}